@@ -7,6 +7,30 @@ if %errorlevel% neq 0 (
     pause
     exit /b 1
 )
+echo Compiling the Vector API lexer fast path (optional)...
+"C:\Program Files\Eclipse Adoptium\jdk-17.0.16.8-hotspot\bin\javac.exe" --add-modules jdk.incubator.vector VectorRunScanner.java 2>nul
+if %errorlevel% neq 0 echo Vector fast path unavailable, using the scalar lexer.
+echo Building the in-process flex/bison backend (optional, needs g++ and a JDK 22+ in JAVA22_HOME)...
+set "JAVA_BIN=C:\Program Files\Eclipse Adoptium\jdk-17.0.16.8-hotspot\bin"
+if not defined JAVA22_HOME (
+    echo JAVA22_HOME is not set, using the process backends.
+) else (
+    g++ -O2 -shared -o minicc.dll lexer.cpp parser.cpp mini_ffi.cpp
+    if errorlevel 1 (
+        echo Building minicc.dll failed, see the errors above. Using the process backends.
+    ) else (
+        "%JAVA22_HOME%\bin\javac.exe" MiniCompilerGUI.java ForeignParserBackend.java
+        if errorlevel 1 (
+            echo Compiling ForeignParserBackend failed, see the errors above. Using the process backends.
+        ) else (
+            set "JAVA_BIN=%JAVA22_HOME%\bin"
+        )
+    )
+)
 echo Compilation successful! Starting GUI...
-"C:\Program Files\Eclipse Adoptium\jdk-17.0.16.8-hotspot\bin\java.exe" MiniCompilerGUI
+if exist mini-compiler.jsa (
+    "%JAVA_BIN%\java.exe" --add-modules jdk.incubator.vector --enable-native-access=ALL-UNNAMED -XX:SharedArchiveFile=mini-compiler.jsa MiniCompilerGUI
+) else (
+    "%JAVA_BIN%\java.exe" --add-modules jdk.incubator.vector --enable-native-access=ALL-UNNAMED MiniCompilerGUI
+)
 pause
@@ -0,0 +1,87 @@
+// In-process flex/bison backend through the Foreign Function & Memory API (JDK 22+).
+// Build the shared library (see mini_ffi.cpp) and this class with a JDK 22+ javac, then run with native access enabled
+// (MiniCompilerGUI skips this backend when the class, the JDK or the library is missing). On Linux:
+//   JAVA22_HOME=/path/to/jdk-22 ./build-native.sh
+//   $JAVA22_HOME/bin/java --enable-native-access=ALL-UNNAMED MiniCompilerGUI
+import java.io.File;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+// --- Backend: lexer.l + parser.y linked into this JVM (no process, no temp file) ---
+public final class ForeignParserBackend implements ExecutionBackend {
+    // Shared library built from lexer.cpp, parser.cpp and mini_ffi.cpp (libminicc.so / minicc.dll)
+    private static final String LIBRARY = System.mapLibraryName("minicc");
+    // mini_run's return value for an uncaught C++ exception
+    private static final int RUNTIME_ERROR = 3;
+    // Largest stdin handed to the library, which takes cin in one buffer (-Dmini.ffi.maxinput, bytes)
+    private static final int MAX_INPUT = Integer.getInteger("mini.ffi.maxinput", 64 << 20);
+
+    // int mini_run(char* src, long long len, const char* in, long long inLen), or null without the library
+    private final MethodHandle run;
+    // const char* mini_output(long long* len), or null without the library
+    private final MethodHandle output;
+
+    // Public no-arg constructor for reflective loading; binds the library if it is next to the GUI
+    public ForeignParserBackend() {
+        MethodHandle r = null, o = null;
+        File lib = new File(LIBRARY);
+        if (lib.isFile()) {
+            // The library stays loaded for the life of the JVM
+            SymbolLookup symbols = SymbolLookup.libraryLookup(lib.toPath(), Arena.global());
+            Linker linker = Linker.nativeLinker();
+            r = linker.downcallHandle(symbols.find("mini_run").orElseThrow(), FunctionDescriptor.of(ValueLayout.JAVA_INT,
+                    ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
+            o = linker.downcallHandle(symbols.find("mini_output").orElseThrow(), FunctionDescriptor.of(ValueLayout.ADDRESS,
+                    ValueLayout.ADDRESS));
+        }
+        run = r;
+        output = o;
+    }
+
+    @Override public String name() { return "flex/bison (in-process)"; }
+
+    @Override public boolean isAvailable() { return run != null; }
+
+    // Synchronized: the parser's symbol table and flex's buffer are process-wide globals
+    @Override public synchronized BackendResult run(CharSequence source, ProgramInput input) {
+        long t0 = System.nanoTime();
+        if (run == null) return BackendResult.error(name(), "Error: " + LIBRARY + " not found.", "Backend unavailable", 0);
+        try (Arena arena = Arena.ofConfined()) {
+            // Source plus the two NUL bytes flex scans in place (allocate zero-fills)
+            // Encoded straight into native memory, with no intermediate byte[] of the source
+            long srcLen = SourceText.utf8Length(source);
+            MemorySegment srcSeg = arena.allocate(srcLen + 2);
+            SourceText.encodeUtf8(source, srcSeg.asSlice(0, srcLen).asByteBuffer());
+            // All of cin up front; the parser reads it from an in-memory stream, so larger input is refused
+            byte[] in = input.readBytes(MAX_INPUT);
+            if (in == null) {
+                return BackendResult.error(name(), "Error: stdin is larger than " + MAX_INPUT + " bytes, the in-process parser's limit."
+                        + " Use another backend or raise -Dmini.ffi.maxinput.", "Input too large", System.nanoTime() - t0);
+            }
+            MemorySegment inSeg = arena.allocate(Math.max(1, in.length));
+            MemorySegment.copy(in, 0, inSeg, ValueLayout.JAVA_BYTE, 0, in.length);
+            long tRun = System.nanoTime();
+            int rc = (int) run.invokeExact(srcSeg, srcLen, inSeg, (long) in.length);
+            long runNanos = System.nanoTime() - tRun;
+            // Copy cout/cerr out of the library's buffer before the next run replaces it
+            MemorySegment lenSeg = arena.allocate(ValueLayout.JAVA_LONG);
+            MemorySegment text = (MemorySegment) output.invokeExact(lenSeg);
+            long len = lenSeg.get(ValueLayout.JAVA_LONG, 0);
+            String out = new String(text.reinterpret(len).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+            // Lexing and parsing are interleaved inside yyparse, so only the total native time is known
+            String status = rc == 0 ? "Program executed successfully" : rc == RUNTIME_ERROR ? "Runtime error" : "Parser error";
+            return new BackendResult(name(), OutputSpool.of(out), Collections.emptyList(), status,
+                    rc == RUNTIME_ERROR, -1, -1, runNanos, System.nanoTime() - t0);
+        } catch (Throwable ex) {
+            ex.printStackTrace();
+            return BackendResult.error(name(), "Error: in-process parser failed. " + ex.getMessage(), "Backend error", System.nanoTime() - t0);
+        }
+    }
+}
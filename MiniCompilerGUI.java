@@ -3,9 +3,18 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javax.swing.*;
 import javax.swing.border.*;
 import javax.swing.text.*;
@@ -41,8 +50,18 @@ public class MiniCompilerGUI extends JFrame {
 
     // Text area for writing code
     private final JTextArea codeArea = new JTextArea();
+    // Range of the code edited between incremental runs
+    private final EditTracker editTracker = new EditTracker(codeArea);
     // Text area for displaying program output
     private final JTextArea outputArea = new JTextArea();
+    // Viewer for output that was spilled to a temp file
+    private final SpoolView spoolView = new SpoolView();
+    // Card panel switching between the text output and the spilled output viewer
+    private final JPanel outputCards = new JPanel(new CardLayout());
+    // Label showing the size of the spilled output
+    private final JLabel spoolInfo = new JLabel();
+    // Search field for the spilled output viewer
+    private final JTextField spoolSearch = new JTextField();
     // Text field for user input
     private final JTextField inputField = new JTextField();
     // Panel containing the input field
@@ -58,41 +77,173 @@ public class MiniCompilerGUI extends JFrame {
     private final JProgressBar progressBar = new JProgressBar();
     // Flag to track if program is currently running
     private boolean isRunning = false;
+    // Whether the training run exits once its program has finished
+    private boolean exitAfterRun = false;
     // Current file name being edited
     private String currentFileName = null;
     // Directory to store saved files
     private final File savedFilesDir = new File("saved");
+    // Identifier usages across saved files (persisted inside saved/)
+    private final IdentifierIndex identifierIndex = new IdentifierIndex(savedFilesDir);
+    // Find-usages window (created on first use)
+    private JDialog usagesDialog;
+    // Deduplicating store behind saved/ (null unless -Dmini.store=cas)
+    private ContentStore contentStore;
     // Button to delete files
     private JButton deleteBtn;
     // Track the current uploaded file path
     private File currentUploadedFile = null; // Track uploaded file path
+    // Print time-to-first-paint and time-to-first-run
+    private final boolean reportStartup;
+    // Exit after a scripted first run (used to record an AppCDS archive)
+    private final boolean trainingRun;
+    // Flag set once the full UI has been built
+    private boolean uiBuilt = false;
+    // Flag set once the first run has been reported
+    private boolean firstRunReported = false;
+    // Background thread warming up the compiler pipeline
+    private Thread warmupThread;
+    // Line number gutter of the code editor
+    private LineNumberView lineNumbers;
+    // Background syntax checker for the code editor
+    private LiveDiagnostics liveDiagnostics;
+    // Find/replace bar over the code editor
+    private FindReplaceBar findBar;
+    // Undo/redo history of the code editor (budget in MB from -Dmini.undo.budget.mb)
+    private UndoHistory undoHistory;
+    // Status bar display of undo history size
+    private final JLabel undoLabel = new JLabel(" ");
+    // Watchdog reporting EDT stalls (threshold from -Dmini.edt.stall.ms, off with -Dmini.edt.watchdog=false)
+    private final EdtWatchdog edtWatchdog = new EdtWatchdog(Long.getLong("mini.edt.stall.ms", 200), new File("edt-stalls.log"));
+    // File attached as the program's stdin (null to use the input field)
+    private File stdinFile = null;
+    // Piped stream attached as stdin for the next run (consumed once)
+    private InputStream pipedStdin = null;
+    // Button toggling the attached stdin file
+    private JButton stdinBtn;
+    // Button exporting the last profile as CSV
+    private JButton exportProfileBtn;
+    // Result of the last profiling run
+    private ProfileResult lastProfile;
+    // Execution backends and the calibrated "auto" choice
+    private final BackendSelector backendSelector = new BackendSelector();
+    // Backend used for runs ("auto" or a backend name, default from -Dmini.backend)
+    private final JComboBox<String> backendBox = new JComboBox<>();
+    // Phase latencies, allocations and cache hit rates of runs
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    // Second backend every run is compared against (-Dmini.shadow=<backend>, off when null)
+    private final ShadowRunner shadow = ShadowRunner.fromProperty(backendSelector, metrics);
+    // Shadow run of the current program, compared when the primary result is shown
+    private ShadowRunner.Run shadowRun;
+    // Documents and compiled programs of recently shown files (size from -Dmini.doccache.size)
+    private final DocumentCache documents = new DocumentCache(Integer.getInteger("mini.doccache.size", DocumentCache.DEFAULT_CAPACITY),
+            this::sourceFile, name -> loadFileContent(sourceFileFor(name)), metrics);
+    // Background writer for saved programs (fsync policy from -Dmini.save.fsync, burst window from -Dmini.save.coalesce.ms)
+    private final SaveQueue saves = new SaveQueue(this::writeSavedFileNow, SaveQueue.syncPolicy(), Long.getLong("mini.save.coalesce.ms", 250));
+    // Timer saving the current file after a pause in typing (-Dmini.autosave.ms, off by default)
+    private javax.swing.Timer autosaveTimer;
+    // Live metrics window (created on first use)
+    private JDialog metricsDialog;
+    // Start time and allocation counter of the current run
+    private long runStartNanos, runStartBytes;
+    // Time and allocations spent reading the editor text for the current run
+    private long textNanos, textBytes;
+    // Background thread writing precompiled artifacts
+    private final java.util.concurrent.ExecutorService artifactExecutor = java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "artifact-writer");
+        t.setDaemon(true);
+        return t;
+    });
 
-    // Constructor to set up the GUI
+    // Constructor for a normal interactive session
     public MiniCompilerGUI() {
+        this(false, false);
+    }
+
+    // Constructor that only shows a placeholder so the first frame paints right away
+    public MiniCompilerGUI(boolean reportStartup, boolean trainingRun) {
         // Set window title
         super("Mini Compiler IDE");
+        // Store startup options
+        this.reportStartup = reportStartup;
+        this.trainingRun = trainingRun;
         // Exit application when window is closed
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         // Set window size
         setSize(1200, 800);
         // Center window on screen
         setLocationRelativeTo(null);
+        // Show a lightweight placeholder until the real UI is built
+        setContentPane(createStartupPlaceholder());
+        // Build the UI even if the placeholder never gets painted (e.g. minimized)
+        javax.swing.Timer fallback = new javax.swing.Timer(250, e -> buildUi());
+        fallback.setRepeats(false);
+        fallback.start();
+        // Warm up the compiler off the EDT while the UI is being built
+        startWarmup();
+    }
 
-        // Create saved files directory if it doesn't exist
-        if (!savedFilesDir.exists()) {
-            // Create directory including parent directories
-            savedFilesDir.mkdirs();
-        }
+    // Method to create the placeholder shown during startup
+    private JPanel createStartupPlaceholder() {
+        // Panel that triggers the real UI build after its first paint
+        JPanel placeholder = new JPanel(new BorderLayout()) {
+            @Override protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                // Only the first paint matters
+                if (uiBuilt) return;
+                // Report time to first paint
+                if (reportStartup) reportStartupTime("first paint");
+                // Build the UI in a later event so this frame reaches the screen first
+                SwingUtilities.invokeLater(MiniCompilerGUI.this::buildUi);
+            }
+        };
+        // Use the theme background
+        placeholder.setBackground(new Color(20, 20, 20));
+        // Create loading label
+        JLabel loading = new JLabel("Loading Mini Compiler IDE...", SwingConstants.CENTER);
+        // Set label color
+        loading.setForeground(new Color(200, 150, 255));
+        // Add label to the center
+        placeholder.add(loading, BorderLayout.CENTER);
+        // Return placeholder
+        return placeholder;
+    }
 
-        // Apply a dark, modernized Nimbus look without external dependencies
+    // Method to build the full UI (runs on the EDT once the placeholder is up)
+    private void buildUi() {
+        // Build only once
+        if (uiBuilt) return;
+        uiBuilt = true;
+        // Apply a dark, modernized Nimbus look without external dependencies (before any new component is created)
         try {
             // Set Nimbus look and feel
             UIManager.setLookAndFeel("javax.swing.plaf.nimbus.NimbusLookAndFeel");
         } catch (Exception ignored) {} // Ignore if Nimbus is not available
         // Apply custom dark theme
         applyDarkTheme();
+        // Replace the placeholder with a fresh content pane
+        setContentPane(new JPanel(new BorderLayout()));
+        // Watch for blocking work on the EDT from here on
+        if (!"false".equals(System.getProperty("mini.edt.watchdog"))) edtWatchdog.start();
+
+        // Create saved files directory if it doesn't exist
+        if (!savedFilesDir.exists()) {
+            // Create directory including parent directories
+            savedFilesDir.mkdirs();
+        }
+        // Open the content-addressed store when enabled
+        if (ContentStore.enabled()) {
+            try {
+                contentStore = new ContentStore(savedFilesDir);
+                // Clear out blobs left unreferenced by earlier sessions
+                artifactExecutor.execute(this::compactStore);
+            } catch (IOException ex) {
+                // Fall back to plain files
+                ex.printStackTrace();
+            }
+        }
 
-        // Initialize file dropdown with default files and saved files
+        // Initialize file dropdown with default files (saved files are listed in the background)
         initializeFileList();
 
         // Set layout manager to BorderLayout
@@ -117,8 +268,12 @@ public class MiniCompilerGUI extends JFrame {
         setupCodeEditor();
         // Create scroll pane for code area
         JScrollPane codeScroll = new JScrollPane(codeArea);
+        // Create line number gutter
+        lineNumbers = new LineNumberView(codeArea);
         // Add line numbers to the left of code editor
-        codeScroll.setRowHeaderView(new LineNumberView(codeArea));
+        codeScroll.setRowHeaderView(lineNumbers);
+        // Check syntax in the background after a pause in typing
+        liveDiagnostics = new LiveDiagnostics(codeArea, lineNumbers);
         // Set background color for viewport
         codeScroll.getViewport().setBackground(new Color(15, 15, 15));
         // Create titled border for code editor
@@ -126,8 +281,16 @@ public class MiniCompilerGUI extends JFrame {
                         TitledBorder.LEFT, TitledBorder.TOP, new Font("Segoe UI", Font.BOLD, 12), new Color(200, 150, 255));
         // Set border with title and padding
         codeScroll.setBorder(new CompoundBorder(codeTitle, new EmptyBorder(6, 6, 6, 6)));
-        // Add code scroll pane to left side of split pane
-        split.setLeftComponent(codeScroll);
+        // Create find/replace bar above the editor (hidden until Ctrl+F / Ctrl+H)
+        findBar = new FindReplaceBar(codeArea, codeScroll, this::updateStatus);
+        // Save the current file on every pause in typing when enabled
+        installAutosave();
+        // Panel stacking the find bar over the editor
+        JPanel editorPanel = new JPanel(new BorderLayout());
+        editorPanel.add(findBar, BorderLayout.NORTH);
+        editorPanel.add(codeScroll, BorderLayout.CENTER);
+        // Add editor panel to left side of split pane
+        split.setLeftComponent(editorPanel);
 
         // Create panel for right side (controls and output)
         JPanel right = new JPanel(new BorderLayout(10, 10));
@@ -158,6 +321,15 @@ public class MiniCompilerGUI extends JFrame {
         tests.setPreferredSize(new Dimension(20, 15));
         // Add combo box to center of row
         row1.add(tests, BorderLayout.CENTER);
+        // List "auto" and the backends available on this machine
+        backendBox.addItem(BackendSelector.AUTO);
+        for (ExecutionBackend b : backendSelector.available()) backendBox.addItem(b.name());
+        // Start with the backend named by -Dmini.backend (auto otherwise)
+        backendBox.setSelectedItem(System.getProperty("mini.backend", BackendSelector.AUTO));
+        // Explain the choice in the tooltip
+        backendBox.setToolTipText("Execution backend (auto uses the fastest correct one for the program's size)");
+        // Add backend selector to right of row
+        row1.add(backendBox, BorderLayout.EAST);
         // Add row to top panel
         top.add(row1);
         // Add vertical spacing
@@ -179,6 +351,16 @@ public class MiniCompilerGUI extends JFrame {
         JButton runBtn = createStyledButton("Run", new Color(138, 43, 226)); // Purple
         // Create "Clear" button with dark purple color
         JButton clearBtn = createStyledButton("Clear", new Color(75, 0, 130)); // Dark purple
+        // Create "Stdin" button with dark purple color
+        stdinBtn = createStyledButton("Stdin File", new Color(75, 0, 130));
+        // Create "Profile" button with purple color
+        JButton profileBtn = createStyledButton("Profile", new Color(138, 43, 226));
+        // Create "Export CSV" button with dark purple color
+        exportProfileBtn = createStyledButton("Export CSV", new Color(75, 0, 130));
+        // Create "Usages" button with dark purple color
+        JButton usagesBtn = createStyledButton("Usages", new Color(75, 0, 130));
+        // Create "Metrics" button with dark purple color
+        JButton metricsBtn = createStyledButton("Metrics", new Color(75, 0, 130));
         // Set tooltip for new file button
         newFileBtn.setToolTipText("Create a new file");
         // Set tooltip for upload button
@@ -193,6 +375,18 @@ public class MiniCompilerGUI extends JFrame {
         runBtn.setToolTipText("Run program (F5)");
         // Set tooltip for clear button
         clearBtn.setToolTipText("Clear output");
+        // Set tooltip for stdin button
+        stdinBtn.setToolTipText("Attach a file as the program's input (cin)");
+        // Set tooltip for profile button
+        profileBtn.setToolTipText("Run with per-statement timing and show a heat map");
+        // Set tooltip for export button
+        exportProfileBtn.setToolTipText("Export the last profile as CSV");
+        // Disable export until something was profiled
+        exportProfileBtn.setEnabled(false);
+        // Set tooltip for usages button
+        usagesBtn.setToolTipText("Find usages of an identifier across saved files");
+        // Set tooltip for metrics button
+        metricsBtn.setToolTipText("Show run phase latencies, allocations and cache hit rates");
         // Add new file button to panel
         buttonPanel.add(newFileBtn);
         // Add upload button to panel
@@ -205,6 +399,16 @@ public class MiniCompilerGUI extends JFrame {
         buttonPanel.add(runBtn);
         // Add clear button to panel
         buttonPanel.add(clearBtn);
+        // Add stdin button to panel
+        buttonPanel.add(stdinBtn);
+        // Add profile button to panel
+        buttonPanel.add(profileBtn);
+        // Add export button to panel
+        buttonPanel.add(exportProfileBtn);
+        // Add usages button to panel
+        buttonPanel.add(usagesBtn);
+        // Add metrics button to panel
+        buttonPanel.add(metricsBtn);
         // Add button panel to top of row3
         row3.add(buttonPanel, BorderLayout.NORTH);
         // Add input panel to center of row3
@@ -222,10 +426,16 @@ public class MiniCompilerGUI extends JFrame {
         // Create titled border for output area
         TitledBorder outputTitle = new TitledBorder(new LineBorder(new Color(138, 43, 226), 1), "Program Output",
                         TitledBorder.LEFT, TitledBorder.TOP, new Font("Segoe UI", Font.BOLD, 12), new Color(200, 150, 255));
+        // Remove the scroll pane border (the card panel carries the title)
+        outScroll.setBorder(null);
+        // Add text output as the default card
+        outputCards.add(outScroll, "text");
+        // Add spilled output viewer as the second card
+        outputCards.add(createSpoolPanel(), "spool");
         // Set border with title and padding
-        outScroll.setBorder(new CompoundBorder(outputTitle, new EmptyBorder(6, 6, 6, 6)));
+        outputCards.setBorder(new CompoundBorder(outputTitle, new EmptyBorder(6, 6, 6, 6)));
         // Create vertical split pane for controls and output
-        JSplitPane rightSplit = new JSplitPane(JSplitPane.VERTICAL_SPLIT, top, outScroll);
+        JSplitPane rightSplit = new JSplitPane(JSplitPane.VERTICAL_SPLIT, top, outputCards);
         // Set resize weight (35% for controls, 65% for output)
         rightSplit.setResizeWeight(0.35); // allocate ~35% for controls/input, 65% for output
         // Set divider size
@@ -257,11 +467,146 @@ public class MiniCompilerGUI extends JFrame {
         runBtn.addActionListener(this::runProgram);
         // Add action listener for clear button - clears output area
         clearBtn.addActionListener(e -> { outputArea.setText(""); updateStatus("Output cleared"); });
+        // Add action listener for stdin button
+        stdinBtn.addActionListener(this::toggleStdinFile);
+        // Add action listener for profile button
+        profileBtn.addActionListener(this::profileProgram);
+        // Add action listener for export button
+        exportProfileBtn.addActionListener(this::exportProfile);
+        // Add action listener for usages button
+        usagesBtn.addActionListener(this::showUsages);
+        // Add action listener for metrics button
+        metricsBtn.addActionListener(this::showMetrics);
 
-        // Show PL1 by default
-        applySelection();
         // Update delete button state based on selection
         updateDeleteButtonState();
+        // The root pane and the editor, output and control fields were created under the startup look and feel
+        SwingUtilities.updateComponentTreeUI(this);
+        // Show the new components
+        revalidate();
+        repaint();
+        // List saved files and load PL1 in the background
+        loadInitialContentAsync();
+        // Load the identifier index and re-index changed files in the background
+        identifierIndex.loadOrBuildAsync();
+        // Count #include unit cache hits and rebuilds with the other caches
+        CompilationUnits.SHARED.setMetrics(metrics);
+        // Serve the metrics for scraping when -Dmini.metrics.port is set
+        Integer metricsPort = Integer.getInteger("mini.metrics.port");
+        if (metricsPort != null) {
+            try {
+                metrics.serve(metricsPort);
+            } catch (IOException ex) {
+                updateStatus("Metrics endpoint unavailable: " + ex.getMessage());
+            }
+        }
+    }
+
+    // Method to list saved files and load the default program off the EDT
+    private void loadInitialContentAsync() {
+        new SwingWorker<DocumentCache.Entry, Void>() {
+            // Display names of saved files
+            private List<String> saved;
+
+            @Override protected DocumentCache.Entry doInBackground() {
+                // Scan saved directory
+                saved = listSavedFiles();
+                // Read PL1 from disk into its document
+                return documents.open("C++ (PL1)");
+            }
+
+            @Override protected void done() {
+                // Add saved files to the dropdown
+                for (String name : saved) if (!fileModelContains(name)) fileModel.addElement(name);
+                try {
+                    // Show PL1 by default unless the user already picked something else
+                    if ("C++ (PL1)".equals(tests.getSelectedItem()) && codeArea.getDocument().getLength() == 0) {
+                        applySelection("C++ (PL1)", get());
+                        // Warm up the entries next to it
+                        prefetchNeighbours();
+                    }
+                } catch (Exception ex) {
+                    // Fall back to a synchronous load
+                    applySelection();
+                }
+                // Update delete button state based on selection
+                updateDeleteButtonState();
+                // Finish the scripted training run
+                if (trainingRun) finishTrainingRun();
+            }
+        }.execute();
+    }
+
+    // Method to warm up the compiler pipeline on a low-priority background thread
+    private void startWarmup() {
+        warmupThread = new Thread(() -> {
+            warmUpPipeline();
+            // Time the backends for "auto" (skipped by the scripted training run)
+            if (!trainingRun) calibrateBackends();
+        }, "compiler-warmup");
+        warmupThread.setDaemon(true);
+        warmupThread.setPriority(Thread.MIN_PRIORITY);
+        warmupThread.start();
+    }
+
+    // Method to calibrate the backends and show the result in the selector's tooltip
+    private void calibrateBackends() {
+        backendSelector.calibrate();
+        String report = backendSelector.report();
+        SwingUtilities.invokeLater(() -> backendBox.setToolTipText("<html><pre>Backend calibration:\n" + report + "</pre></html>"));
+    }
+
+    // Method to exercise the run path so the first F5 doesn't pay for class loading and JIT
+    static void warmUpPipeline() {
+        // Build a program using every statement form
+        StringBuilder program = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            program.append("cin >> v").append(i).append(";\n");
+            program.append("x").append(i).append(" = ").append(i).append(" + v").append(i).append(";\n");
+            program.append("cout << x").append(i).append(";\n");
+            program.append("cout << \"line ").append(i).append("\\n\";\n");
+        }
+        String src = program.toString();
+        // Run lexer, parser and interpreter enough times to get them compiled
+        for (int round = 0; round < 200; round++) {
+            CompileResult result = MiniFrontEnd.compile(src);
+            try {
+                new MiniInterpreter(result.program).run(InputTokens.of("1 2.5 c word"), new StringBuilder());
+            } catch (Exception ignored) {} // Warm-up output is discarded
+        }
+        // Load the output spool and temp file classes used by runProgram
+        OutputSpool.of("warm-up").close();
+        try {
+            File temp = File.createTempFile("warmup", ".cpp");
+            temp.delete();
+        } catch (IOException ignored) {} // Temp dir problems surface on the real run
+    }
+
+    // Method to end a training run once warm-up is done (records the classes of a first run)
+    private void finishTrainingRun() {
+        Thread finisher = new Thread(() -> {
+            // Wait for the warm-up to finish
+            try { warmupThread.join(); } catch (InterruptedException ignored) {}
+            // Do one real run, then exit so -XX:ArchiveClassesAtExit writes the archive
+            SwingUtilities.invokeLater(() -> {
+                exitAfterRun = true;
+                runProgram(null);
+                // Nothing to run finishes right away; otherwise showBackendResult exits
+                if (!isRunning) System.exit(0);
+            });
+        }, "training-run");
+        finisher.setDaemon(true);
+        finisher.start();
+    }
+
+    // Method to print how long startup took since JVM launch
+    private void reportStartupTime(String milestone) {
+        // JVM start time in wall-clock milliseconds
+        long start = java.lang.management.ManagementFactory.getRuntimeMXBean().getStartTime();
+        // Elapsed time
+        long elapsed = System.currentTimeMillis() - start;
+        // Print the milestone
+        System.out.println("Time to " + milestone + ": " + elapsed + " ms");
     }
 
     // Method to apply dark purple theme to UI components
@@ -272,7 +617,7 @@ public class MiniCompilerGUI extends JFrame {
         getContentPane().setBackground(new Color(20, 20, 20));
     }
 
-    // Method to initialize the file dropdown list
+    // Method to initialize the file dropdown list with the built-in test cases
     private void initializeFileList() {
         // Remove all existing elements
         fileModel.removeAllElements();
@@ -282,8 +627,12 @@ public class MiniCompilerGUI extends JFrame {
         fileModel.addElement("C++ (PL2)");
         // Add default PL3 test case
         fileModel.addElement("C++ (PL3)");
-        
-        // Load saved files
+    }
+
+    // Method to list saved files as dropdown names (safe to call off the EDT)
+    private List<String> listSavedFiles() {
+        // Names found
+        List<String> names = new ArrayList<>();
         // Check if saved files directory exists
         if (savedFilesDir.exists() && savedFilesDir.isDirectory()) {
             // Get all .cpp files in saved directory
@@ -292,12 +641,14 @@ public class MiniCompilerGUI extends JFrame {
             if (savedFiles != null) {
                 // Sort files by name
                 Arrays.sort(savedFiles, Comparator.comparing(File::getName));
-                // Add each file to dropdown
+                // Add each file to the list
                 for (File file : savedFiles) {
-                    fileModel.addElement("Saved: " + file.getName());
+                    names.add("Saved: " + file.getName());
                 }
             }
         }
+        // Return names
+        return names;
     }
 
     // Method to create a new file
@@ -329,7 +680,7 @@ public class MiniCompilerGUI extends JFrame {
             }
             
             // Clear code area and set new file
-            codeArea.setText("");
+            setEditorText("");
             // Set current file name
             currentFileName = fileName;
             // Update status message
@@ -355,49 +706,6 @@ public class MiniCompilerGUI extends JFrame {
         }
     }
 
-    // Method to run the lexer on code
-    private String runLexer(String code) {
-        try {
-            // Step 1: Create a temporary file
-            File tempFile = File.createTempFile("input", ".cpp");  // Creates a file with a random name, ending in ".cpp"
-            
-            // Step 2: Write the code to the temporary file
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
-                writer.write(code);  // Write the code entered by the user in the codeArea
-            }
-    
-            // Step 3: Run the lexer on the temp file
-            // Here we assume that the lexer is a compiled executable that reads from a file.
-            Process process = Runtime.getRuntime().exec("./lexer " + tempFile.getAbsolutePath());
-    
-            // Step 4: Capture the output of the lexer (tokens)
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            // StringBuilder to store output
-            StringBuilder output = new StringBuilder();
-            // Variable to store each line
-            String line;
-            // Read all lines from lexer output
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-            }
-    
-            // Wait for the process to finish
-            process.waitFor();
-    
-            // Step 5: Delete the temporary file after processing
-            tempFile.delete();
-    
-            // Return the output from the lexer (tokens)
-            return output.toString();
-        } catch (Exception ex) {
-            // Print stack trace for debugging
-            ex.printStackTrace();
-            // Return error message
-            return "Error: Lexer execution failed.";
-        }
-    }
-    
-
     // Method to check if file model contains a specific item
     private boolean fileModelContains(String item) {
         // Loop through all elements in file model
@@ -448,37 +756,131 @@ public class MiniCompilerGUI extends JFrame {
         
         // Create file object for saving
         File fileToSave = new File(savedFilesDir, fileName);
-        // Try to write file
-        try (FileWriter writer = new FileWriter(fileToSave)) {
-            // Write code area text to file
-            writer.write(codeArea.getText());
+        // Text being saved
+        String text = codeArea.getText();
+        // Display name of the saved file
+        String displayName = "Saved: " + fileName;
+        // Saved file name for the completion message
+        String savedName = fileName;
+        // Queue the write; success is reported once it has landed, a failure when it happens
+        writeSavedFile(fileToSave, text, displayName, () -> {
             // Update status message
-            updateStatus("File saved: " + fileName);
-            
-            // Add to dropdown if not already there
-            String displayName = "Saved: " + fileName;
-            // Check if not in dropdown
-            if (!fileModelContains(displayName)) {
-                // Add to dropdown
-                fileModel.addElement(displayName);
-            }
-            // Select the saved file
-            tests.setSelectedItem(displayName);
-            // Update current file name
-            currentFileName = fileName;
-            // Clear uploaded file reference
-            currentUploadedFile = null;
-            // Update delete button state
-            updateDeleteButtonState();
-            
+            updateStatus("File saved: " + savedName);
             // Show success message
             JOptionPane.showMessageDialog(this, "File saved successfully!", "Save", JOptionPane.INFORMATION_MESSAGE);
-        } catch (IOException ex) {
-            // Show error message if save fails
-            JOptionPane.showMessageDialog(this, "Error saving file: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            // Update status message
-            updateStatus("Error saving file");
+        });
+        // Precompile next to the source in the background
+        precompileAsync(fileToSave, text);
+        // Update status message
+        updateStatus("Saving: " + fileName);
+
+        // Check if not in dropdown
+        if (!fileModelContains(displayName)) {
+            // Add to dropdown
+            fileModel.addElement(displayName);
+        }
+        // The editor's document is the file's cached copy now (reselecting it doesn't reload)
+        documents.saved(displayName, codeArea.getDocument());
+        // Select the saved file
+        tests.setSelectedItem(displayName);
+        // Update current file name
+        currentFileName = fileName;
+        // Clear uploaded file reference
+        currentUploadedFile = null;
+        // Update delete button state
+        updateDeleteButtonState();
+    }
+
+    // Method to save the current file after a pause in typing (named saved files only)
+    private void autosave() {
+        // New unsaved and uploaded programs still need an explicit Save
+        if (currentFileName == null || currentUploadedFile != null) return;
+        // Nothing typed since the file was loaded or saved
+        Document doc = codeArea.getDocument();
+        DocumentCache.Entry entry = DocumentCache.of(doc);
+        if (entry != null && entry.clean()) return;
+        File file = new File(savedFilesDir, currentFileName);
+        String displayName = "Saved: " + currentFileName;
+        String text = codeArea.getText();
+        String name = currentFileName;
+        // Queue the write; rapid autosaves of the file coalesce into one
+        writeSavedFile(file, text, displayName, () -> updateStatus("Autosaved: " + name));
+        documents.saved(displayName, doc);
+        // Keep the artifact in step with the saved text
+        precompileAsync(file, text);
+    }
+
+    // Method to autosave right away instead of after the pause (before the editor switches documents)
+    private void flushAutosave() {
+        if (autosaveTimer != null && autosaveTimer.isRunning()) {
+            autosaveTimer.stop();
+            autosave();
+        }
+    }
+
+    // Method to set up autosave on every pause in typing when -Dmini.autosave.ms is set
+    private void installAutosave() {
+        int delay = Integer.getInteger("mini.autosave.ms", 0);
+        if (delay <= 0) return;
+        autosaveTimer = new javax.swing.Timer(delay, e -> autosave());
+        autosaveTimer.setRepeats(false);
+        // Every edit restarts the pause
+        javax.swing.event.DocumentListener typing = new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { autosaveTimer.restart(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { autosaveTimer.restart(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {}
+        };
+        codeArea.getDocument().addDocumentListener(typing);
+        // Follow the editor to the next document (the old one was flushed by showDocument)
+        codeArea.addPropertyChangeListener("document", e -> {
+            ((Document) e.getOldValue()).removeDocumentListener(typing);
+            ((Document) e.getNewValue()).addDocumentListener(typing);
+        });
+    }
+
+    // Method to attach or detach a file used as the program's stdin
+    private void toggleStdinFile(ActionEvent e) {
+        // Detach the current file
+        if (stdinFile != null) {
+            attachStdin(null);
+            return;
+        }
+        // Create file chooser dialog
+        JFileChooser fileChooser = new JFileChooser();
+        // Set dialog title
+        fileChooser.setDialogTitle("Select Input File");
+        // Apply dark theme to file chooser
+        applyFileChooserTheme(fileChooser);
+        // Attach the chosen file
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) attachStdin(fileChooser.getSelectedFile());
+    }
+
+    // Method to attach a file as stdin for every run (null detaches)
+    void attachStdin(File file) {
+        // Remember file
+        stdinFile = file;
+        // Update button and status
+        if (stdinBtn != null) stdinBtn.setText(file == null ? "Stdin File" : "Detach");
+        updateStatus(file == null ? "Input from input field" : "Input from " + file.getName());
+    }
+
+    // Method to attach a piped stream (e.g. the IDE's own stdin) for the next run
+    void attachPipedStdin(InputStream stream) {
+        pipedStdin = stream;
+    }
+
+    // Method to pick the stdin for a run
+    private ProgramInput currentInput() {
+        // Attached file wins
+        if (stdinFile != null) return ProgramInput.ofFile(stdinFile);
+        // A piped stream can only be read once
+        if (pipedStdin != null) {
+            InputStream stream = pipedStdin;
+            pipedStdin = null;
+            return ProgramInput.ofStream(stream);
         }
+        // Otherwise the input field
+        return ProgramInput.ofText(inputField.getText());
     }
 
     // Method to upload a file from user's computer
@@ -527,7 +929,7 @@ public class MiniCompilerGUI extends JFrame {
                 }
                 
                 // Set code area with file content
-                codeArea.setText(content.toString());
+                setEditorText(content.toString());
                 // Set current uploaded file
                 currentUploadedFile = selectedFile;
                 // Clear saved file name
@@ -565,10 +967,13 @@ public class MiniCompilerGUI extends JFrame {
                         }
                     }
                     
-                    // Copy file to saved directory
-                    try (FileWriter writer = new FileWriter(fileToSave)) {
-                        writer.write(content.toString());
-                    }
+                    // Copy file to saved directory (confirmed once the write has landed)
+                    writeSavedFile(fileToSave, content.toString(), "Saved: " + fileName, () -> {
+                        // Show success message
+                        JOptionPane.showMessageDialog(this, "File saved and added to your files!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                        // Update status
+                        updateStatus("File uploaded and saved: " + fileName);
+                    });
                     
                     // Add to dropdown if not already there
                     String displayName = "Saved: " + fileName;
@@ -577,17 +982,16 @@ public class MiniCompilerGUI extends JFrame {
                         // Add to dropdown
                         fileModel.addElement(displayName);
                     }
+                    // The editor's document is the file's cached copy now
+                    documents.saved(displayName, codeArea.getDocument());
                     // Select the saved file
                     tests.setSelectedItem(displayName);
                     // Set current file name
                     currentFileName = fileName;
                     // Clear uploaded file reference
                     currentUploadedFile = null;
-                    
-                    // Show success message
-                    JOptionPane.showMessageDialog(this, "File saved and added to your files!", "Success", JOptionPane.INFORMATION_MESSAGE);
                     // Update status
-                    updateStatus("File uploaded and saved: " + fileName);
+                    updateStatus("Saving: " + fileName);
                 } else {
                     // File loaded but not saved
                     outputArea.setText("File loaded: " + selectedFile.getName() + "\nYou can edit and run it. Use Save to add it to your saved files.");
@@ -621,9 +1025,8 @@ public class MiniCompilerGUI extends JFrame {
         String fileName = selected.substring(7); // Remove "Saved: " prefix
         // Create file object for deletion
         File fileToDelete = new File(savedFilesDir, fileName);
-        
-        // If file doesn't exist
-        if (!fileToDelete.exists()) {
+        // If file doesn't exist (a queued save of a new file counts: it isn't on disk yet)
+        if (!fileToDelete.exists() && saves.pendingText(fileToDelete) == null) {
             // Show error message
             JOptionPane.showMessageDialog(this, "File not found: " + fileName, "Error", JOptionPane.ERROR_MESSAGE);
             // Remove from dropdown if file doesn't exist
@@ -642,8 +1045,22 @@ public class MiniCompilerGUI extends JFrame {
         
         // If user confirmed deletion
         if (confirm == JOptionPane.YES_OPTION) {
-            // Try to delete file
-            if (fileToDelete.delete()) {
+            // A pending autosave must not bring the file back
+            if (autosaveTimer != null && fileName.equals(currentFileName)) autosaveTimer.stop();
+            saves.cancel(fileToDelete);
+            // Try to delete file (one whose first save was cancelled never reached the disk)
+            if (fileToDelete.delete() || !fileToDelete.exists()) {
+                // Remove its precompiled artifact too
+                ProgramArtifact.artifactFor(fileToDelete).delete();
+                // Drop its identifiers from the index
+                identifierIndex.removeAsync(fileName);
+                // And its cached document
+                documents.remove(selected);
+                // Release its blob in the content store
+                if (contentStore != null) artifactExecutor.execute(() -> {
+                    try { contentStore.remove(fileName); } catch (IOException ex) { ex.printStackTrace(); }
+                    compactStore();
+                });
                 // Remove from dropdown
                 fileModel.removeElement(selected);
                 // Update status
@@ -652,7 +1069,7 @@ public class MiniCompilerGUI extends JFrame {
                 // If this was the current file, clear the editor
                 if (fileName.equals(currentFileName)) {
                     // Clear code area
-                    codeArea.setText("");
+                    setEditorText("");
                     // Clear current file name
                     currentFileName = null;
                     // Set output message
@@ -759,6 +1176,44 @@ public class MiniCompilerGUI extends JFrame {
         codeArea.getActionMap().put("selectAll", new AbstractAction() {
             @Override public void actionPerformed(ActionEvent e) { codeArea.selectAll(); }
         });
+        // Track edits for undo/redo within a memory budget
+        undoHistory = new UndoHistory(codeArea, Long.getLong("mini.undo.budget.mb", 32) << 20);
+        // Show history size in the status bar
+        undoHistory.setListener(() -> undoLabel.setText(undoHistory.summary()));
+        // Map Ctrl+Z to "undo" action
+        codeArea.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, KeyEvent.CTRL_DOWN_MASK), "undo");
+        // Define "undo" action to step back through the history
+        codeArea.getActionMap().put("undo", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) { if (!undoHistory.undo()) updateStatus("Nothing to undo"); }
+        });
+        // Map Ctrl+Y and Ctrl+Shift+Z to "redo" action
+        codeArea.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, KeyEvent.CTRL_DOWN_MASK), "redo");
+        codeArea.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, KeyEvent.CTRL_DOWN_MASK | KeyEvent.SHIFT_DOWN_MASK), "redo");
+        // Define "redo" action to reapply undone edits
+        codeArea.getActionMap().put("redo", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) { if (!undoHistory.redo()) updateStatus("Nothing to redo"); }
+        });
+        // Map Ctrl+F to "find" action
+        codeArea.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_F, KeyEvent.CTRL_DOWN_MASK), "find");
+        // Define "find" action to open the find bar
+        codeArea.getActionMap().put("find", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) { findBar.open(false); }
+        });
+        // Map Ctrl+H to "replace" action
+        codeArea.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_H, KeyEvent.CTRL_DOWN_MASK), "replace");
+        // Define "replace" action to open the find bar with the replace row
+        codeArea.getActionMap().put("replace", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) { findBar.open(true); }
+        });
+        // Map F3 / Shift+F3 to next / previous match
+        codeArea.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), "findNext");
+        codeArea.getActionMap().put("findNext", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) { findBar.step(true); }
+        });
+        codeArea.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_F3, KeyEvent.SHIFT_DOWN_MASK), "findPrev");
+        codeArea.getActionMap().put("findPrev", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) { findBar.step(false); }
+        });
     }
 
     // Method to set up output area styling
@@ -775,6 +1230,140 @@ public class MiniCompilerGUI extends JFrame {
         outputArea.setCaretColor(new Color(200, 150, 255));
         // Set border with padding
         outputArea.setBorder(new EmptyBorder(6, 6, 6, 6));
+        // Any message written to the text output brings the text card back
+        outputArea.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            // Switch back when text is inserted
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { showTextOutput(); }
+            // Switch back when text is removed
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { showTextOutput(); }
+            // Attribute changes don't affect the visible card
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {}
+        });
+    }
+
+    // Method to create the viewer panel for spilled output
+    private JPanel createSpoolPanel() {
+        // Create panel holding the search bar and the viewer
+        JPanel panel = new JPanel(new BorderLayout(6, 6));
+        // Create search bar row
+        JPanel bar = new JPanel(new BorderLayout(6, 6));
+        // Style search field like the input field
+        spoolSearch.setBackground(new Color(25, 25, 25));
+        // Set search field text color
+        spoolSearch.setForeground(new Color(230, 230, 230));
+        // Set search field cursor color
+        spoolSearch.setCaretColor(new Color(200, 150, 255));
+        // Set search field border
+        spoolSearch.setBorder(new CompoundBorder(new LineBorder(new Color(138, 43, 226), 1), new EmptyBorder(2, 6, 2, 6)));
+        // Set search field tooltip
+        spoolSearch.setToolTipText("Search output (Enter for next match)");
+        // Create "Find" button
+        JButton findBtn = createStyledButton("Find", new Color(138, 43, 226));
+        // Create "End" button
+        JButton endBtn = createStyledButton("End", new Color(75, 0, 130));
+        // Set tooltip for jump-to-end button
+        endBtn.setToolTipText("Jump to end of output");
+        // Create panel for the buttons
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 6, 0));
+        // Add find button
+        buttons.add(findBtn);
+        // Add end button
+        buttons.add(endBtn);
+        // Set info label color
+        spoolInfo.setForeground(new Color(200, 150, 255));
+        // Add info label to the left
+        bar.add(spoolInfo, BorderLayout.WEST);
+        // Add search field to the center
+        bar.add(spoolSearch, BorderLayout.CENTER);
+        // Add buttons to the right
+        bar.add(buttons, BorderLayout.EAST);
+        // Create scroll pane for the viewer
+        JScrollPane scroll = new JScrollPane(spoolView);
+        // Set viewport background color
+        scroll.getViewport().setBackground(new Color(15, 15, 15));
+        // Remove scroll pane border
+        scroll.setBorder(null);
+        // Add search bar to the top
+        panel.add(bar, BorderLayout.NORTH);
+        // Add viewer to the center
+        panel.add(scroll, BorderLayout.CENTER);
+        // Search from the field and the button
+        findBtn.addActionListener(e -> findInSpool());
+        // Enter in the search field also finds the next match
+        spoolSearch.addActionListener(e -> findInSpool());
+        // Jump to the last line
+        endBtn.addActionListener(e -> spoolView.scrollToLine(spoolView.getLineCount() - 1));
+        // Return the panel
+        return panel;
+    }
+
+    // Method to show spilled output in the virtual viewer
+    private void showSpooledOutput(OutputSpool spool) {
+        // Clear the text output (switches back to the text card first)
+        outputArea.setText("");
+        // Hand the spool to the viewer (closes any previous spool)
+        spoolView.setSpool(spool);
+        // Show line count and size
+        spoolInfo.setText(String.format("Program Output: %,d lines, %,d KB", spool.getLineCount(), spool.getByteLength() / 1024));
+        // Show the viewer card
+        ((CardLayout) outputCards.getLayout()).show(outputCards, "spool");
+        // Jump to the end like the text output does
+        spoolView.scrollToLine(spool.getLineCount() - 1);
+    }
+
+    // Method to switch back to the plain text output
+    private void showTextOutput() {
+        // Nothing to do if no spool is shown
+        if (spoolView.getSpool() == null) return;
+        // Release the spool and its temp file
+        spoolView.setSpool(null);
+        // Show the text card
+        ((CardLayout) outputCards.getLayout()).show(outputCards, "text");
+    }
+
+    // Method to search the spilled output in the background
+    private void findInSpool() {
+        // Get the spool being shown
+        OutputSpool spool = spoolView.getSpool();
+        // Get the search text
+        String needle = spoolSearch.getText();
+        // Nothing to search
+        if (spool == null || needle.isEmpty()) return;
+        // Start after the current match (or at the top)
+        long from = spoolView.getMatchOffset() + 1;
+        // Update status
+        updateStatus("Searching output...");
+        // Keep the mapping alive even if a new run replaces the spool meanwhile
+        if (!spool.retain()) return;
+        // Scan the mapped file off the EDT
+        new SwingWorker<Long, Void>() {
+            @Override protected Long doInBackground() {
+                try {
+                    // Search forward, wrapping around to the top once
+                    long pos = spool.find(needle, from);
+                    return pos >= 0 || from == 0 ? pos : spool.find(needle, 0);
+                } finally {
+                    spool.release();
+                }
+            }
+            @Override protected void done() {
+                try {
+                    // Get match position
+                    long pos = get();
+                    // Ignore results for a spool that was replaced meanwhile
+                    if (spoolView.getSpool() != spool) return;
+                    // If nothing matched
+                    if (pos < 0) { updateStatus("Not found: " + needle); return; }
+                    // Highlight and reveal the match
+                    spoolView.showMatch(pos);
+                    // Update status with the line number
+                    updateStatus("Found at line " + (spool.lineOfOffset(pos) + 1));
+                } catch (Exception ex) {
+                    // Update status if the search failed
+                    updateStatus("Search failed");
+                }
+            }
+        }.execute();
     }
 
     // Method to create a styled button with custom colors
@@ -868,12 +1457,46 @@ public class MiniCompilerGUI extends JFrame {
         statusLabel.setBorder(new EmptyBorder(0, 0, 0, 15)); // Add right padding
         // Add status label to left of status bar
         sb.add(statusLabel, BorderLayout.WEST);
+        // Set undo label color and font
+        undoLabel.setForeground(new Color(150, 150, 150));
+        undoLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        // Right-align undo memory use next to the progress bar
+        undoLabel.setHorizontalAlignment(SwingConstants.RIGHT);
+        undoLabel.setBorder(new EmptyBorder(0, 0, 0, 12));
+        // Add undo label to center of status bar
+        sb.add(undoLabel, BorderLayout.CENTER);
+        // Panel for the EDT indicator and progress bar
+        JPanel east = new JPanel(new BorderLayout(10, 0));
+        east.setOpaque(false);
+        // Show live EDT responsiveness unless turned off with -Dmini.edt.indicator=false
+        if (!"false".equals(System.getProperty("mini.edt.watchdog")) && !"false".equals(System.getProperty("mini.edt.indicator"))) {
+            east.add(createEdtIndicator(), BorderLayout.WEST);
+        }
         // Add progress bar to right of status bar
-        sb.add(progressBar, BorderLayout.EAST);
+        east.add(progressBar, BorderLayout.EAST);
+        sb.add(east, BorderLayout.EAST);
         // Return status bar panel
         return sb;
     }
 
+    // Method to create the status bar's EDT responsiveness indicator
+    private JLabel createEdtIndicator() {
+        // Label showing stall count and worst stall
+        JLabel label = new JLabel("EDT ok");
+        label.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        label.setForeground(new Color(120, 200, 120));
+        // Refresh twice a second (the label can only repaint once the EDT is free again)
+        javax.swing.Timer refresh = new javax.swing.Timer(500, e -> {
+            long stalls = edtWatchdog.stallCount();
+            label.setText(stalls == 0 ? "EDT ok" : "EDT stalls: " + stalls + " (worst " + edtWatchdog.worstMillis() + " ms)");
+            label.setForeground(stalls == 0 ? new Color(120, 200, 120) : new Color(255, 170, 60));
+            // Full histogram on hover
+            label.setToolTipText("<html><pre>" + edtWatchdog.report() + "</pre></html>");
+        });
+        refresh.start();
+        return label;
+    }
+
     // Method to update status message and progress bar text
     private void updateStatus(String msg) {
         // Run on Event Dispatch Thread
@@ -890,7 +1513,7 @@ public class MiniCompilerGUI extends JFrame {
     // Method to show keyboard shortcuts dialog
     private void showShortcuts(ActionEvent e) {
         // Display shortcuts information
-        JOptionPane.showMessageDialog(this, "F5 - Run Program\nCtrl+A - Select All",
+        JOptionPane.showMessageDialog(this, "F5 - Run Program\nCtrl+A - Select All\nCtrl+F - Find\nCtrl+H - Replace\nCtrl+Z - Undo\nCtrl+Y - Redo\nF3 / Shift+F3 - Next / Previous Match",
                 "Keyboard Shortcuts", JOptionPane.INFORMATION_MESSAGE);
     }
 
@@ -909,6 +1532,9 @@ public class MiniCompilerGUI extends JFrame {
                 // Create file object with given filename
                 file = new File(filename);
             }
+            // A save still in the queue is newer than the disk
+            String queued = saves.pendingText(file);
+            if (queued != null) return queued;
             
             // If file doesn't exist
             if (!file.exists()) {
@@ -946,11 +1572,71 @@ public class MiniCompilerGUI extends JFrame {
         String selected = (String) tests.getSelectedItem();
         // If nothing selected, return
         if (selected == null) return;
-        
+        // Show the cached document while the file is unchanged, otherwise load it from disk
+        applySelection(selected, documents.open(selected));
+        // Load and compile the entries next to it in the background
+        prefetchNeighbours();
+    }
+
+    // Method to prefetch the dropdown entries around the selected one
+    private void prefetchNeighbours() {
+        int index = tests.getSelectedIndex();
+        for (int i : new int[] { index - 1, index + 1 }) {
+            if (index >= 0 && i >= 0 && i < fileModel.getSize()) documents.prefetch(fileModel.getElementAt(i));
+        }
+    }
+
+    // Method to map a dropdown entry to its file on disk
+    private File sourceFile(String selected) {
+        return selected.startsWith("Saved: ") ? new File(savedFilesDir, selected.substring(7)) : new File(sourceFileFor(selected));
+    }
+
+    // Method to map a dropdown entry to the name loadFileContent expects
+    private static String sourceFileFor(String selected) {
+        return switch (selected) {
+            case "C++ (PL1)" -> "PL1.cpp";
+            case "C++ (PL2)" -> "PL2.cpp";
+            case "C++ (PL3)" -> "PL3.cpp";
+            default -> selected;
+        };
+    }
+
+    // Method to replace the editor content without making it an undo step
+    private void setEditorText(String text) {
+        // A fresh document, so cached ones keep matching their files
+        PlainDocument doc = new PlainDocument();
+        try {
+            doc.insertString(0, text, null);
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        showDocument(doc);
+    }
+
+    // Method to switch the editor to a document (listeners, history and markers follow it)
+    private void showDocument(Document doc) {
+        // Typing not yet autosaved belongs to the file being left
+        flushAutosave();
+        // Tab size is a document property
+        int tabSize = codeArea.getTabSize();
+        codeArea.setDocument(doc);
+        codeArea.setTabSize(tabSize);
+        codeArea.setCaretPosition(0);
+        // Showing a file starts a fresh history (also when it is the document already shown)
+        undoHistory.reset(() -> {});
+        // Diagnostics of an already compiled document don't need another check
+        CompileResult compiled = DocumentCache.compiled(doc);
+        if (compiled != null) liveDiagnostics.show(compiled.diagnostics);
+    }
+
+    // Method to show an already-loaded document for a dropdown entry
+    private void applySelection(String selected, DocumentCache.Entry entry) {
+        // The file's document
+        Document content = entry.doc;
         // If PL1 is selected
         if (selected.equals("C++ (PL1)")) {
             // Load PL1 content
-            codeArea.setText(loadFileContent("PL1.cpp"));
+            showDocument(content);
             // Set output message
             outputArea.setText("PL1: Enter input and click Run");
             // Show input panel for user input
@@ -967,7 +1653,7 @@ public class MiniCompilerGUI extends JFrame {
             currentUploadedFile = null;
         } else if (selected.equals("C++ (PL2)")) {
             // Load PL2 content
-            codeArea.setText(loadFileContent("PL2.cpp"));
+            showDocument(content);
             // Set output message
             outputArea.setText("PL2: Click Run");
             // Hide input panel (no input needed)
@@ -980,7 +1666,7 @@ public class MiniCompilerGUI extends JFrame {
             currentUploadedFile = null;
         } else if (selected.equals("C++ (PL3)")) {
             // Load PL3 content
-            codeArea.setText(loadFileContent("PL3.cpp"));
+            showDocument(content);
             // Set output message
             outputArea.setText("PL3: Click Run");
             // Hide input panel (no input needed)
@@ -995,7 +1681,7 @@ public class MiniCompilerGUI extends JFrame {
             // Extract file name from display name
             String fileName = selected.substring(7); // Remove "Saved: " prefix
             // Load saved file content
-            codeArea.setText(loadFileContent(selected));
+            showDocument(content);
             // Set output message
             outputArea.setText("Loaded: " + fileName + " - Click Run to execute");
             // Hide input panel
@@ -1009,86 +1695,6 @@ public class MiniCompilerGUI extends JFrame {
         }
     }
 
-    // --- Simple evaluator for PL1/PL2/PL3 ---
-    private String interpretMini(String code, int mode) throws Exception {
-        // Remove comments and normalize whitespace
-        String normalized = code.replaceAll("//.*", "").replace("\r", "").trim();
-        // If mode is 1 (PL1 - input/output)
-        if (mode == 1) {
-            // Get input from input field
-            String in = inputField.getText().trim();
-            // Return input or error message
-            return in.isEmpty() ? "No input provided" : in;
-        }
-
-        // Map to store variables
-        Map<String, Integer> vars = new HashMap<>();
-        // Pattern to match variable assignments
-        Pattern assign = Pattern.compile("\\b([a-zA-Z_]\\w*)\\s*=\\s*(-?\\d+)\\s*;");
-        // Pattern to match cout with numbers or variables
-        Pattern coutNum = Pattern.compile("cout\\s*<<\\s*([a-zA-Z_]\\w*|\\d+)\\s*(?:\\+\\s*([a-zA-Z_]\\w*|\\d+))?\\s*;?");
-        // Pattern to match cout with strings
-        Pattern coutStr = Pattern.compile("cout\\s*<<\\s*\"(.*?)\"\\s*;?");
-        // Split code into lines
-        String[] lines = normalized.split("\\n+");
-        // Variable to store last output
-        String lastOutput = null;
-
-        // Process each line
-        for (String raw : lines) {
-            // Trim whitespace
-            String line = raw.trim();
-            // Skip empty lines
-            if (line.isEmpty()) continue;
-
-            // Try to match assignment pattern
-            Matcher mAssign = assign.matcher(line);
-            // Try to match string cout pattern
-            Matcher mCoutStr = coutStr.matcher(line);
-            // Try to match number cout pattern
-            Matcher mCoutNum = coutNum.matcher(line);
-
-            // If line is an assignment
-            if (mAssign.matches()) {
-                // Store variable and its value
-                vars.put(mAssign.group(1), Integer.parseInt(mAssign.group(2)));
-            } else if (mCoutStr.matches()) {
-                // If line is cout with string, store string as output
-                lastOutput = mCoutStr.group(1);
-            } else if (mCoutNum.matches()) {
-                // If line is cout with number/variable
-                // Resolve first value
-                int a = resolveValue(mCoutNum.group(1), vars);
-                // Get second token (for addition)
-                String bTok = mCoutNum.group(2);
-                // Calculate final value (with or without addition)
-                int val = (bTok == null) ? a : a + resolveValue(bTok, vars);
-                // Store result as output
-                lastOutput = String.valueOf(val);
-            }
-        }
-        // If no output was generated, throw exception
-        if (lastOutput == null) throw new Exception("No output from program");
-        // Return last output
-        return lastOutput;
-    }
-
-    // Method to resolve variable or literal value
-    private int resolveValue(String token, Map<String, Integer> vars) throws Exception {
-        // If token is null, return 0
-        if (token == null) return 0;
-        // Trim whitespace
-        token = token.trim();
-        // If token is a number, parse and return it
-        if (token.matches("-?\\d+")) return Integer.parseInt(token);
-        // Try to get variable value
-        Integer v = vars.get(token);
-        // If variable not found, throw exception
-        if (v == null) throw new Exception("Undefined variable: " + token);
-        // Return variable value
-        return v;
-    }
-
     // Method to run the program
     private void runProgram(ActionEvent e) {
         // Prevent running if already running
@@ -1099,11 +1705,17 @@ public class MiniCompilerGUI extends JFrame {
         progressBar.setIndeterminate(true);
         // Update status message
         updateStatus("Running program...");
+        // Start the run's metrics
+        runStartBytes = MetricsRegistry.allocatedBytes();
+        runStartNanos = System.nanoTime();
     
-        // Get code from code area
-        final String code = codeArea.getText().trim();
+        // Document being run and a view of its text (read in place; valid on the EDT until the next edit)
+        final Document doc = codeArea.getDocument();
+        CharSequence view = SourceText.of(doc);
+        // Get code without surrounding whitespace
+        CharSequence code = SourceText.trim(view);
         // If code is empty
-        if (code.isEmpty()) {
+        if (code.length() == 0) {
             // Display error message
             outputArea.setText("Error: No code to execute");
             // Update status
@@ -1112,125 +1724,530 @@ public class MiniCompilerGUI extends JFrame {
             isRunning = false;
             // Stop progress bar animation
             progressBar.setIndeterminate(false);
+            // Report time to the first run even when it failed
+            reportFirstRun();
             return;
         }
     
-        // Step 1: Pass code to lexer
-        String lexerOutput = runLexer(code);
-        // Check if lexer returned an error
-        if (lexerOutput.contains("Error")) {
-            // Display lexer error
-            outputArea.setText(lexerOutput);
-            // Update status
-            updateStatus("Lexer error");
-            // Reset running flag
-            isRunning = false;
-            // Stop progress bar animation
-            progressBar.setIndeterminate(false);
-            return;
-        }
-    
-        // Step 2: Pass lexer output (tokens) to parser
-        String parserOutput = runParser(lexerOutput);
-        // Check if parser returned an error
-        if (parserOutput.contains("Error")) {
-            // Display parser error
-            outputArea.setText(parserOutput);
-            // Update status
-            updateStatus("Parser error");
-            // Reset running flag
-            isRunning = false;
-            // Stop progress bar animation
-            progressBar.setIndeterminate(false);
-            return;
+        // Program stdin (attached file, piped stream or the input field)
+        final ProgramInput input = currentInput();
+        // Backend picked in the selector
+        String mode = (String) backendBox.getSelectedItem();
+        // Saved files run from their precompiled artifact (rebuilt when stale) unless another backend was picked
+        File savedSource = currentFileName != null && currentUploadedFile == null ? new File(savedFilesDir, currentFileName) : null;
+        boolean inProcess = BackendSelector.AUTO.equals(mode) || "java".equals(mode);
+        // A document compiled in the background and unedited since runs without lexing or parsing it again
+        CompileResult compiled = inProcess ? DocumentCache.compiled(codeArea.getDocument()) : null;
+        if (compiled != null) metrics.cacheHit("compiled");
+        else if (inProcess) metrics.cacheMiss("compiled");
+        // The saved file's artifact describes the editor text only while the document is unedited since its load or save
+        boolean precompiled = compiled == null && inProcess && savedSource != null && isClean(codeArea.getDocument()) && savedSource.exists();
+        // Only the Java front end links #include'd units, so auto mode doesn't pick a native backend for them
+        if (BackendSelector.AUTO.equals(mode) && SourceText.contains(code, "#include")) mode = "java";
+        // Run through the chosen backend (auto picks the calibrated fastest for this program's size)
+        ExecutionBackend backend = compiled != null || precompiled ? null : backendSelector.choose(mode, code.length());
+        // The Java front end reads the document in place under its read lock on the worker; other backends keep the
+        // text for their whole run, so they get one copy (the incremental one with the range edited since its last run)
+        boolean inPlace = precompiled || backend instanceof JavaBackend;
+        final CharSequence source = compiled != null || inPlace ? null
+                : backend instanceof IncrementalBackend ? editTracker.snapshot(view, code) : code.toString();
+        // Cost of reading the editor text
+        textNanos = System.nanoTime() - runStartNanos;
+        textBytes = runStartBytes < 0 ? -1 : MetricsRegistry.allocatedBytes() - runStartBytes;
+        // Start the shadow backend first so both sides run at the same time (sharing the copy when there is one)
+        shadowRun = shadow == null ? null : shadow.start(source != null ? source : code, input);
+        // Run off the EDT (a long program or a piped stdin no longer freezes the window)
+        new SwingWorker<BackendResult, Void>() {
+            @Override protected BackendResult doInBackground() {
+                if (compiled != null) return runCompiled(compiled, input);
+                if (precompiled) return runCompiled(compileInPlace(doc, text -> loadOrCompile(savedSource, text)), input);
+                if (inPlace) {
+                    long t0 = System.nanoTime();
+                    return JavaBackend.execute(backend.name(), compileInPlace(doc, text -> MiniFrontEnd.compile(SourceText.trim(text))), input, t0);
+                }
+                return backend.run(source, input);
+            }
+
+            @Override protected void done() {
+                BackendResult result;
+                try {
+                    result = get();
+                } catch (Exception ex) {
+                    // A backend that threw instead of returning an error result
+                    Throwable cause = ex instanceof java.util.concurrent.ExecutionException ? ex.getCause() : ex;
+                    result = BackendResult.error("java", "Error: " + cause, "Run failed", System.nanoTime() - runStartNanos);
+                }
+                // Finish the run on the EDT
+                showBackendResult(result);
+            }
+        }.execute();
+    }
+
+    // Method to display program output (large output goes to the virtual viewer)
+    private void showProgramOutput(OutputSpool output) {
+        if (output.isSpilled()) {
+            // Large output is shown by the virtual viewer straight from the spill file
+            showSpooledOutput(output);
+        } else {
+            // Small output goes into the text area
+            outputArea.setText("Program Output:\n" + output);
+            // Scroll to end of output
+            outputArea.setCaretPosition(outputArea.getDocument().getLength());
         }
-    
-        // Step 3: Display the result from the parser
-        outputArea.setText("Program Output:\n" + parserOutput);
-        // Scroll to end of output
-        outputArea.setCaretPosition(outputArea.getDocument().getLength());
-        // Update status with success message
-        updateStatus("Program executed successfully");
+    }
+
+    // Method to compile a document's text in place under its read lock (worker thread: typing waits only until parsing ends)
+    private static CompileResult compileInPlace(Document doc, java.util.function.Function<CharSequence, CompileResult> compile) {
+        CompileResult[] result = new CompileResult[1];
+        doc.render(() -> result[0] = compile.apply(SourceText.of(doc)));
+        return result[0];
+    }
+
+    // Method to run a compiled program with the in-process interpreter (worker thread)
+    private BackendResult runCompiled(CompileResult compiled, ProgramInput input) {
+        return JavaBackend.execute("java (precompiled)", compiled, input, System.nanoTime());
+    }
+
+    // Method to show a backend's result and finish the run
+    private void showBackendResult(BackendResult result) {
+        if (result.failed) {
+            // Error messages are short and replace the output
+            outputArea.setText(result.output.toString());
+        } else {
+            // Display the result
+            showProgramOutput(result.output);
+        }
+        // Update status with the backend and its timings
+        updateStatus(result.status + "  [" + result.timings() + "]");
+        // Check the shadow backend against this result in the background
+        if (shadowRun != null) {
+            shadowRun.compare(result);
+            shadowRun = null;
+        }
+        // Record the run's phases (total includes reading the editor and showing the output)
+        metrics.record(result.backend, "text", textNanos, textBytes);
+        metrics.recordPhases(result);
+        metrics.record(result.backend, "total", System.nanoTime() - runStartNanos,
+                runStartBytes < 0 ? -1 : MetricsRegistry.allocatedBytes() - runStartBytes);
         // Reset running flag
         isRunning = false;
         // Stop progress bar animation
         progressBar.setIndeterminate(false);
+        // Report time to the first run
+        reportFirstRun();
+        // End the training run now that its program finished
+        if (exitAfterRun) System.exit(0);
     }
 
-    // Method to run parser on lexer output
-    private String runParser(String lexerOutput) {
-        // Step 1: Assuming lexerOutput is a string of tokens
-        // Step 2: You may need to process these tokens and pass them to a parser
-        // If the lexer output is a file, you can write it to a temp file just like in runLexer()
-    
-        // Example: Parsing the tokens (simplified)
+    // Method to check whether the editor's document is unedited since its file was loaded or saved
+    private static boolean isClean(Document doc) {
+        DocumentCache.Entry entry = DocumentCache.of(doc);
+        return entry != null && entry.clean();
+    }
+
+    // Method to load a saved file's artifact, or compile the text when it is missing or stale (worker thread)
+    private CompileResult loadOrCompile(File source, CharSequence text) {
+        // Time and allocations of the lookup (and the compile on a miss)
+        long b0 = MetricsRegistry.allocatedBytes();
+        long t0 = System.nanoTime();
+        // Artifact next to the source
+        File artifact = ProgramArtifact.artifactFor(source);
+        // Hash of the text being run
+        byte[] hash = ProgramArtifact.hash(text);
         try {
-            // Execute parser with lexer output as argument
-            Process parserProcess = Runtime.getRuntime().exec("./parser " + lexerOutput);
-            // Create reader for parser output
-            BufferedReader reader = new BufferedReader(new InputStreamReader(parserProcess.getInputStream()));
-            // StringBuilder to accumulate output
-            StringBuilder output = new StringBuilder();
-            // Variable to store each line
-            String line;
-            // Read all lines from parser output
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
+            // Use the artifact if its hash still matches
+            CompileResult cached = ProgramArtifact.load(artifact, hash);
+            if (cached != null) {
+                metrics.cacheHit("artifact");
+                metrics.record("java (precompiled)", "artifact", System.nanoTime() - t0, b0 < 0 ? -1 : MetricsRegistry.allocatedBytes() - b0);
+                return cached;
             }
-            // Wait for parser process to complete
-            parserProcess.waitFor();
-            // Return parser output
-            return output.toString();
-        } catch (Exception ex) {
-            // Print stack trace for debugging
-            ex.printStackTrace();
-            // Return error message
-            return "Error: Parser execution failed.";
+        } catch (IOException ex) {
+            // Corrupt artifact: fall through and rebuild it
         }
+        metrics.cacheMiss("artifact");
+        // Compile; the artifact is rebuilt by the next save (only saved text may back it)
+        CompileResult result = MiniFrontEnd.compile(text);
+        metrics.record("java (precompiled)", "artifact", System.nanoTime() - t0, b0 < 0 ? -1 : MetricsRegistry.allocatedBytes() - b0);
+        return result;
     }
-    
-    
-    // Method to run both lexer and parser (alternative approach)
-    private String runLexerAndParser(String code) {
+
+    // Method to queue a saved program's write on the save queue (off the EDT, coalesced with newer saves)
+    private void writeSavedFile(File file, String text, String displayName, Runnable written) {
+        saves.save(file, text, error -> savedFileWritten(file, text, displayName, written, error));
+    }
+
+    // Method to finish a queued save on the EDT: record the file's stamp and re-index it, or report the failure
+    private void savedFileWritten(File file, String text, String displayName, Runnable written, IOException error) {
+        if (error == null) {
+            documents.written(displayName);
+            // The file is on disk now, so the index records its real stamp (unless it was deleted meanwhile)
+            if (file.exists()) identifierIndex.updateAsync(file, text);
+            written.run();
+            return;
+        }
+        // The cached copy no longer matches the disk
+        documents.remove(displayName);
+        // Show error message if save fails
+        JOptionPane.showMessageDialog(this, "Error saving file: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        // Update status message
+        updateStatus("Error saving file");
+    }
+
+    // Method to write a saved program (save queue thread; through the content store when enabled)
+    private void writeSavedFileNow(File file, String text, boolean sync) throws IOException {
+        // Store content once under its hash and point the name at it
+        if (contentStore != null) {
+            contentStore.write(file.getName(), text, sync);
+            return;
+        }
+        // Plain file, replaced atomically
+        SaveQueue.replace(file, text, sync);
+    }
+
+    // Method to delete unreferenced blobs from the content store
+    private void compactStore() {
         try {
-            // Write the code to a temporary file
-            File tempFile = File.createTempFile("input", ".cpp");
-            // Write code to temp file
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
-                writer.write(code);  // Write the code entered by the user in the codeArea
+            long freed = contentStore.compact();
+            if (freed > 0) updateStatus("Store compacted: " + freed / 1024 + " KB freed (" + contentStore.nameCount()
+                    + " files, " + contentStore.blobCount() + " distinct)");
+        } catch (IOException ex) {
+            // Retried at the next start
+            ex.printStackTrace();
+        }
+    }
+
+    // Method to compile a saved source and write its artifact on the background artifact thread
+    private void precompileAsync(File source, String text) {
+        artifactExecutor.execute(() -> {
+            try {
+                ProgramArtifact.write(ProgramArtifact.artifactFor(source), ProgramArtifact.hash(text), MiniFrontEnd.compile(text));
+            } catch (IOException ex) {
+                // The artifact is rebuilt by the next save
+                ex.printStackTrace();
             }
-    
-            // Run the lexer and parser on the temp file (assuming your lexer/parser are compiled as executables)
-            Process process = Runtime.getRuntime().exec("./lexer_parser " + tempFile.getAbsolutePath());
-    
-            // Read the output from the lexer and parser
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            // StringBuilder to accumulate output
-            StringBuilder output = new StringBuilder();
-            // Variable to store each line
-            String line;
-            // Read all output lines
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
+        });
+    }
+
+    // Method to run the program in-process with per-statement profiling
+    private void profileProgram(ActionEvent e) {
+        // Prevent running if already running
+        if (isRunning) return;
+        // Get text from code area
+        String text = codeArea.getText();
+        // Nothing to profile
+        if (text.trim().isEmpty()) {
+            outputArea.setText("Error: No code to execute");
+            updateStatus("Error: No code to execute");
+            return;
+        }
+        // Set running flag
+        isRunning = true;
+        // Unedited saved files reuse their artifact, everything else is compiled now
+        File savedSource = currentFileName != null && currentUploadedFile == null ? new File(savedFilesDir, currentFileName) : null;
+        boolean precompiled = savedSource != null && isClean(codeArea.getDocument()) && savedSource.exists();
+        // Program stdin (a piped stream is read by the worker, not the EDT)
+        ProgramInput input = currentInput();
+        // Spool for the program output
+        OutputSpool output = new OutputSpool(OutputSpool.SPILL_THRESHOLD);
+        // Compile and run with counters off the EDT
+        new SwingWorker<ProfileResult, Void>() {
+            // Statements in the profiled program
+            private int stmtCount;
+            // Problems that didn't stop the program
+            private List<String> warnings = Collections.emptyList();
+
+            @Override protected ProfileResult doInBackground() {
+                CompileResult compiled = precompiled ? loadOrCompile(savedSource, text) : MiniFrontEnd.compile(text);
+                // Included units are profiled on their #include line
+                compiled = CompilationUnits.SHARED.link(compiled);
+                stmtCount = compiled.program.stmtCount;
+                warnings = compiled.warnings;
+                // Profile for this program
+                ProfileResult profile = new ProfileResult(compiled.program, text);
+                try (InputTokens tokens = input.tokens()) {
+                    // Run with counters
+                    new MiniInterpreter(compiled.program).runProfiled(tokens, output, profile);
+                    // Report the syntax error after the output it allowed
+                    if (!compiled.diagnostics.isEmpty()) output.append("Parse error: ").append(compiled.diagnostics.get(0).toString()).append('\n');
+                } catch (Exception ex) {
+                    // Keep the partial profile
+                    output.append("Runtime error: ").append(String.valueOf(ex.getMessage())).append('\n');
+                }
+                return profile;
             }
-    
-            // Wait for the process to finish
-            process.waitFor();
-    
-            // Return combined lexer/parser output
-            return output.toString();
-        } catch (Exception ex) {
-            // Print stack trace for debugging
-            ex.printStackTrace();
-            // Return error message
-            return "Error: Could not run lexer/parser.";
+
+            @Override protected void done() {
+                ProfileResult profile;
+                try {
+                    profile = get();
+                } catch (Exception ex) {
+                    output.close();
+                    outputArea.setText("Error: Profiling failed: " + ex);
+                    updateStatus("Profiling failed");
+                    isRunning = false;
+                    return;
+                }
+                try {
+                    // Display the output
+                    output.finish();
+                    showProgramOutput(output);
+                } catch (IOException ex) {
+                    output.close();
+                    outputArea.setText("Error: Could not read program output: " + ex.getMessage());
+                }
+                // Show the heat map in the gutter
+                lineNumbers.setHeat(profile.heatByLine(codeArea.getLineCount()));
+                // Keep the profile for export
+                lastProfile = profile;
+                exportProfileBtn.setEnabled(true);
+                // Update status with the total
+                updateStatus(String.format("Profiled %d statements in %.3f ms", stmtCount, profile.totalNanos() / 1e6)
+                        + (warnings.isEmpty() ? "" : " (" + String.join("; ", warnings) + ")"));
+                // Reset running flag
+                isRunning = false;
+            }
+        }.execute();
+    }
+
+    // Method to export the last profile as CSV
+    private void exportProfile(ActionEvent e) {
+        // Nothing profiled yet
+        if (lastProfile == null) return;
+        // Create file chooser dialog
+        JFileChooser fileChooser = new JFileChooser();
+        // Set dialog title
+        fileChooser.setDialogTitle("Export Profile");
+        // Suggest a file name
+        fileChooser.setSelectedFile(new File("profile.csv"));
+        // Apply dark theme to file chooser
+        applyFileChooserTheme(fileChooser);
+        // Return if cancelled
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        // Write the CSV
+        try (Writer writer = new BufferedWriter(new FileWriter(fileChooser.getSelectedFile()))) {
+            lastProfile.writeCsv(writer);
+            updateStatus("Profile exported: " + fileChooser.getSelectedFile().getName());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Error exporting profile: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            updateStatus("Error exporting profile");
         }
     }
-        
+
+    // Method to show the find-usages window for the identifier at the caret
+    private void showUsages(ActionEvent e) {
+        // Build the window once
+        if (usagesDialog == null) usagesDialog = createUsagesDialog();
+        // Seed the query with the identifier under the caret
+        JTextField query = (JTextField) usagesDialog.getRootPane().getClientProperty("query");
+        String word = identifierAtCaret();
+        if (!word.isEmpty()) query.setText(word);
+        usagesDialog.setVisible(true);
+        query.requestFocusInWindow();
+        query.selectAll();
+    }
+
+    // Method to build the find-usages window
+    private JDialog createUsagesDialog() {
+        // Non-modal so the editor stays usable
+        JDialog dialog = new JDialog(this, "Find Usages", false);
+        dialog.setSize(420, 480);
+        dialog.setLocationRelativeTo(this);
+        // Query field and result summary
+        JTextField query = new JTextField();
+        JLabel info = new JLabel(" ");
+        info.setForeground(new Color(200, 150, 255));
+        // Results list
+        DefaultListModel<IdentifierIndex.Usage> model = new DefaultListModel<>();
+        JList<IdentifierIndex.Usage> list = new JList<>(model);
+        list.setFont(new Font("Consolas", Font.PLAIN, 13));
+        // Answer from the in-memory index on every keystroke
+        Runnable search = () -> {
+            long t0 = System.nanoTime();
+            List<IdentifierIndex.Usage> found = identifierIndex.usages(query.getText().trim());
+            double ms = (System.nanoTime() - t0) / 1e6;
+            model.clear();
+            model.addAll(found);
+            long fileCount = found.stream().map(u -> u.file).distinct().count();
+            info.setText(identifierIndex.isReady()
+                    ? String.format("%d usages in %d files (%.2f ms, %d files indexed)", found.size(), fileCount, ms, identifierIndex.fileCount())
+                    : "Indexing saved files...");
+        };
+        query.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent ev) { search.run(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent ev) { search.run(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent ev) {}
+        });
+        // Double-click (or Enter) opens the file at the usage's line
+        list.addMouseListener(new java.awt.event.MouseAdapter() {
+            @Override public void mouseClicked(java.awt.event.MouseEvent ev) {
+                if (ev.getClickCount() == 2 && list.getSelectedValue() != null) openUsage(list.getSelectedValue());
+            }
+        });
+        list.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "open");
+        list.getActionMap().put("open", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent ev) { if (list.getSelectedValue() != null) openUsage(list.getSelectedValue()); }
+        });
+        // Refresh when reopened (the index may have changed)
+        dialog.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override public void windowActivated(java.awt.event.WindowEvent ev) { search.run(); }
+        });
+        // Lay out
+        JPanel north = new JPanel(new BorderLayout(4, 4));
+        north.setBorder(new EmptyBorder(8, 8, 4, 8));
+        north.add(new JLabel("Identifier:"), BorderLayout.WEST);
+        north.add(query, BorderLayout.CENTER);
+        north.add(info, BorderLayout.SOUTH);
+        dialog.add(north, BorderLayout.NORTH);
+        dialog.add(new JScrollPane(list), BorderLayout.CENTER);
+        dialog.getRootPane().putClientProperty("query", query);
+        return dialog;
+    }
+
+    // Method to open a usage's file and move the caret to its line
+    private void openUsage(IdentifierIndex.Usage usage) {
+        // Selecting the dropdown entry loads the file
+        String displayName = "Saved: " + usage.file;
+        if (!fileModelContains(displayName)) fileModel.addElement(displayName);
+        if (!displayName.equals(tests.getSelectedItem())) tests.setSelectedItem(displayName);
+        // Jump to the line
+        Element root = codeArea.getDocument().getDefaultRootElement();
+        Element line = root.getElement(Math.min(usage.line, root.getElementCount()) - 1);
+        codeArea.setCaretPosition(line.getStartOffset());
+        codeArea.moveCaretPosition(Math.max(line.getStartOffset(), line.getEndOffset() - 1));
+        codeArea.requestFocusInWindow();
+    }
+
+    // Method to get the identifier under the caret (empty if none)
+    private String identifierAtCaret() {
+        CharSequence text = SourceText.of(codeArea.getDocument());
+        int start = Math.min(codeArea.getCaretPosition(), text.length());
+        int end = start;
+        while (start > 0 && MiniLexer.isIdentPart(text.charAt(start - 1))) start--;
+        while (end < text.length() && MiniLexer.isIdentPart(text.charAt(end))) end++;
+        // Must start like an identifier
+        if (start == end || !MiniLexer.isIdentStart(text.charAt(start))) return "";
+        return text.subSequence(start, end).toString();
+    }
+
+    // Method to show the live metrics window
+    private void showMetrics(ActionEvent e) {
+        // Build the window once
+        if (metricsDialog == null) metricsDialog = createMetricsDialog();
+        metricsDialog.setVisible(true);
+    }
+
+    // Method to format the metrics window's text
+    private String metricsReport() {
+        // Shadow comparisons follow the run metrics when shadow mode is on
+        return shadow == null ? metrics.report() : metrics.report() + System.lineSeparator() + shadow.report();
+    }
+
+    // Method to build the live metrics window
+    private JDialog createMetricsDialog() {
+        // Non-modal so runs can continue while it is open
+        JDialog dialog = new JDialog(this, "Metrics", false);
+        dialog.setSize(760, 420);
+        dialog.setLocationRelativeTo(this);
+        // Fixed-width report
+        JTextArea text = new JTextArea();
+        text.setEditable(false);
+        text.setFont(new Font("Consolas", Font.PLAIN, 13));
+        // Refresh once a second while visible
+        javax.swing.Timer refresh = new javax.swing.Timer(1000, ev -> text.setText(metricsReport()));
+        dialog.addComponentListener(new java.awt.event.ComponentAdapter() {
+            @Override public void componentShown(java.awt.event.ComponentEvent ev) { text.setText(metricsReport()); refresh.start(); }
+            @Override public void componentHidden(java.awt.event.ComponentEvent ev) { refresh.stop(); }
+        });
+        // Export and reset buttons
+        JButton export = createStyledButton("Export", new Color(138, 43, 226));
+        export.setToolTipText("Save the metrics in the Prometheus text format");
+        export.addActionListener(ev -> exportMetrics());
+        JButton reset = createStyledButton("Reset", new Color(75, 0, 130));
+        reset.addActionListener(ev -> { metrics.reset(); text.setText(metricsReport()); });
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 6));
+        buttons.add(export);
+        buttons.add(reset);
+        // Lay out
+        dialog.add(new JScrollPane(text), BorderLayout.CENTER);
+        dialog.add(buttons, BorderLayout.SOUTH);
+        return dialog;
+    }
+
+    // Method to save the metrics in the plain-text exposition format
+    private void exportMetrics() {
+        // Create file chooser dialog
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Export Metrics");
+        fileChooser.setSelectedFile(new File("metrics.prom"));
+        applyFileChooserTheme(fileChooser);
+        // Return if cancelled
+        if (fileChooser.showSaveDialog(metricsDialog) != JFileChooser.APPROVE_OPTION) return;
+        // Write the exposition
+        try (Writer writer = new BufferedWriter(new FileWriter(fileChooser.getSelectedFile()))) {
+            writer.write(metrics.exposition());
+            updateStatus("Metrics exported: " + fileChooser.getSelectedFile().getName());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(metricsDialog, "Error exporting metrics: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            updateStatus("Error exporting metrics");
+        }
+    }
+
+    // Method to report time-to-first-run once (when requested)
+    private void reportFirstRun() {
+        if (reportStartup && !firstRunReported) {
+            firstRunReported = true;
+            reportStartupTime("first run");
+        }
+    }
+
     // Main method to launch the application
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        // Startup options
+        List<String> flags = Arrays.asList(args);
+        // Headless server mode: --server [port]
+        if (args.length > 0 && args[0].equals("--server")) {
+            // Default port unless one is given
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 8765;
+            // One work slot per core, plus a bounded queue
+            MiniCompilerServer server = new MiniCompilerServer(port, Runtime.getRuntime().availableProcessors(), 256);
+            // Start accepting requests
+            server.start();
+            // Tell the user where to connect
+            System.out.println("Mini compiler server listening on http://127.0.0.1:" + server.getPort() + " (POST /compile, POST /run, GET /stats)");
+            return;
+        }
+        // Batch mode: --batch [dir] [--workers N] [--shard N] [--backend NAME] [--port N]
+        if (args.length > 0 && args[0].equals("--batch")) {
+            try {
+                System.exit(BatchCoordinator.main(args));
+            } catch (InterruptedException ex) {
+                System.exit(1);
+            }
+        }
+        // Batch worker JVM started by the coordinator (or by hand on another host): --batch-worker host:port [id]
+        if (args.length > 1 && args[0].equals("--batch-worker")) {
+            BatchWorker.main(args);
+            return;
+        }
+        // Lexer benchmark: scalar vs vector fast path
+        if (flags.contains("--bench-lexer")) {
+            RunScanner.benchmark(System.out);
+            return;
+        }
+        // --startup-report prints timings, --train does a scripted first run and exits (for AppCDS)
+        boolean report = flags.contains("--startup-report");
+        boolean train = flags.contains("--train");
+        // --stdin FILE attaches a file as program input, --stdin - attaches this process's piped stdin
+        int stdinArg = flags.indexOf("--stdin");
+        String stdin = stdinArg >= 0 && stdinArg + 1 < args.length ? args[stdinArg + 1] : null;
         // Run on Event Dispatch Thread
-        SwingUtilities.invokeLater(() -> new MiniCompilerGUI().setVisible(true));
+        SwingUtilities.invokeLater(() -> {
+            MiniCompilerGUI gui = new MiniCompilerGUI(report || train, train);
+            if ("-".equals(stdin)) gui.attachPipedStdin(System.in);
+            else if (stdin != null) gui.attachStdin(new File(stdin));
+            gui.setVisible(true);
+        });
     }
 }
 
@@ -1310,6 +2327,12 @@ class LineNumberView extends JComponent {
     private final JTextArea textArea;
     // Font for line numbers
     private final Font numberFont = new Font("Segoe UI", Font.PLAIN, 11);
+    // Color for lines with diagnostics
+    private static final Color ERROR_COLOR = new Color(255, 85, 85);
+    // 1-based lines that have diagnostics
+    private Set<Integer> errorLines = Collections.emptySet();
+    // Profiling heat per 0-based line (0..1), or null when no profile is shown
+    private double[] heat;
 
     // Constructor to initialize line number view
     LineNumberView(JTextArea textArea) {
@@ -1323,18 +2346,44 @@ class LineNumberView extends JComponent {
         setOpaque(true);
 
         // Add document listener to repaint when text changes
-        textArea.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
-            // Repaint when text is inserted
-            public void insertUpdate(javax.swing.event.DocumentEvent e) { repaint(); revalidate(); }
-            // Repaint when text is removed
-            public void removeUpdate(javax.swing.event.DocumentEvent e) { repaint(); revalidate(); }
+        javax.swing.event.DocumentListener edits = new javax.swing.event.DocumentListener() {
+            // Repaint when text is inserted (a profile no longer matches the lines)
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { heat = null; repaint(); revalidate(); }
+            // Repaint when text is removed (a profile no longer matches the lines)
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { heat = null; repaint(); revalidate(); }
             // Repaint when text is changed
             public void changedUpdate(javax.swing.event.DocumentEvent e) { repaint(); revalidate(); }
+        };
+        textArea.getDocument().addDocumentListener(edits);
+        // Follow the editor to another document (switching files) and drop the old one's markers
+        textArea.addPropertyChangeListener("document", e -> {
+            ((Document) e.getOldValue()).removeDocumentListener(edits);
+            ((Document) e.getNewValue()).addDocumentListener(edits);
+            heat = null;
+            errorLines = Collections.emptySet();
+            repaint();
+            revalidate();
         });
         // Add caret listener to repaint when cursor moves
         textArea.addCaretListener(e -> repaint());
     }
 
+    // Method to mark lines that have diagnostics
+    void setDiagnostics(List<MiniDiagnostic> diagnostics) {
+        // Collect 1-based lines
+        Set<Integer> lines = new HashSet<>();
+        for (MiniDiagnostic d : diagnostics) lines.add(d.line);
+        errorLines = lines;
+        // Repaint markers
+        repaint();
+    }
+
+    // Method to show a profiling heat map (null clears it)
+    void setHeat(double[] heatByLine) {
+        heat = heatByLine;
+        repaint();
+    }
+
     // Override to calculate preferred size based on line count
     @Override
     public Dimension getPreferredSize() {
@@ -1387,8 +2436,22 @@ class LineNumberView extends JComponent {
                 int x = getPreferredSize().width - MARGIN - g.getFontMetrics().stringWidth(lineNumber);
                 // Calculate y position (baseline)
                 int y = r.y + r.height - g.getFontMetrics().getDescent();
+                // Hot lines get an orange background scaled by their share of run time
+                if (heat != null && line < heat.length && heat[line] > 0) {
+                    g.setColor(new Color(255, 110, 0, (int) (40 + 180 * heat[line])));
+                    g.fillRect(0, r.y, getWidth() - 1, r.height);
+                    g.setColor(getForeground());
+                }
+                // Lines with diagnostics get a red number and marker
+                boolean error = errorLines.contains(line + 1);
+                if (error) {
+                    g.setColor(ERROR_COLOR);
+                    g.fillOval(1, r.y + r.height / 2 - 2, 4, 4);
+                }
                 // Draw line number
                 g.drawString(lineNumber, x, y);
+                // Restore number color
+                if (error) g.setColor(getForeground());
                 // Move to next line
                 startOffset = textArea.getLineEndOffset(line) + 1;
             } catch (Exception ex) {
@@ -1403,4 +2466,7151 @@ class LineNumberView extends JComponent {
         // Draw vertical line on right edge
         g.drawLine(getWidth() - 1, clip.y, getWidth() - 1, clip.y + clip.height);
     }
-}
\ No newline at end of file
+}
+// --- Spill-to-disk buffer for large program output ---
+class OutputSpool implements Closeable, Appendable {
+    // Characters kept on the heap before output spills to a temp file
+    static final int SPILL_THRESHOLD = 1 << 20;
+    // Size of each memory-mapped window over the spill file
+    private static final long MAP_CHUNK = 1L << 30;
+    // Longest line prefix decoded for display
+    static final int MAX_LINE_CHARS = 4096;
+
+    // Character count that triggers the spill
+    private final int threshold;
+    // In-memory output until the spill happens
+    private StringBuilder memory = new StringBuilder();
+    // Temp file holding spilled output
+    private File spillFile;
+    // Writer into the spill file
+    private Writer spillWriter;
+    // Byte length of the spill file
+    private long byteLength;
+    // Start offset of every line in the spill file
+    private long[] lineStarts = new long[1024];
+    // Number of recorded line starts
+    private int lineStartCount = 1;
+    // Longest line seen so far (in bytes)
+    private long longestLine;
+    // Last byte written (to detect a trailing newline)
+    private int lastByte = -1;
+    // Memory-mapped windows over the finished spill file
+    private MappedByteBuffer[] maps;
+    // Channel backing the mapped windows
+    private FileChannel channel;
+    // Holders of the spool (the owner plus running searches); resources are released when it drops to 0
+    private int refs = 1;
+    // Whether the owner closed the spool
+    private boolean closed;
+
+    // Constructor taking the spill threshold in characters
+    OutputSpool(int threshold) {
+        this.threshold = threshold;
+    }
+
+    // Factory for a small in-memory spool holding one message
+    static OutputSpool of(String text) {
+        // Create spool that never spills
+        OutputSpool spool = new OutputSpool(Integer.MAX_VALUE);
+        // Store the message
+        spool.memory.append(text);
+        // Return the spool
+        return spool;
+    }
+
+    // Method to append text (spills once the threshold is exceeded)
+    public OutputSpool append(CharSequence text) {
+        try {
+            // Write straight to disk once spilled
+            if (spillWriter != null) {
+                spillWriter.append(text);
+                return this;
+            }
+            // Otherwise keep in memory
+            memory.append(text);
+            // Spill when the threshold is exceeded
+            if (memory.length() > threshold) spill();
+        } catch (IOException ex) {
+            // Surface disk errors to the caller like other I/O failures
+            throw new UncheckedIOException(ex);
+        }
+        return this;
+    }
+
+    // Method to append a single character
+    public OutputSpool append(char c) {
+        // Delegate to the text version
+        return append(String.valueOf(c));
+    }
+
+    // Method to append part of a character sequence
+    public OutputSpool append(CharSequence text, int start, int end) {
+        // Delegate to the text version
+        return append(text.subSequence(start, end));
+    }
+
+    // Method to move the in-memory output to a temp file
+    private void spill() throws IOException {
+        // Create temp file removed on exit
+        spillFile = File.createTempFile("output", ".spool");
+        spillFile.deleteOnExit();
+        // Create writer that indexes line starts as bytes pass through
+        spillWriter = new BufferedWriter(new OutputStreamWriter(
+                new LineIndexingStream(new FileOutputStream(spillFile)), StandardCharsets.UTF_8), 1 << 16);
+        // Move buffered output to disk
+        spillWriter.append(memory);
+        // Release the heap copy
+        memory = null;
+    }
+
+    // Method to seal the spool and map the spill file for reading
+    void finish() throws IOException {
+        // Nothing to do if output stayed in memory
+        if (spillWriter == null) return;
+        // Flush and close the writer
+        spillWriter.close();
+        // Open channel for mapping
+        channel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ);
+        // Map the file in windows of at most MAP_CHUNK bytes
+        maps = new MappedByteBuffer[(int) ((byteLength + MAP_CHUNK - 1) / MAP_CHUNK)];
+        for (int i = 0; i < maps.length; i++) {
+            // Start of this window
+            long start = i * MAP_CHUNK;
+            // Map window
+            maps[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_CHUNK, byteLength - start));
+        }
+    }
+
+    // Check whether output went to the temp file
+    boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    // Get number of displayable lines
+    int getLineCount() {
+        // A trailing newline doesn't start a visible line
+        return lastByte == '\n' ? lineStartCount - 1 : lineStartCount;
+    }
+
+    // Get size of the spilled output in bytes
+    long getByteLength() {
+        return byteLength;
+    }
+
+    // Get length of the longest line (capped for display)
+    int getLongestLine() {
+        return (int) Math.min(longestLine, MAX_LINE_CHARS);
+    }
+
+    // Method to decode one line of the spill file
+    String lineText(int line) {
+        // Start of the line
+        long start = lineStarts[line];
+        // End of the line (exclusive, without the newline)
+        long end = line + 1 < lineStartCount ? lineStarts[line + 1] - 1 : byteLength;
+        // Drop a Windows carriage return
+        if (end > start && byteAt(end - 1) == '\r') end--;
+        // Cap very long lines
+        int len = (int) Math.min(end - start, MAX_LINE_CHARS);
+        // Copy line bytes out of the mapping
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) bytes[i] = byteAt(start + i);
+        // Decode as UTF-8
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Method to read one byte from the mapped windows
+    private byte byteAt(long pos) {
+        return maps[(int) (pos / MAP_CHUNK)].get((int) (pos % MAP_CHUNK));
+    }
+
+    // Method to find the next occurrence of text at or after a byte offset (-1 if none; hold a retain() while calling)
+    long find(String text, long from) {
+        // Encode the needle like the file
+        byte[] needle = text.getBytes(StandardCharsets.UTF_8);
+        int m = needle.length;
+        if (m == 0) return -1;
+        // Boyer-Moore-Horspool shift per byte value (how far the window may jump when it ends in that byte)
+        int[] shift = new int[256];
+        Arrays.fill(shift, m);
+        for (int i = 0; i < m - 1; i++) shift[needle[i] & 0xff] = m - 1 - i;
+        byte lastByte = needle[m - 1];
+        // Last position where the needle still fits
+        long last = byteLength - m;
+        long pos = Math.max(0, from);
+        while (pos <= last) {
+            int w = (int) (pos / MAP_CHUNK);
+            MappedByteBuffer map = maps[w];
+            long base = w * MAP_CHUNK;
+            int p = (int) (pos - base);
+            if (p + m <= map.limit()) {
+                // Needle fits inside this window: absolute gets on the mapping, no per-byte window math
+                int end = (int) Math.min(map.limit() - m, last - base);
+                while (p <= end) {
+                    byte b = map.get(p + m - 1);
+                    if (b == lastByte) {
+                        int i = m - 2;
+                        while (i >= 0 && map.get(p + i) == needle[i]) i--;
+                        if (i < 0) return base + p;
+                    }
+                    p += shift[b & 0xff];
+                }
+                pos = base + p;
+            } else {
+                // Needle straddles two windows (at most m - 1 positions per boundary)
+                int i = m - 1;
+                while (i >= 0 && byteAt(pos + i) == needle[i]) i--;
+                if (i < 0) return pos;
+                pos += shift[byteAt(pos + m - 1) & 0xff];
+            }
+        }
+        // Not found
+        return -1;
+    }
+
+    // Method to map a byte offset to its line number
+    int lineOfOffset(long pos) {
+        // Binary search the line start index
+        int idx = Arrays.binarySearch(lineStarts, 0, lineStartCount, pos);
+        // Exact hit is a line start, otherwise the insertion point follows the line
+        return idx >= 0 ? idx : -idx - 2;
+    }
+
+    // Get the start offset of a line
+    long lineStart(int line) {
+        return lineStarts[line];
+    }
+
+    // Method to keep the spool's file and mapping alive for a background reader (false once it is closed)
+    synchronized boolean retain() {
+        if (closed) return false;
+        refs++;
+        return true;
+    }
+
+    // Method to drop a retain(); the last holder releases the resources
+    void release() {
+        synchronized (this) {
+            if (--refs > 0) return;
+        }
+        dispose();
+    }
+
+    // Method to close the spool (deferred until running searches release it)
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        release();
+    }
+
+    // Method to release the mapping and delete the temp file
+    private void dispose() {
+        try {
+            // Close writer if still open
+            if (spillWriter != null) spillWriter.close();
+            // Close channel
+            if (channel != null) channel.close();
+        } catch (IOException ignored) {} // Ignore close failures
+        // Drop mappings so the file can be unmapped
+        maps = null;
+        // Delete temp file (may be deferred to exit on Windows while still mapped)
+        if (spillFile != null) spillFile.delete();
+    }
+
+    // Method to copy the whole output to a stream as UTF-8 (from memory or the spill file); returns the byte count
+    long writeTo(OutputStream out) throws IOException {
+        if (spillFile == null) return SourceText.writeUtf8(memory, out);
+        // Still being written: push buffered text to the file first
+        if (channel == null) spillWriter.flush();
+        return java.nio.file.Files.copy(spillFile.toPath(), out);
+    }
+
+    // Return in-memory output (empty once spilled)
+    @Override
+    public String toString() {
+        return memory == null ? "" : memory.toString();
+    }
+
+    // Output stream that records line start offsets as bytes are written
+    private class LineIndexingStream extends FilterOutputStream {
+        // Byte offset where the current line started
+        private long currentLineStart;
+
+        // Constructor wrapping the file stream
+        LineIndexingStream(OutputStream out) {
+            super(out);
+        }
+
+        // Record one byte
+        @Override
+        public void write(int b) throws IOException {
+            // Write through
+            out.write(b);
+            // Index it
+            index((byte) b);
+        }
+
+        // Record a block of bytes
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // Write through in one call
+            out.write(b, off, len);
+            // Index each byte
+            for (int i = off; i < off + len; i++) index(b[i]);
+        }
+
+        // Method to track offsets and line starts for one byte
+        private void index(byte b) {
+            // Advance the file length
+            byteLength++;
+            // Remember the last byte
+            lastByte = b;
+            // Only newlines start a new line
+            if (b != '\n') return;
+            // Track the longest line
+            longestLine = Math.max(longestLine, byteLength - 1 - currentLineStart);
+            // Grow the index when full
+            if (lineStartCount == lineStarts.length) lineStarts = Arrays.copyOf(lineStarts, lineStartCount * 2);
+            // Record the next line start
+            lineStarts[lineStartCount++] = byteLength;
+            // Remember where the new line starts
+            currentLineStart = byteLength;
+        }
+
+        // Close and finalize the longest-line measurement
+        @Override
+        public void close() throws IOException {
+            // Account for a last line without a newline
+            longestLine = Math.max(longestLine, byteLength - currentLineStart);
+            // Close the file
+            super.close();
+        }
+    }
+}
+
+// --- Virtual viewer that paints only the visible lines of a spilled output ---
+class SpoolView extends JComponent implements Scrollable {
+    // Serialization version (JComponent is Serializable)
+    private static final long serialVersionUID = 1L;
+    // Margin around the text
+    private static final int MARGIN = 6;
+    // Font matching the output area
+    private final Font font = new Font("Consolas", Font.PLAIN, 12);
+    // Spool being displayed
+    private OutputSpool spool;
+    // Byte offset of the current search match (-1 if none)
+    private long matchOffset = -1;
+    // Line of the current search match
+    private int matchLine = -1;
+
+    // Constructor to set colors
+    SpoolView() {
+        // Set text color
+        setForeground(new Color(220, 220, 220));
+        // Set background color
+        setBackground(new Color(15, 15, 15));
+        // Make component opaque
+        setOpaque(true);
+        // Use the output font
+        setFont(font);
+    }
+
+    // Method to show a new spool (closes the previous one)
+    void setSpool(OutputSpool newSpool) {
+        // Release the old spill file
+        if (spool != null && spool != newSpool) spool.close();
+        // Store new spool
+        spool = newSpool;
+        // Reset search state
+        matchOffset = -1;
+        matchLine = -1;
+        // Resize and repaint
+        revalidate();
+        repaint();
+    }
+
+    // Get the spool being displayed
+    OutputSpool getSpool() {
+        return spool;
+    }
+
+    // Get number of lines shown
+    int getLineCount() {
+        return spool == null ? 0 : spool.getLineCount();
+    }
+
+    // Get the offset of the current match
+    long getMatchOffset() {
+        return matchOffset;
+    }
+
+    // Method to highlight a search match and scroll to it
+    void showMatch(long offset) {
+        // Store match
+        matchOffset = offset;
+        matchLine = spool.lineOfOffset(offset);
+        // Reveal it
+        scrollToLine(matchLine);
+        // Repaint highlight
+        repaint();
+    }
+
+    // Method to scroll a line into view
+    void scrollToLine(int line) {
+        // Nothing to scroll to
+        if (line < 0) return;
+        // Height of one line
+        int lh = getFontMetrics(font).getHeight();
+        // Scroll the line's rectangle into view
+        scrollRectToVisible(new Rectangle(0, MARGIN + line * lh, 1, lh));
+    }
+
+    // Override to size the view by line count instead of content
+    @Override
+    public Dimension getPreferredSize() {
+        // Get font metrics
+        FontMetrics fm = getFontMetrics(font);
+        // Nothing to show
+        if (spool == null) return new Dimension(0, 0);
+        // Width of the longest line
+        int width = MARGIN * 2 + fm.charWidth('m') * spool.getLongestLine();
+        // Height of all lines (clamped to what Swing can lay out)
+        long height = MARGIN * 2L + (long) fm.getHeight() * spool.getLineCount();
+        // Return preferred dimension
+        return new Dimension(width, (int) Math.min(height, Integer.MAX_VALUE));
+    }
+
+    // Override to paint only the lines in the clip
+    @Override
+    protected void paintComponent(Graphics g) {
+        // Get clip bounds
+        Rectangle clip = g.getClipBounds();
+        // Fill background
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        // Nothing else to paint
+        if (spool == null) return;
+        // Set font
+        g.setFont(font);
+        // Get font metrics
+        FontMetrics fm = g.getFontMetrics();
+        // Height of one line
+        int lh = fm.getHeight();
+        // First visible line
+        int first = Math.max(0, (clip.y - MARGIN) / lh);
+        // Last visible line
+        int last = Math.min(spool.getLineCount() - 1, (clip.y + clip.height - MARGIN) / lh);
+        // Paint visible lines
+        for (int line = first; line <= last; line++) {
+            // Top of this line
+            int y = MARGIN + line * lh;
+            // Highlight the search match line
+            if (line == matchLine) {
+                g.setColor(new Color(75, 0, 130));
+                g.fillRect(clip.x, y, clip.width, lh);
+            }
+            // Draw line text
+            g.setColor(getForeground());
+            g.drawString(spool.lineText(line), MARGIN, y + fm.getAscent());
+        }
+    }
+
+    // Viewport size follows the preferred size
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    // Scroll one line per unit
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? getFontMetrics(font).getHeight() : getFontMetrics(font).charWidth('m');
+    }
+
+    // Scroll one page per block
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    // Fill the viewport width when narrower
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+    }
+
+    // Fill the viewport height when shorter
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+    }
+}
+
+// --- Token kinds shared by the Java front end (mirrors the tokens in parser.y) ---
+final class TokenKind {
+    // End of input
+    static final byte EOF = 0;
+    // 'cin' keyword
+    static final byte CIN = 1;
+    // 'cout' keyword
+    static final byte COUT = 2;
+    // '>>' operator
+    static final byte SHIFTIN = 3;
+    // '<<' operator
+    static final byte SHIFTOUT = 4;
+    // '=' operator
+    static final byte ASSIGN = 5;
+    // '+' operator
+    static final byte PLUS = 6;
+    // ';' terminator
+    static final byte SEMI = 7;
+    // Integer literal (value holds the number)
+    static final byte NUMBER = 8;
+    // String literal (span includes the quotes)
+    static final byte STRINGLIT = 9;
+    // Identifier
+    static final byte IDENT = 10;
+    // Any other single character (value holds the character code)
+    static final byte CHAR = 11;
+
+    // Names used in diagnostics and token dumps
+    private static final String[] NAMES = {
+        "EOF", "CIN", "COUT", "SHIFTIN", "SHIFTOUT", "'='", "'+'", "';'", "NUMBER", "STRINGLIT", "IDENT", "CHAR"
+    };
+
+    // No instances
+    private TokenKind() {}
+
+    // Get the display name of a kind
+    static String name(int kind) {
+        return kind >= 0 && kind < NAMES.length ? NAMES[kind] : "?";
+    }
+}
+
+// --- Growable, reusable token storage (parallel arrays, no per-token objects) ---
+final class TokenBuffer {
+    // Kind of each token
+    private byte[] kinds;
+    // Start offset of each token in the source
+    private int[] starts;
+    // Length of each token in the source
+    private int[] lengths;
+    // Inline value (number or character code)
+    private int[] values;
+    // Number of tokens stored
+    private int size;
+
+    // Constructor with a default capacity
+    TokenBuffer() {
+        this(256);
+    }
+
+    // Constructor with an initial capacity
+    TokenBuffer(int capacity) {
+        kinds = new byte[Math.max(16, capacity)];
+        starts = new int[kinds.length];
+        lengths = new int[kinds.length];
+        values = new int[kinds.length];
+    }
+
+    // Method to append a token
+    void add(byte kind, int start, int length, int value) {
+        // Grow arrays when full
+        if (size == kinds.length) grow(size * 2);
+        // Store fields
+        kinds[size] = kind;
+        starts[size] = start;
+        lengths[size] = length;
+        values[size] = value;
+        // Advance count
+        size++;
+    }
+
+    // Method to append every token of another buffer, shifting offsets
+    void addAll(TokenBuffer other, int offsetShift) {
+        // Make room once
+        if (size + other.size > kinds.length) grow(Math.max(size + other.size, size * 2));
+        // Copy arrays in bulk
+        System.arraycopy(other.kinds, 0, kinds, size, other.size);
+        System.arraycopy(other.lengths, 0, lengths, size, other.size);
+        System.arraycopy(other.values, 0, values, size, other.size);
+        // Shift start offsets into this buffer's coordinates
+        for (int i = 0; i < other.size; i++) starts[size + i] = other.starts[i] + offsetShift;
+        // Advance count
+        size += other.size;
+    }
+
+    // Method to resize the arrays
+    private void grow(int capacity) {
+        kinds = Arrays.copyOf(kinds, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    // Method to move token i to another span (used when remapping byte offsets to chars)
+    void setSpan(int i, int start, int length) {
+        starts[i] = start;
+        lengths[i] = length;
+    }
+
+    // Method to reuse the buffer without reallocating
+    void clear() {
+        size = 0;
+    }
+
+    // Get number of tokens
+    int size() {
+        return size;
+    }
+
+    // Get kind of token i
+    byte kind(int i) {
+        return kinds[i];
+    }
+
+    // Get start offset of token i
+    int start(int i) {
+        return starts[i];
+    }
+
+    // Get length of token i
+    int length(int i) {
+        return lengths[i];
+    }
+
+    // Get inline value of token i
+    int value(int i) {
+        return values[i];
+    }
+
+    // Get end offset of token i
+    int end(int i) {
+        return starts[i] + lengths[i];
+    }
+
+    // Method to compare two buffers token by token
+    boolean sameTokens(TokenBuffer other) {
+        // Sizes must match
+        if (size != other.size) return false;
+        // Compare every field
+        return Arrays.equals(kinds, 0, size, other.kinds, 0, size)
+                && Arrays.equals(starts, 0, size, other.starts, 0, size)
+                && Arrays.equals(lengths, 0, size, other.lengths, 0, size)
+                && Arrays.equals(values, 0, size, other.values, 0, size);
+    }
+}
+
+// --- Java lexer following the rules in lexer.l ---
+final class MiniLexer {
+    // Smallest source worth lexing in parallel
+    static final int PARALLEL_MIN_CHARS = 1 << 20;
+    // Target chunk size for parallel lexing
+    static final int CHUNK_CHARS = 1 << 18;
+    // Whether large sources are lexed in parallel (off with -Dmini.lex.parallel=false)
+    static final boolean PARALLEL = !"false".equals(System.getProperty("mini.lex.parallel"));
+    // Smallest source worth copying into an array for the vector fast path
+    static final int SIMD_MIN_CHARS = 1 << 12;
+    // Vector API run scanner, opt-in with -Dmini.lex.simd=true (null otherwise, or when the incubator module or class is missing)
+    static final RunScanner SIMD = RunScanner.loadVector();
+
+    // No instances
+    private MiniLexer() {}
+
+    // Method to lex a source, in parallel when it is large enough
+    static TokenBuffer lexAuto(CharSequence src) {
+        // One core gains nothing and pays for the pre-scan
+        boolean split = PARALLEL && src.length() >= PARALLEL_MIN_CHARS && Runtime.getRuntime().availableProcessors() > 1;
+        return split ? lexParallel(src, CHUNK_CHARS) : lex(src);
+    }
+
+    // Method to lex chunks on fork/join workers and stitch them (same tokens as lex)
+    static TokenBuffer lexParallel(CharSequence src, int chunkChars) {
+        // Chunk boundaries that are safe token starts
+        int[] cuts = splitPoints(src, chunkChars);
+        // Array-backed view for the vector fast path
+        CharSequence view = simdView(src);
+        int chunks = cuts.length - 1;
+        TokenBuffer[] parts = new TokenBuffer[chunks];
+        // Lex every chunk in parallel (offsets stay absolute)
+        java.util.concurrent.ForkJoinPool.commonPool().invoke(new java.util.concurrent.RecursiveAction() {
+            @Override protected void compute() {
+                java.util.concurrent.RecursiveAction[] tasks = new java.util.concurrent.RecursiveAction[chunks];
+                for (int k = 0; k < chunks; k++) {
+                    int chunk = k;
+                    tasks[k] = new java.util.concurrent.RecursiveAction() {
+                        @Override protected void compute() {
+                            TokenBuffer out = new TokenBuffer(Math.max(16, (cuts[chunk + 1] - cuts[chunk]) / 4));
+                            lex(view, cuts[chunk], cuts[chunk + 1], out);
+                            parts[chunk] = out;
+                        }
+                    };
+                }
+                invokeAll(tasks);
+            }
+        });
+        // Stitch in order with one allocation
+        int total = 0;
+        for (TokenBuffer part : parts) total += part.size();
+        TokenBuffer out = new TokenBuffer(Math.max(16, total));
+        for (TokenBuffer part : parts) out.addAll(part, 0);
+        return out;
+    }
+
+    // Method to give the vector fast path an array to read (a Segment is used as is, a large String is copied once)
+    static CharSequence simdView(CharSequence src) {
+        if (SIMD == null || src instanceof Segment || !(src instanceof String) || src.length() < SIMD_MIN_CHARS) return src;
+        char[] chars = ((String) src).toCharArray();
+        return new Segment(chars, 0, chars.length);
+    }
+
+    // Method to pre-scan for chunk boundaries: whitespace outside string literals, about chunkChars apart
+    static int[] splitPoints(CharSequence src, int chunkChars) {
+        int n = src.length();
+        int[] cuts = new int[Math.max(2, n / Math.max(1, chunkChars) + 2)];
+        int count = 0;
+        cuts[count++] = 0;
+        int target = chunkChars;
+        int i = 0;
+        while (i < n) {
+            char c = src.charAt(i);
+            // Outside literals every quote is where the lexer tries a {STRING}; skip it exactly as the lexer would
+            if (c == '"') {
+                int end = stringEnd(src, i, n);
+                if (end > 0) { i = end; continue; }
+            } else if (i >= target && isSpace(c)) {
+                // Whitespace outside a literal never belongs to a token, so lexing can restart here
+                if (count == cuts.length - 1) cuts = Arrays.copyOf(cuts, cuts.length * 2);
+                cuts[count++] = i;
+                target = i + chunkChars;
+            }
+            i++;
+        }
+        cuts[count++] = n;
+        return Arrays.copyOf(cuts, count);
+    }
+
+    // Method to lex a whole source
+    static TokenBuffer lex(CharSequence src) {
+        // Create buffer sized for a typical token density
+        TokenBuffer out = new TokenBuffer(Math.max(16, src.length() / 4));
+        // Lex everything
+        lex(simdView(src), 0, src.length(), out);
+        // Return tokens
+        return out;
+    }
+
+    // Method to lex src[from, to) into out (flex longest-match semantics, rule order breaks ties)
+    static void lex(CharSequence src, int from, int to, TokenBuffer out) {
+        lex(src, from, to, out, SIMD);
+    }
+
+    // Method to lex with an explicit run scanner (null for the scalar loops; benchmarks compare both)
+    static void lex(CharSequence src, int from, int to, TokenBuffer out, RunScanner simd) {
+        // Backing array for the vector fast path (only Segments expose one)
+        char[] a = null;
+        int base = 0;
+        if (simd != null && src instanceof Segment) {
+            a = ((Segment) src).array;
+            base = ((Segment) src).offset;
+        }
+        // Current position
+        int i = from;
+        // Loop until the end of the range
+        while (i < to) {
+            // Current character
+            char c = src.charAt(i);
+            // {WS} is skipped (a whole run at a time on the fast path)
+            if (isSpace(c)) { i = a != null ? simd.skipSpaces(a, base + i + 1, base + to) - base : i + 1; continue; }
+            // Start of this token
+            int start = i;
+            // {ID}, "cin" and "cout"
+            if (isIdentStart(c)) {
+                // Consume identifier characters
+                i++;
+                if (a != null) i = simd.skipIdentParts(a, base + i, base + to) - base;
+                else while (i < to && isIdentPart(src.charAt(i))) i++;
+                // Keywords only win on an exact-length match
+                out.add(keywordKind(src, start, i - start), start, i - start, 0);
+                continue;
+            }
+            // {INT}
+            if (isDigit(c)) {
+                // Accumulate digits like atoi (wrapping on overflow)
+                long v = 0;
+                if (a != null) {
+                    // Find the run first, then accumulate
+                    int end = simd.skipDigits(a, base + i, base + to) - base;
+                    for (; i < end; i++) v = v * 10 + (a[base + i] - '0');
+                } else {
+                    while (i < to && isDigit(src.charAt(i))) v = v * 10 + (src.charAt(i++) - '0');
+                }
+                // Add number token
+                out.add(TokenKind.NUMBER, start, i - start, (int) v);
+                continue;
+            }
+            // {STRING}: quoted text where backslash escapes any character except newline
+            if (c == '"') {
+                // End of the literal if it is well formed (-1 otherwise)
+                int end = stringEnd(src, i, to);
+                if (end > 0) {
+                    // Add string token including quotes
+                    out.add(TokenKind.STRINGLIT, start, end - start, 0);
+                    i = end;
+                    continue;
+                }
+            }
+            // Two-character operators
+            if (i + 1 < to && (c == '>' || c == '<') && src.charAt(i + 1) == c) {
+                // Add shift operator
+                out.add(c == '>' ? TokenKind.SHIFTIN : TokenKind.SHIFTOUT, start, 2, 0);
+                i += 2;
+                continue;
+            }
+            // Single-character tokens
+            byte kind = c == '=' ? TokenKind.ASSIGN : c == '+' ? TokenKind.PLUS : c == ';' ? TokenKind.SEMI : TokenKind.CHAR;
+            // Add it (only CHAR tokens carry their character code)
+            out.add(kind, start, 1, kind == TokenKind.CHAR ? c : 0);
+            i++;
+        }
+    }
+
+    // Method to find the end (exclusive) of a string literal starting at i, or -1 if unterminated
+    static int stringEnd(CharSequence src, int i, int to) {
+        // Skip opening quote
+        int j = i + 1;
+        while (j < to) {
+            // Current character
+            char c = src.charAt(j);
+            // Closing quote ends the literal
+            if (c == '"') return j + 1;
+            // Escape consumes the next character (but '.' never matches a newline)
+            if (c == '\\') {
+                if (j + 1 >= to || src.charAt(j + 1) == '\n') return -1;
+                j += 2;
+                continue;
+            }
+            // Any other character (newlines included) is part of the literal
+            j++;
+        }
+        // No closing quote
+        return -1;
+    }
+
+    // Method to classify an identifier as keyword or IDENT
+    private static byte keywordKind(CharSequence src, int start, int len) {
+        // "cin"
+        if (len == 3 && src.charAt(start) == 'c' && src.charAt(start + 1) == 'i' && src.charAt(start + 2) == 'n') return TokenKind.CIN;
+        // "cout"
+        if (len == 4 && src.charAt(start) == 'c' && src.charAt(start + 1) == 'o' && src.charAt(start + 2) == 'u'
+                && src.charAt(start + 3) == 't') return TokenKind.COUT;
+        // Plain identifier
+        return TokenKind.IDENT;
+    }
+
+    // Check {WS} characters
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    // Check identifier start characters
+    static boolean isIdentStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    // Check identifier characters
+    static boolean isIdentPart(char c) {
+        return isIdentStart(c) || isDigit(c);
+    }
+
+    // Check digits
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Method to unquote and unescape a string literal (same as unescape_and_unquote in lexer.l)
+    static String unescape(CharSequence src, int start, int len) {
+        // Builder for the result
+        StringBuilder sb = new StringBuilder(len);
+        // Walk the characters between the quotes
+        for (int i = start + 1; i < start + len - 1; i++) {
+            // Current character
+            char c = src.charAt(i);
+            // Handle escape sequences
+            if (c == '\\' && i + 1 < start + len - 1) {
+                char nx = src.charAt(++i);
+                switch (nx) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    default -> sb.append(nx);
+                }
+            } else {
+                // Copy other characters
+                sb.append(c);
+            }
+        }
+        // Return unescaped text
+        return sb.toString();
+    }
+}
+
+// --- Run-skipping hook for the lexer's vector fast path ---
+interface RunScanner {
+    // Method to find the first index in a[from, to) that is not {WS}
+    int skipSpaces(char[] a, int from, int to);
+
+    // Method to find the first index in a[from, to) that is not an identifier character
+    int skipIdentParts(char[] a, int from, int to);
+
+    // Method to find the first index in a[from, to) that is not a digit
+    int skipDigits(char[] a, int from, int to);
+
+    // Method to load the lexer's vector scanner when switched on (short tokens lex slower on it; see --bench-lexer)
+    static RunScanner loadVector() {
+        return Boolean.getBoolean("mini.lex.simd") ? probeVector() : null;
+    }
+
+    // Method to load the Vector API scanner (VectorRunScanner.java) if it and the incubator module are present
+    static RunScanner probeVector() {
+        try {
+            RunScanner scanner = (RunScanner) Class.forName("VectorRunScanner").getConstructor().newInstance();
+            // Make sure the vector classes actually link and agree with the scalar rules
+            char[] probe = "    abc_09 123456789012345678901234567890;".toCharArray();
+            if (scanner.skipSpaces(probe, 0, probe.length) != 4 || scanner.skipIdentParts(probe, 4, probe.length) != 10) return null;
+            return scanner;
+        } catch (Throwable ex) {
+            // Missing class, missing --add-modules jdk.incubator.vector, or unsupported CPU: stay scalar
+            return null;
+        }
+    }
+
+    // Method to compare scalar and vector lexing throughput (--bench-lexer)
+    static void benchmark(PrintStream out) {
+        // Measured whether or not -Dmini.lex.simd=true switches it on for the lexer
+        RunScanner simd = probeVector();
+        out.println("Lexer fast path: " + (simd != null ? simd + (MiniLexer.SIMD != null ? " (on)" : " (off, enable with -Dmini.lex.simd=true)")
+                : "unavailable (run with --add-modules jdk.incubator.vector)"));
+        // Inputs with short tokens, long identifiers and deep indentation
+        String[][] inputs = {
+            { "short tokens", "x = y + 1;\ncout << x;\n" },
+            { "long identifiers", "total_running_balance_for_account = previous_running_balance_for_account + 1234567890;\n" },
+            { "indented", "                                        x = x + 1;\n" },
+        };
+        for (String[] input : inputs) {
+            // About 32M chars, as a Segment so both paths lex the same array
+            char[] chars = input[1].repeat((32 << 20) / input[1].length()).toCharArray();
+            Segment src = new Segment(chars, 0, chars.length);
+            TokenBuffer scalar = new TokenBuffer(chars.length / 4);
+            TokenBuffer vector = new TokenBuffer(chars.length / 4);
+            long bestScalar = Long.MAX_VALUE;
+            long bestVector = Long.MAX_VALUE;
+            // Best of several rounds (the first ones warm up the JIT)
+            for (int round = 0; round < 8; round++) {
+                scalar.clear();
+                long t0 = System.nanoTime();
+                MiniLexer.lex(src, 0, chars.length, scalar, null);
+                bestScalar = Math.min(bestScalar, System.nanoTime() - t0);
+                if (simd == null) continue;
+                vector.clear();
+                long t1 = System.nanoTime();
+                MiniLexer.lex(src, 0, chars.length, vector, simd);
+                bestVector = Math.min(bestVector, System.nanoTime() - t1);
+            }
+            double mb = chars.length / 1e6;
+            out.printf("%-18s scalar %7.1f Mchar/s", input[0], mb / (bestScalar / 1e9));
+            if (simd != null) {
+                out.printf("   vector %7.1f Mchar/s   (%.2fx, identical=%b)", mb / (bestVector / 1e9),
+                        (double) bestScalar / bestVector, scalar.sameTokens(vector));
+            }
+            out.println();
+        }
+    }
+}
+
+// --- Compiler diagnostic with a source span ---
+final class MiniDiagnostic {
+    // Start offset of the span
+    final int start;
+    // End offset of the span (exclusive)
+    final int end;
+    // 1-based line of the span start
+    final int line;
+    // 1-based column of the span start
+    final int column;
+    // Message text
+    final String message;
+
+    // Constructor to initialize all fields
+    MiniDiagnostic(int start, int end, int line, int column, String message) {
+        this.start = start;
+        this.end = end;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    // Format as "line:column: message"
+    @Override
+    public String toString() {
+        return line + ":" + column + ": " + message;
+    }
+}
+
+// --- Flat program representation produced by the parser ---
+final class MiniProgram {
+    // cin >> IDENT;
+    static final byte INPUT = 0;
+    // cout << expr;
+    static final byte OUTPUT_EXPR = 1;
+    // cout << "text";
+    static final byte OUTPUT_STR = 2;
+    // IDENT = expr;
+    static final byte ASSIGN = 3;
+    // #include "unit" (target is the string id of the unit name; replaced by the unit's statements when linking)
+    static final byte INCLUDE = 4;
+
+    // Interned identifier names (symbol id -> name)
+    final List<String> symbols;
+    // Unescaped string literals (string id -> text)
+    final List<String> strings;
+    // Symbol lookup while parsing
+    final Map<String, Integer> symbolIds;
+
+    // Statement kinds
+    byte[] stmtKind = new byte[64];
+    // Target symbol (INPUT/ASSIGN) or string id (OUTPUT_STR)
+    int[] stmtTarget = new int[64];
+    // First term of the statement's expression
+    int[] stmtTermStart = new int[64];
+    // End of the statement's terms (exclusive)
+    int[] stmtTermEnd = new int[64];
+    // Source offset where the statement starts
+    int[] stmtStart = new int[64];
+    // Source offset where the statement ends (exclusive)
+    int[] stmtEnd = new int[64];
+    // 1-based source line of the statement
+    int[] stmtLine = new int[64];
+    // Number of statements
+    int stmtCount;
+
+    // Whether each term is a variable (otherwise a constant)
+    boolean[] termIsVar = new boolean[64];
+    // Symbol id or constant value of each term
+    int[] termValue = new int[64];
+    // Number of terms
+    int termCount;
+
+    // Constructor for an empty program
+    MiniProgram() {
+        this(new ArrayList<>(), new ArrayList<>(), new HashMap<>());
+    }
+
+    // Constructor for a program sharing another program's symbol and string tables (ids stay valid in both)
+    MiniProgram(List<String> symbols, List<String> strings, Map<String, Integer> symbolIds) {
+        this.symbols = symbols;
+        this.strings = strings;
+        this.symbolIds = symbolIds;
+    }
+
+    // Method to intern an identifier
+    int intern(String name) {
+        // Reuse the existing id
+        Integer id = symbolIds.get(name);
+        if (id != null) return id;
+        // Assign the next id
+        symbols.add(name);
+        symbolIds.put(name, symbols.size() - 1);
+        return symbols.size() - 1;
+    }
+
+    // Method to add a term to the current expression
+    void addTerm(boolean isVar, int value) {
+        // Grow arrays when full
+        if (termCount == termValue.length) {
+            termIsVar = Arrays.copyOf(termIsVar, termCount * 2);
+            termValue = Arrays.copyOf(termValue, termCount * 2);
+        }
+        // Store term
+        termIsVar[termCount] = isVar;
+        termValue[termCount] = value;
+        termCount++;
+    }
+
+    // Method to add a statement whose terms end at the current term count
+    void addStatement(byte kind, int target, int termStart, int start, int end, int line) {
+        // Grow arrays when full
+        if (stmtCount == stmtKind.length) {
+            int cap = stmtCount * 2;
+            stmtKind = Arrays.copyOf(stmtKind, cap);
+            stmtTarget = Arrays.copyOf(stmtTarget, cap);
+            stmtTermStart = Arrays.copyOf(stmtTermStart, cap);
+            stmtTermEnd = Arrays.copyOf(stmtTermEnd, cap);
+            stmtStart = Arrays.copyOf(stmtStart, cap);
+            stmtEnd = Arrays.copyOf(stmtEnd, cap);
+            stmtLine = Arrays.copyOf(stmtLine, cap);
+        }
+        // Store statement
+        stmtKind[stmtCount] = kind;
+        stmtTarget[stmtCount] = target;
+        stmtTermStart[stmtCount] = termStart;
+        stmtTermEnd[stmtCount] = termCount;
+        stmtStart[stmtCount] = start;
+        stmtEnd[stmtCount] = end;
+        stmtLine[stmtCount] = line;
+        stmtCount++;
+    }
+
+    // Check whether the program pulls in other units
+    boolean hasIncludes() {
+        for (int s = 0; s < stmtCount; s++) if (stmtKind[s] == INCLUDE) return true;
+        return false;
+    }
+}
+
+// --- Parser for the grammar in parser.y (stops at the first syntax error like yyparse) ---
+final class MiniParser {
+    // Source being parsed
+    private final CharSequence src;
+    // Tokens of the source
+    private final TokenBuffer tokens;
+    // Program being built
+    private final MiniProgram program;
+    // Diagnostics found
+    private final List<MiniDiagnostic> diagnostics = new ArrayList<>();
+    // Current token index
+    private int pos;
+    // Offset up to which lines have been counted
+    private int lineScanOffset;
+    // Line number at lineScanOffset
+    private int lineScanLine = 1;
+    // Offset where that line starts
+    private int lineScanStart;
+
+    // Constructor taking source and its tokens
+    MiniParser(CharSequence src, TokenBuffer tokens) {
+        this(src, tokens, new MiniProgram(), 0, 1, 0);
+    }
+
+    // Constructor to parse tokens of part of a source into a given program (line counting resumes at offset)
+    MiniParser(CharSequence src, TokenBuffer tokens, MiniProgram program, int offset, int line, int lineStart) {
+        this.src = src;
+        this.tokens = tokens;
+        this.program = program;
+        this.lineScanOffset = offset;
+        this.lineScanLine = line;
+        this.lineScanStart = lineStart;
+    }
+
+    // Method to parse all statements
+    MiniProgram parse() {
+        // program : stmt_list
+        while (pos < tokens.size()) {
+            // Stop at the first syntax error (statements completed before it, even one missing its ';', stay valid)
+            if (!statement()) break;
+        }
+        // Return program
+        return program;
+    }
+
+    // Get diagnostics found while parsing
+    List<MiniDiagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    // Method to parse one statement (false on syntax error)
+    private boolean statement() {
+        // First token of the statement
+        int first = pos;
+        // Source offset where it starts
+        int start = tokens.start(first);
+        // Kind of the first token
+        byte k = tokens.kind(pos);
+        if (k == TokenKind.CIN) {
+            // cin >> IDENT ;
+            pos++;
+            if (!expect(TokenKind.SHIFTIN) || !expect(TokenKind.IDENT)) return false;
+            // Intern target variable
+            int target = program.intern(text(pos - 1));
+            // Add statement
+            return reduce(MiniProgram.INPUT, target, program.termCount, start);
+        }
+        if (k == TokenKind.COUT) {
+            // cout << (expr | STRINGLIT) ;
+            pos++;
+            if (!expect(TokenKind.SHIFTOUT)) return false;
+            if (pos < tokens.size() && tokens.kind(pos) == TokenKind.STRINGLIT) {
+                // String literal output
+                program.strings.add(MiniLexer.unescape(src, tokens.start(pos), tokens.length(pos)));
+                pos++;
+                return reduce(MiniProgram.OUTPUT_STR, program.strings.size() - 1, program.termCount, start);
+            }
+            // Expression output
+            int termStart = program.termCount;
+            return expr() && reduce(MiniProgram.OUTPUT_EXPR, -1, termStart, start);
+        }
+        if (k == TokenKind.IDENT) {
+            // IDENT = expr ;
+            int target = program.intern(text(pos));
+            pos++;
+            if (!expect(TokenKind.ASSIGN)) return false;
+            int termStart = program.termCount;
+            return expr() && reduce(MiniProgram.ASSIGN, target, termStart, start);
+        }
+        if (k == TokenKind.CHAR && tokens.value(pos) == '#') {
+            // # include STRINGLIT (no ';', like the preprocessor)
+            pos++;
+            if (pos >= tokens.size() || tokens.kind(pos) != TokenKind.IDENT || !"include".equals(text(pos))) {
+                error(pos, "syntax error, unexpected " + describe(pos) + ", expecting include");
+                return false;
+            }
+            pos++;
+            if (!expect(TokenKind.STRINGLIT)) return false;
+            // Unit name
+            program.strings.add(MiniLexer.unescape(src, tokens.start(pos - 1), tokens.length(pos - 1)));
+            program.addStatement(MiniProgram.INCLUDE, program.strings.size() - 1, program.termCount, start, tokens.end(pos - 1), lineOf(start));
+            return true;
+        }
+        // Anything else can't start a statement
+        error(pos, "syntax error, unexpected " + describe(pos) + ", expecting cin, cout, identifier or #include");
+        return false;
+    }
+
+    // Method to parse expr : NUMBER | IDENT | expr '+' expr
+    private boolean expr() {
+        do {
+            // Operand expected
+            if (pos >= tokens.size()) { error(pos, "syntax error, unexpected end of input, expecting NUMBER or IDENT"); return false; }
+            byte k = tokens.kind(pos);
+            if (k == TokenKind.NUMBER) {
+                // Constant term
+                program.addTerm(false, tokens.value(pos));
+            } else if (k == TokenKind.IDENT) {
+                // Variable term
+                program.addTerm(true, program.intern(text(pos)));
+            } else {
+                error(pos, "syntax error, unexpected " + describe(pos) + ", expecting NUMBER or IDENT");
+                return false;
+            }
+            pos++;
+            // Continue while '+' follows
+        } while (pos < tokens.size() && tokens.kind(pos) == TokenKind.PLUS && ++pos > 0);
+        return true;
+    }
+
+    // Method to add a statement whose right-hand side is complete, then consume its ';' (false if missing)
+    private boolean reduce(byte kind, int target, int termStart, int start) {
+        // Like yyparse's default reductions, the statement's action runs before a missing ';' is reported
+        boolean semi = pos < tokens.size() && tokens.kind(pos) == TokenKind.SEMI;
+        program.addStatement(kind, target, termStart, start, tokens.end(semi ? pos : pos - 1), lineOf(start));
+        return expect(TokenKind.SEMI);
+    }
+
+    // Method to consume a token of the given kind or report an error
+    private boolean expect(byte kind) {
+        // Matching token
+        if (pos < tokens.size() && tokens.kind(pos) == kind) { pos++; return true; }
+        // Report what was found instead
+        error(pos, "syntax error, unexpected " + describe(pos) + ", expecting " + TokenKind.name(kind));
+        return false;
+    }
+
+    // Method to describe the token at index i for messages
+    private String describe(int i) {
+        // End of input
+        if (i >= tokens.size()) return "end of input";
+        // Single characters are shown quoted
+        if (tokens.kind(i) == TokenKind.CHAR) return "'" + (char) tokens.value(i) + "'";
+        // Other tokens by kind
+        return TokenKind.name(tokens.kind(i));
+    }
+
+    // Method to record a diagnostic at token i
+    private void error(int i, String message) {
+        // Span of the token (or the end of the source)
+        int start = i < tokens.size() ? tokens.start(i) : src.length();
+        int end = i < tokens.size() ? tokens.end(i) : src.length();
+        // Line and column of the span
+        int line = lineOf(start);
+        // Add diagnostic
+        diagnostics.add(new MiniDiagnostic(start, end, line, start - lineScanStart + 1, message));
+    }
+
+    // Method to get the text of token i
+    private String text(int i) {
+        return src.subSequence(tokens.start(i), tokens.end(i)).toString();
+    }
+
+    // Method to compute the line of an offset (offsets only move forward while parsing)
+    private int lineOf(int offset) {
+        // Count newlines since the last query
+        for (int i = lineScanOffset; i < offset; i++) {
+            if (src.charAt(i) == '\n') { lineScanLine++; lineScanStart = i + 1; }
+        }
+        // Remember progress
+        lineScanOffset = Math.max(lineScanOffset, offset);
+        return lineScanLine;
+    }
+}
+
+// --- Whitespace-delimited stdin tokens for cin (like std::cin >> std::string) ---
+final class InputTokens implements Closeable {
+    // Source of input characters
+    private final Reader reader;
+    // Read buffer (large, so big input files are read in few system calls)
+    private final char[] buf = new char[1 << 16];
+    // Valid characters in the buffer
+    private int len;
+    // Next character to read
+    private int pos;
+
+    // Constructor wrapping a reader
+    InputTokens(Reader reader) {
+        this.reader = reader;
+    }
+
+    // Factory for input held in a string
+    static InputTokens of(String text) {
+        return new InputTokens(new StringReader(text == null ? "" : text));
+    }
+
+    // Method to read the next token ("" at end of input)
+    String next() throws IOException {
+        // Skip whitespace
+        int c;
+        while ((c = read()) >= 0 && Character.isWhitespace(c)) {}
+        // End of input
+        if (c < 0) return "";
+        // Collect until whitespace
+        StringBuilder sb = new StringBuilder();
+        do { sb.append((char) c); } while ((c = read()) >= 0 && !Character.isWhitespace(c));
+        // Return token
+        return sb.toString();
+    }
+
+    // Method to close the underlying reader
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Method to read one character (-1 at end)
+    private int read() throws IOException {
+        // Refill when empty
+        if (pos == len) {
+            len = reader.read(buf, 0, buf.length);
+            pos = 0;
+            if (len <= 0) { len = 0; return -1; }
+        }
+        return buf[pos++];
+    }
+}
+
+// --- Interpreter for MiniProgram with the semantics of the actions in parser.y ---
+final class MiniInterpreter {
+    // Variable kinds (Kind in parser.y, plus UNSET for undefined)
+    private static final byte UNSET = 0, INTK = 1, DOUBLEK = 2, CHARK = 3, STRINGK = 4;
+
+    // Program being run
+    private final MiniProgram program;
+    // Kind of each symbol
+    private final byte[] kind;
+    // Integer value of each symbol
+    private final int[] ival;
+    // Raw text of each symbol (as typed for cin values)
+    private final String[] raw;
+
+    // Constructor to set up the symbol table
+    MiniInterpreter(MiniProgram program) {
+        this.program = program;
+        this.kind = new byte[program.symbols.size()];
+        this.ival = new int[kind.length];
+        this.raw = new String[kind.length];
+    }
+
+    // Method to run every statement
+    void run(InputTokens in, Appendable out) throws Exception {
+        for (int s = 0; s < program.stmtCount; s++) execute(s, in, out);
+    }
+
+    // Method to run every statement while counting executions and time per statement
+    void runProfiled(InputTokens in, Appendable out, ProfileResult profile) throws Exception {
+        // Plain arrays indexed by statement keep the per-statement cost to two nanoTime calls
+        long[] counts = profile.counts;
+        long[] nanos = profile.nanos;
+        for (int s = 0; s < program.stmtCount; s++) {
+            long t0 = System.nanoTime();
+            try {
+                execute(s, in, out);
+            } finally {
+                nanos[s] += System.nanoTime() - t0;
+                counts[s]++;
+            }
+        }
+    }
+
+    // Get a symbol's kind
+    byte kindOf(int sym) {
+        return kind[sym];
+    }
+
+    // Get a symbol's integer value
+    int intOf(int sym) {
+        return ival[sym];
+    }
+
+    // Get a symbol's raw text
+    String rawOf(int sym) {
+        return raw[sym];
+    }
+
+    // Method to run an INPUT statement on a token read elsewhere
+    void input(int s, String tok) throws Exception {
+        read(program.stmtTarget[s], tok);
+    }
+
+    // Method to set a symbol to a previously recorded value
+    void restore(int sym, byte k, int i, String r) {
+        kind[sym] = k;
+        ival[sym] = i;
+        raw[sym] = r;
+    }
+
+    // Method to run one statement
+    void execute(int s, InputTokens in, Appendable out) throws Exception {
+        switch (program.stmtKind[s]) {
+            case MiniProgram.INPUT -> read(program.stmtTarget[s], in.next());
+            case MiniProgram.ASSIGN -> {
+                // Store integer result
+                int v = sum(s);
+                int t = program.stmtTarget[s];
+                kind[t] = INTK;
+                ival[t] = v;
+                raw[t] = null;
+            }
+            case MiniProgram.OUTPUT_STR -> out.append(program.strings.get(program.stmtTarget[s])).append('\n');
+            // Linking replaces includes, so one here was never resolved
+            case MiniProgram.INCLUDE -> throw new Exception("Unresolved #include \"" + program.strings.get(program.stmtTarget[s]) + "\"");
+            default -> {
+                // A lone non-int identifier prints its raw text (empty if undefined)
+                int ts = program.stmtTermStart[s];
+                if (program.stmtTermEnd[s] - ts == 1 && program.termIsVar[ts] && kind[program.termValue[ts]] != INTK) {
+                    String r = raw[program.termValue[ts]];
+                    out.append(r == null ? "" : r).append('\n');
+                } else {
+                    out.append(Integer.toString(sum(s))).append('\n');
+                }
+            }
+        }
+    }
+
+    // Method to sum a statement's terms (non-int variables count as 0)
+    private int sum(int s) {
+        int v = 0;
+        for (int t = program.stmtTermStart[s]; t < program.stmtTermEnd[s]; t++) {
+            if (!program.termIsVar[t]) v += program.termValue[t];
+            else if (kind[program.termValue[t]] == INTK) v += ival[program.termValue[t]];
+        }
+        return v;
+    }
+
+    // Method to classify a cin token like is_int_tok / is_double_tok
+    private void read(int target, String tok) throws Exception {
+        // Remember raw text
+        raw[target] = tok;
+        if (isIntTok(tok)) {
+            try {
+                // std::stoi fails on out-of-range input
+                ival[target] = Integer.parseInt(tok.startsWith("+") ? tok.substring(1) : tok);
+            } catch (NumberFormatException ex) {
+                throw new Exception("Input out of range: " + tok);
+            }
+            kind[target] = INTK;
+        } else if (isDoubleTok(tok)) {
+            kind[target] = DOUBLEK;
+        } else if (tok.length() == 1) {
+            kind[target] = CHARK;
+        } else {
+            kind[target] = STRINGK;
+        }
+    }
+
+    // Check optionally signed integer tokens
+    static boolean isIntTok(String s) {
+        if (s.isEmpty()) return false;
+        int i = (s.charAt(0) == '+' || s.charAt(0) == '-') ? 1 : 0;
+        if (i >= s.length()) return false;
+        for (; i < s.length(); i++) if (s.charAt(i) < '0' || s.charAt(i) > '9') return false;
+        return true;
+    }
+
+    // Check optionally signed decimal tokens with exactly one dot
+    static boolean isDoubleTok(String s) {
+        if (s.isEmpty()) return false;
+        boolean dot = false, digit = false;
+        int i = (s.charAt(0) == '+' || s.charAt(0) == '-') ? 1 : 0;
+        for (; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '.') { if (dot) return false; dot = true; }
+            else if (c >= '0' && c <= '9') digit = true;
+            else return false;
+        }
+        return digit && dot;
+    }
+}
+
+// --- Result of running the Java front end over a source ---
+final class CompileResult {
+    // Tokens of the source
+    final TokenBuffer tokens;
+    // Parsed program (statements before the first error)
+    final MiniProgram program;
+    // Diagnostics found
+    final List<MiniDiagnostic> diagnostics;
+    // Time spent lexing
+    final long lexNanos;
+    // Time spent parsing
+    final long parseNanos;
+    // Bytes allocated by the compiling thread while lexing and parsing (-1 when not measured)
+    final long lexBytes, parseBytes;
+    // Problems that don't stop the program (e.g. a unit artifact that couldn't be written)
+    final List<String> warnings;
+
+    // Constructor for results without allocation figures
+    CompileResult(TokenBuffer tokens, MiniProgram program, List<MiniDiagnostic> diagnostics, long lexNanos, long parseNanos) {
+        this(tokens, program, diagnostics, lexNanos, parseNanos, -1, -1);
+    }
+
+    // Constructor for results without warnings
+    CompileResult(TokenBuffer tokens, MiniProgram program, List<MiniDiagnostic> diagnostics, long lexNanos, long parseNanos,
+                  long lexBytes, long parseBytes) {
+        this(tokens, program, diagnostics, lexNanos, parseNanos, lexBytes, parseBytes, Collections.emptyList());
+    }
+
+    // Constructor to initialize all fields
+    CompileResult(TokenBuffer tokens, MiniProgram program, List<MiniDiagnostic> diagnostics, long lexNanos, long parseNanos,
+                  long lexBytes, long parseBytes, List<String> warnings) {
+        this.tokens = tokens;
+        this.program = program;
+        this.diagnostics = diagnostics;
+        this.lexNanos = lexNanos;
+        this.parseNanos = parseNanos;
+        this.lexBytes = lexBytes;
+        this.parseBytes = parseBytes;
+        this.warnings = warnings;
+    }
+}
+
+// --- Entry point of the Java front end ---
+final class MiniFrontEnd {
+    // No instances
+    private MiniFrontEnd() {}
+
+    // Method to lex and parse a source
+    static CompileResult compile(CharSequence src) {
+        // Lex (in parallel for large sources; allocations of fork/join workers are not counted)
+        long b0 = MetricsRegistry.allocatedBytes();
+        long t0 = System.nanoTime();
+        TokenBuffer tokens = MiniLexer.lexAuto(src);
+        // Parse
+        long t1 = System.nanoTime();
+        long b1 = MetricsRegistry.allocatedBytes();
+        MiniParser parser = new MiniParser(src, tokens);
+        MiniProgram program = parser.parse();
+        long t2 = System.nanoTime();
+        long b2 = MetricsRegistry.allocatedBytes();
+        // Return result with timings and allocations
+        return new CompileResult(tokens, program, parser.diagnostics(), t1 - t0, t2 - t1,
+                b0 < 0 ? -1 : b1 - b0, b0 < 0 ? -1 : b2 - b1);
+    }
+}
+
+// --- Separately compiled #include units: artifacts checked by content hash, parallel builds, linking ---
+final class CompilationUnits {
+    // Units resolved in the saved programs directory (the GUI's savedFilesDir), artifacts written next to them
+    static final CompilationUnits SHARED = new CompilationUnits(new File("saved"), true);
+
+    // One unit compiled from one state of its file
+    static final class Unit {
+        // File state it was compiled from
+        final long modified, length;
+        // SHA-256 of the unit's text
+        final byte[] hash;
+        // The unit on its own (includes still unresolved, no tokens kept)
+        final CompileResult compiled;
+        // Why its artifact couldn't be written (null if written or not needed)
+        final String artifactError;
+
+        // Constructor to initialize all fields
+        Unit(long modified, long length, byte[] hash, CompileResult compiled, String artifactError) {
+            this.modified = modified;
+            this.length = length;
+            this.hash = hash;
+            this.compiled = compiled;
+            this.artifactError = artifactError;
+        }
+    }
+
+    // Directory units are looked up in
+    private final File dir;
+    // Whether rebuilt units rewrite their artifacts (otherwise artifacts are only read)
+    private final boolean persist;
+    // Latest compiled version of each unit by name
+    private final Map<String, Unit> units = new java.util.concurrent.ConcurrentHashMap<>();
+    // Registry for unit cache hits and rebuilds (null for none)
+    private volatile MetricsRegistry metrics;
+
+    // Constructor to resolve units in a directory
+    CompilationUnits(File dir, boolean persist) {
+        this.dir = dir;
+        this.persist = persist;
+    }
+
+    // Method to report unit cache hits and rebuilds to a registry
+    void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    // Method to link a program with the units it includes (returned as is when it has none)
+    CompileResult link(CompileResult root) {
+        if (!root.program.hasIncludes()) return root;
+        long t0 = System.nanoTime();
+        Linker linker = new Linker(root.program, buildAll(root.program));
+        // A unit that can't be linked stops the program there, like a syntax error
+        boolean complete = linker.append(root.program, null, 0, -1);
+        if (complete) linker.diagnostics.addAll(root.diagnostics);
+        // Artifacts that couldn't be written are reported with every run until the unit changes
+        List<String> warnings = new ArrayList<>();
+        for (Map.Entry<String, Unit> e : linker.built.entrySet()) {
+            if (e.getValue() != null && e.getValue().artifactError != null) warnings.add(e.getKey() + ": " + e.getValue().artifactError);
+        }
+        // Linking counts as parse time
+        return new CompileResult(root.tokens, linker.out, linker.diagnostics, root.lexNanos,
+                root.parseNanos + System.nanoTime() - t0, root.lexBytes, root.parseBytes, warnings);
+    }
+
+    // Method to compile every unit reachable from a program, one include level per parallel wave
+    private Map<String, Unit> buildAll(MiniProgram root) {
+        // Units by name (null for units that can't be read)
+        Map<String, Unit> built = new HashMap<>();
+        Set<String> wave = includesOf(root, built);
+        while (!wave.isEmpty()) {
+            String[] names = wave.toArray(new String[0]);
+            Unit[] results = new Unit[names.length];
+            // Units of one level don't depend on each other: compile them on fork/join workers
+            java.util.concurrent.ForkJoinTask<?>[] tasks = new java.util.concurrent.ForkJoinTask<?>[names.length];
+            for (int i = 0; i < names.length; i++) {
+                int k = i;
+                tasks[i] = java.util.concurrent.ForkJoinTask.adapt(() -> { results[k] = unit(names[k]); });
+            }
+            java.util.concurrent.ForkJoinTask.invokeAll(tasks);
+            for (int i = 0; i < names.length; i++) built.put(names[i], results[i]);
+            // Next level: includes not seen yet
+            wave = new LinkedHashSet<>();
+            for (Unit u : results) if (u != null) wave.addAll(includesOf(u.compiled.program, built));
+        }
+        return built;
+    }
+
+    // Method to collect the unit names a program includes that aren't built yet
+    private static Set<String> includesOf(MiniProgram p, Map<String, Unit> built) {
+        Set<String> names = new LinkedHashSet<>();
+        for (int s = 0; s < p.stmtCount; s++) {
+            if (p.stmtKind[s] != MiniProgram.INCLUDE) continue;
+            String name = p.strings.get(p.stmtTarget[s]);
+            if (!built.containsKey(name)) names.add(name);
+        }
+        return names;
+    }
+
+    // Method to get a unit, compiling it only when its content hash changed (null if it can't be read)
+    private Unit unit(String name) {
+        // Units are plain names inside the directory
+        if (name.isEmpty() || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0) return null;
+        File file = new File(dir, name);
+        if (!file.isFile()) return null;
+        long modified = file.lastModified();
+        long length = file.length();
+        // Untouched file: not even read
+        Unit cached = units.get(name);
+        if (cached != null && cached.modified == modified && cached.length == length) {
+            count(true);
+            return cached;
+        }
+        try {
+            CharSequence text = SourceText.map(file);
+            byte[] hash = ProgramArtifact.hash(text);
+            // Same content (e.g. saved again unchanged), then the artifact next to the file
+            boolean same = cached != null && Arrays.equals(cached.hash, hash);
+            CompileResult compiled = same ? cached.compiled : null;
+            String artifactError = same ? cached.artifactError : null;
+            File artifact = ProgramArtifact.artifactFor(file);
+            if (compiled == null) {
+                try {
+                    compiled = ProgramArtifact.load(artifact, hash);
+                } catch (IOException ex) {
+                    // Corrupt artifact: rebuilt below
+                }
+            }
+            count(compiled != null);
+            if (compiled == null) {
+                // Changed unit: compile it and rewrite its artifact
+                CompileResult full = MiniFrontEnd.compile(text);
+                compiled = new CompileResult(null, full.program, full.diagnostics, full.lexNanos, full.parseNanos);
+                if (persist) {
+                    try {
+                        ProgramArtifact.write(artifact, hash, compiled);
+                    } catch (IOException ex) {
+                        // Linking still works without the artifact; the run reports it
+                        artifactError = "could not write " + artifact.getName() + ": " + ex.getMessage();
+                    }
+                }
+            }
+            Unit unit = new Unit(modified, length, hash, compiled, artifactError);
+            units.put(name, unit);
+            return unit;
+        } catch (IOException ex) {
+            // Reported as a unit that can't be opened
+            return null;
+        }
+    }
+
+    // Method to count a unit cache hit or rebuild
+    private void count(boolean hit) {
+        MetricsRegistry m = metrics;
+        if (m == null) return;
+        if (hit) m.cacheHit("unit");
+        else m.cacheMiss("unit");
+    }
+
+    // --- Expansion of includes into one flat program ---
+    private static final class Linker {
+        // Root program
+        private final MiniProgram root;
+        // Built units by name
+        final Map<String, Unit> built;
+        // Linked program
+        final MiniProgram out = new MiniProgram();
+        // Link errors
+        final List<MiniDiagnostic> diagnostics = new ArrayList<>();
+        // Symbol id maps and string id bases of units already placed in out
+        private final Map<String, int[]> symbolMaps = new HashMap<>();
+        private final Map<String, Integer> stringBases = new HashMap<>();
+        // Units being expanded (for cycle detection)
+        private final List<String> chain = new ArrayList<>();
+
+        // Constructor keeping the root's symbol and string ids
+        Linker(MiniProgram root, Map<String, Unit> built) {
+            this.root = root;
+            this.built = built;
+            for (String name : root.symbols) out.intern(name);
+            out.strings.addAll(root.strings);
+        }
+
+        // Method to append a program's statements (symbols mapped through symbolMap, null for the root); false once linking stops
+        boolean append(MiniProgram p, int[] symbolMap, int stringBase, int rootStmt) {
+            for (int s = 0; s < p.stmtCount; s++) {
+                // Included statements are attributed to the root's #include line (profiles, spans)
+                int at = rootStmt < 0 ? s : rootStmt;
+                byte k = p.stmtKind[s];
+                if (k == MiniProgram.INCLUDE) {
+                    if (!include(p.strings.get(p.stmtTarget[s]), at)) return false;
+                    continue;
+                }
+                int termStart = out.termCount;
+                for (int t = p.stmtTermStart[s]; t < p.stmtTermEnd[s]; t++) {
+                    int v = p.termValue[t];
+                    out.addTerm(p.termIsVar[t], p.termIsVar[t] && symbolMap != null ? symbolMap[v] : v);
+                }
+                int target = p.stmtTarget[s];
+                if (k == MiniProgram.OUTPUT_STR) target += stringBase;
+                else if (target >= 0 && symbolMap != null) target = symbolMap[target];
+                out.addStatement(k, target, termStart, root.stmtStart[at], root.stmtEnd[at], root.stmtLine[at]);
+            }
+            return true;
+        }
+
+        // Method to expand one #include in place; false (with a diagnostic) when it can't be linked
+        private boolean include(String name, int at) {
+            if (chain.contains(name)) return error(at, "include cycle: \"" + name + "\" includes itself");
+            Unit unit = built.get(name);
+            if (unit == null) return error(at, "cannot open include file \"" + name + "\"");
+            MiniProgram p = unit.compiled.program;
+            // Map the unit's ids into the linked program once
+            int[] symbolMap = symbolMaps.get(name);
+            if (symbolMap == null) {
+                symbolMap = new int[p.symbols.size()];
+                for (int i = 0; i < symbolMap.length; i++) symbolMap[i] = out.intern(p.symbols.get(i));
+                symbolMaps.put(name, symbolMap);
+                stringBases.put(name, out.strings.size());
+                out.strings.addAll(p.strings);
+            }
+            chain.add(name);
+            boolean linked = append(p, symbolMap, stringBases.get(name), at);
+            chain.remove(chain.size() - 1);
+            if (!linked) return false;
+            // Statements before a syntax error in the unit still run, like in the root
+            if (!unit.compiled.diagnostics.isEmpty()) {
+                MiniDiagnostic d = unit.compiled.diagnostics.get(0);
+                return error(at, name + ":" + d.line + ":" + d.column + ": " + d.message);
+            }
+            return true;
+        }
+
+        // Method to record a link error at a root statement (column 1: the directive's line as a whole)
+        private boolean error(int at, String message) {
+            if (!chain.isEmpty()) message += " (included from " + String.join(" -> ", chain) + ")";
+            diagnostics.add(new MiniDiagnostic(root.stmtStart[at], root.stmtEnd[at], root.stmtLine[at], 1, message));
+            return false;
+        }
+    }
+}
+
+// --- Lock-free latency histogram with power-of-two microsecond buckets ---
+final class LatencyHistogram {
+    // Number of buckets
+    static final int BUCKETS = 40;
+    // Bucket i counts samples below 2^i microseconds
+    private final java.util.concurrent.atomic.AtomicLongArray buckets = new java.util.concurrent.atomic.AtomicLongArray(BUCKETS);
+    // Number of samples
+    private final java.util.concurrent.atomic.LongAdder count = new java.util.concurrent.atomic.LongAdder();
+    // Sum of samples in nanoseconds
+    private final java.util.concurrent.atomic.LongAdder sumNanos = new java.util.concurrent.atomic.LongAdder();
+    // Largest sample in nanoseconds
+    private final java.util.concurrent.atomic.AtomicLong maxNanos = new java.util.concurrent.atomic.AtomicLong();
+
+    // Method to record one sample
+    void record(long nanos) {
+        // Microseconds (at least 1 so the bucket math stays simple)
+        long micros = Math.max(1, nanos / 1000);
+        // Bucket by bit length
+        int b = Math.min(buckets.length() - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(b);
+        // Update totals
+        count.increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // Get number of samples
+    long count() {
+        return count.sum();
+    }
+
+    // Get sum of samples in nanoseconds
+    long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    // Get mean in microseconds
+    double meanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : sumNanos.sum() / 1000.0 / n;
+    }
+
+    // Get largest sample in microseconds
+    long maxMicros() {
+        return maxNanos.get() / 1000;
+    }
+
+    // Method to estimate a percentile (upper bound of its bucket, in microseconds)
+    long percentileMicros(double p) {
+        // Rank of the requested sample
+        long n = count.sum();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(p / 100.0 * n);
+        // Walk buckets until the rank is reached
+        long seen = 0;
+        for (int b = 0; b < buckets.length(); b++) {
+            seen += buckets.get(b);
+            if (seen >= rank) return Math.min(1L << b, maxMicros());
+        }
+        return maxMicros();
+    }
+
+    // Format as a one-line summary
+    String summary() {
+        return String.format("count=%d mean=%.1fus p50=%dus p90=%dus p99=%dus max=%dus",
+                count(), meanMicros(), percentileMicros(50), percentileMicros(90), percentileMicros(99), maxMicros());
+    }
+
+    // Get the number of samples in a bucket
+    long bucketCount(int b) {
+        return buckets.get(b);
+    }
+
+    // Method to label a bucket by its upper bound
+    static String bucketLabel(int b) {
+        long bound = 1L << b;
+        return bound >= 1_000_000 ? bound / 1_000_000 + " s" : bound >= 1000 ? bound / 1000 + " ms" : bound + " us";
+    }
+
+    // Method to list the non-empty buckets, one "< bound  count" line each
+    String distribution() {
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < buckets.length(); b++) {
+            long n = buckets.get(b);
+            if (n == 0) continue;
+            sb.append(String.format("  < %-8s %d%n", bucketLabel(b), n));
+        }
+        return sb.toString();
+    }
+}
+
+// --- Running compiler metrics: phase latencies, allocations and cache hit rates ---
+final class MetricsRegistry {
+    // Phases of a run, in display order
+    static final String[] PHASES = { "text", "artifact", "lex", "parse", "run", "total", "shadow" };
+    // Per-thread allocation counter (null when the JVM doesn't support it)
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    // Latency and allocations of one phase of one backend
+    static final class Phase {
+        // Backend label
+        final String backend;
+        // Phase name (one of PHASES)
+        final String name;
+        // Latency distribution
+        final LatencyHistogram latency = new LatencyHistogram();
+        // Bytes allocated during the phase, summed over measured samples
+        final java.util.concurrent.atomic.LongAdder allocatedBytes = new java.util.concurrent.atomic.LongAdder();
+        // Samples with an allocation figure
+        final java.util.concurrent.atomic.LongAdder allocationSamples = new java.util.concurrent.atomic.LongAdder();
+
+        // Constructor to name the phase
+        Phase(String backend, String name) {
+            this.backend = backend;
+            this.name = name;
+        }
+    }
+
+    // Phases by "backend/phase"
+    private final Map<String, Phase> phases = new java.util.concurrent.ConcurrentHashMap<>();
+    // Hit and miss counters per cache
+    private final Map<String, java.util.concurrent.atomic.LongAdder[]> caches = new java.util.concurrent.ConcurrentHashMap<>();
+    // Time the registry was created or reset
+    private volatile long sinceNanos = System.nanoTime();
+
+    // Method to find the allocation counter and switch it on
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (!threads.isThreadAllocatedMemorySupported()) return null;
+            if (!threads.isThreadAllocatedMemoryEnabled()) threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        } catch (Throwable ex) {
+            // Module not present or not permitted: allocations are reported as unknown
+            return null;
+        }
+    }
+
+    // Method to read the bytes allocated so far by the current thread (-1 when unsupported)
+    static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    // Method to record one phase sample (bytes < 0 means not measured)
+    void record(String backend, String phase, long nanos, long bytes) {
+        if (nanos < 0) return;
+        Phase p = phases.computeIfAbsent(backend + "/" + phase, k -> new Phase(backend, phase));
+        p.latency.record(nanos);
+        if (bytes >= 0) {
+            p.allocatedBytes.add(bytes);
+            p.allocationSamples.increment();
+        }
+    }
+
+    // Method to record the lex, parse and run phases of a backend result
+    void recordPhases(BackendResult result) {
+        // Lex time 0 means the program came from an artifact and was not compiled in this run
+        if (result.lexNanos > 0) {
+            record(result.backend, "lex", result.lexNanos, result.lexBytes);
+            record(result.backend, "parse", result.parseNanos, result.parseBytes);
+        }
+        record(result.backend, "run", result.runNanos, result.runBytes);
+    }
+
+    // Method to count a cache hit
+    void cacheHit(String cache) {
+        counters(cache)[0].increment();
+    }
+
+    // Method to count a cache miss
+    void cacheMiss(String cache) {
+        counters(cache)[1].increment();
+    }
+
+    // Method to get a cache's hit and miss counters
+    private java.util.concurrent.atomic.LongAdder[] counters(String cache) {
+        return caches.computeIfAbsent(cache, k -> new java.util.concurrent.atomic.LongAdder[] {
+                new java.util.concurrent.atomic.LongAdder(), new java.util.concurrent.atomic.LongAdder() });
+    }
+
+    // Method to forget all samples
+    void reset() {
+        phases.clear();
+        caches.clear();
+        sinceNanos = System.nanoTime();
+    }
+
+    // Method to list phases by backend, then in run order
+    private List<Phase> sortedPhases() {
+        List<String> order = Arrays.asList(PHASES);
+        List<Phase> list = new ArrayList<>(phases.values());
+        list.sort(Comparator.comparing((Phase p) -> p.backend).thenComparingInt(p -> order.indexOf(p.name)));
+        return list;
+    }
+
+    // Method to format the registry for the metrics panel
+    String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Since %d s ago%s%n%n", (System.nanoTime() - sinceNanos) / 1_000_000_000L,
+                THREADS == null ? " (allocation counting unsupported on this JVM)" : ""));
+        sb.append(String.format("%-26s %-9s %7s %10s %10s %10s %12s%n", "backend", "phase", "count", "p50", "p99", "max", "alloc/run"));
+        for (Phase p : sortedPhases()) {
+            long samples = p.allocationSamples.sum();
+            sb.append(String.format("%-26s %-9s %7d %10s %10s %10s %12s%n", p.backend, p.name, p.latency.count(),
+                    micros(p.latency.percentileMicros(50)), micros(p.latency.percentileMicros(99)), micros(p.latency.maxMicros()),
+                    samples == 0 ? "-" : bytes(p.allocatedBytes.sum() / samples)));
+        }
+        if (!caches.isEmpty()) {
+            sb.append(String.format("%n%-26s %7s %7s %9s%n", "cache", "hits", "misses", "hit rate"));
+            new TreeMap<>(caches).forEach((name, c) -> {
+                long hits = c[0].sum(), misses = c[1].sum();
+                sb.append(String.format("%-26s %7d %7d %8.1f%%%n", name, hits, misses, hits + misses == 0 ? 0 : 100.0 * hits / (hits + misses)));
+            });
+        }
+        return sb.toString();
+    }
+
+    // Method to format microseconds for the panel
+    private static String micros(long us) {
+        return us >= 10_000 ? us / 1000 + " ms" : us + " us";
+    }
+
+    // Method to format a byte count for the panel
+    private static String bytes(long b) {
+        return b >= 10 << 20 ? (b >> 20) + " MB" : b >= 10 << 10 ? (b >> 10) + " KB" : b + " B";
+    }
+
+    // Method to write the registry in the Prometheus plain-text exposition format
+    String exposition() {
+        StringBuilder sb = new StringBuilder();
+        List<Phase> list = sortedPhases();
+        // Latency summaries (quantiles are bucket upper bounds)
+        sb.append("# HELP mini_phase_seconds Latency of each phase of a run.\n# TYPE mini_phase_seconds summary\n");
+        for (Phase p : list) {
+            String labels = "backend=" + label(p.backend) + ",phase=" + label(p.name);
+            sb.append("mini_phase_seconds{").append(labels).append(",quantile=\"0.5\"} ").append(p.latency.percentileMicros(50) / 1e6).append('\n');
+            sb.append("mini_phase_seconds{").append(labels).append(",quantile=\"0.99\"} ").append(p.latency.percentileMicros(99) / 1e6).append('\n');
+            sb.append("mini_phase_seconds_sum{").append(labels).append("} ").append(p.latency.sumNanos() / 1e9).append('\n');
+            sb.append("mini_phase_seconds_count{").append(labels).append("} ").append(p.latency.count()).append('\n');
+        }
+        sb.append("# HELP mini_phase_seconds_max Slowest sample of each phase.\n# TYPE mini_phase_seconds_max gauge\n");
+        for (Phase p : list) {
+            sb.append("mini_phase_seconds_max{backend=").append(label(p.backend)).append(",phase=").append(label(p.name)).append("} ")
+              .append(p.latency.maxMicros() / 1e6).append('\n');
+        }
+        // Allocations (only phases that were measured)
+        sb.append("# HELP mini_phase_allocated_bytes_total Bytes allocated by the running thread during each phase.\n")
+          .append("# TYPE mini_phase_allocated_bytes_total counter\n");
+        for (Phase p : list) {
+            if (p.allocationSamples.sum() == 0) continue;
+            sb.append("mini_phase_allocated_bytes_total{backend=").append(label(p.backend)).append(",phase=").append(label(p.name)).append("} ")
+              .append(p.allocatedBytes.sum()).append('\n');
+        }
+        // Cache lookups
+        sb.append("# HELP mini_cache_requests_total Cache lookups by result.\n# TYPE mini_cache_requests_total counter\n");
+        new TreeMap<>(caches).forEach((name, c) -> {
+            sb.append("mini_cache_requests_total{cache=").append(label(name)).append(",result=\"hit\"} ").append(c[0].sum()).append('\n');
+            sb.append("mini_cache_requests_total{cache=").append(label(name)).append(",result=\"miss\"} ").append(c[1].sum()).append('\n');
+        });
+        return sb.toString();
+    }
+
+    // Method to quote a label value
+    private static String label(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+    }
+
+    // Method to serve the exposition on the loopback interface for scraping (GET /metrics)
+    com.sun.net.httpserver.HttpServer serve(int port) throws IOException {
+        com.sun.net.httpserver.HttpServer http = com.sun.net.httpserver.HttpServer.create(
+                new java.net.InetSocketAddress(java.net.InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", ex -> {
+            try (ex) {
+                byte[] body = exposition().getBytes(StandardCharsets.UTF_8);
+                ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                ex.sendResponseHeaders(200, body.length);
+                ex.getResponseBody().write(body);
+            }
+        });
+        // The default executor runs requests on the server's own daemon thread
+        http.start();
+        return http;
+    }
+}
+
+// --- Headless compile-and-run server (HTTP on the loopback interface) ---
+final class MiniCompilerServer {
+    // Largest accepted request body
+    private static final int MAX_BODY = 16 << 20;
+    // #include'd units from the saved programs directory; requests only read their artifacts, never write them
+    private static final CompilationUnits UNITS = new CompilationUnits(new File("saved"), false);
+
+    // Underlying HTTP server
+    private final com.sun.net.httpserver.HttpServer http;
+    // Executor running one (virtual when available) thread per request
+    private final java.util.concurrent.ExecutorService executor;
+    // Admission permits (running plus queued requests)
+    private final java.util.concurrent.Semaphore admission;
+    // Permits for requests doing work at the same time
+    private final java.util.concurrent.Semaphore running;
+    // Latency histogram per endpoint
+    private final Map<String, LatencyHistogram> latencies = new java.util.concurrent.ConcurrentHashMap<>();
+    // Requests rejected because the queue was full
+    private final java.util.concurrent.atomic.LongAdder rejected = new java.util.concurrent.atomic.LongAdder();
+
+    // Constructor binding to a loopback port (0 picks a free port)
+    MiniCompilerServer(int port, int maxConcurrent, int queueCapacity) throws IOException {
+        // Bind to loopback only
+        http = com.sun.net.httpserver.HttpServer.create(new java.net.InetSocketAddress(java.net.InetAddress.getLoopbackAddress(), port), 0);
+        // Create request executor
+        executor = newRequestExecutor();
+        // Bound the number of requests in the system
+        admission = new java.util.concurrent.Semaphore(maxConcurrent + queueCapacity);
+        // Bound the number doing work
+        running = new java.util.concurrent.Semaphore(maxConcurrent);
+        // Register endpoints
+        http.createContext("/compile", ex -> handle(ex, "/compile", false));
+        http.createContext("/run", ex -> handle(ex, "/run", true));
+        http.createContext("/stats", this::stats);
+        // Run handlers on the request executor
+        http.setExecutor(executor);
+    }
+
+    // Method to create a virtual-thread-per-task executor, falling back to platform threads before JDK 21
+    static java.util.concurrent.ExecutorService newRequestExecutor() {
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor() on JDK 21+
+            return (java.util.concurrent.ExecutorService) java.util.concurrent.Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            // Cached daemon threads on older JDKs
+            return java.util.concurrent.Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "mini-server");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // Method to start accepting requests
+    void start() {
+        http.start();
+    }
+
+    // Method to stop the server
+    void stop() {
+        http.stop(0);
+        executor.shutdownNow();
+    }
+
+    // Get the bound port
+    int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    // Method to handle /compile and /run
+    private void handle(com.sun.net.httpserver.HttpExchange ex, String endpoint, boolean execute) throws IOException {
+        // Start time for the latency histogram
+        long t0 = System.nanoTime();
+        try (ex) {
+            // Only POST carries a program
+            if (!"POST".equals(ex.getRequestMethod())) { send(ex, 405, "text/plain", "POST source=...&stdin=..."); return; }
+            // Reject immediately when the admission queue is full
+            if (!admission.tryAcquire()) {
+                rejected.increment();
+                ex.getResponseHeaders().add("Retry-After", "1");
+                send(ex, 503, "text/plain", "Server busy");
+                return;
+            }
+            try {
+                // Wait for a work slot (cheap on a virtual thread)
+                running.acquire();
+                try {
+                    // Read the form body
+                    byte[] body = ex.getRequestBody().readNBytes(MAX_BODY + 1);
+                    if (body.length > MAX_BODY) { send(ex, 413, "text/plain", "Request too large"); return; }
+                    Map<String, String> form = parseForm(new String(body, StandardCharsets.UTF_8));
+                    // Compile (and run) the program
+                    send(ex, 200, "application/json", respond(form.getOrDefault("source", ""), form.getOrDefault("stdin", ""), execute));
+                } finally {
+                    running.release();
+                }
+            } catch (InterruptedException ie) {
+                // Server is shutting down
+                Thread.currentThread().interrupt();
+            } finally {
+                admission.release();
+            }
+        } finally {
+            // Record latency for this endpoint
+            latencies.computeIfAbsent(endpoint, k -> new LatencyHistogram()).record(System.nanoTime() - t0);
+        }
+    }
+
+    // Method to build the JSON response for a program
+    static String respond(String source, String stdin, boolean execute) {
+        // Lex and parse, then link any #include'd units
+        CompileResult result = UNITS.link(MiniFrontEnd.compile(source));
+        // Build JSON by hand (no external dependencies)
+        StringBuilder json = new StringBuilder(256 + result.tokens.size() * 48);
+        json.append("{\"tokens\":[");
+        for (int i = 0; i < result.tokens.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"kind\":").append(quote(TokenKind.name(result.tokens.kind(i))))
+                .append(",\"text\":").append(quote(source.substring(result.tokens.start(i), result.tokens.end(i))))
+                .append(",\"start\":").append(result.tokens.start(i)).append('}');
+        }
+        json.append("],\"diagnostics\":[");
+        for (int i = 0; i < result.diagnostics.size(); i++) {
+            MiniDiagnostic d = result.diagnostics.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"line\":").append(d.line).append(",\"column\":").append(d.column)
+                .append(",\"message\":").append(quote(d.message)).append('}');
+        }
+        json.append(']');
+        // Run statements before the first error, like the native parser does
+        long runNanos = 0;
+        if (execute) {
+            StringBuilder out = new StringBuilder();
+            long t0 = System.nanoTime();
+            String error = null;
+            try {
+                new MiniInterpreter(result.program).run(InputTokens.of(stdin), out);
+            } catch (Exception e) {
+                error = e.getMessage();
+            }
+            runNanos = System.nanoTime() - t0;
+            json.append(",\"output\":").append(quote(out.toString()));
+            if (error != null) json.append(",\"runtimeError\":").append(quote(error));
+        }
+        // Phase timings
+        json.append(",\"timings\":{\"lexMicros\":").append(result.lexNanos / 1000)
+            .append(",\"parseMicros\":").append(result.parseNanos / 1000)
+            .append(",\"runMicros\":").append(runNanos / 1000).append("}}");
+        return json.toString();
+    }
+
+    // Method to serve the latency histograms as plain text
+    private void stats(com.sun.net.httpserver.HttpExchange ex) throws IOException {
+        try (ex) {
+            StringBuilder sb = new StringBuilder();
+            // One line per endpoint
+            new TreeMap<>(latencies).forEach((k, h) -> sb.append(k).append(' ').append(h.summary()).append('\n'));
+            // Queue state
+            sb.append("rejected ").append(rejected.sum()).append('\n');
+            sb.append("free_work_slots ").append(running.availablePermits()).append('\n');
+            send(ex, 200, "text/plain", sb.toString());
+        }
+    }
+
+    // Method to write a response
+    private static void send(com.sun.net.httpserver.HttpExchange ex, int status, String type, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        ex.getResponseBody().write(bytes);
+    }
+
+    // Method to decode an application/x-www-form-urlencoded body
+    static Map<String, String> parseForm(String body) {
+        Map<String, String> form = new HashMap<>();
+        for (String pair : body.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String key = java.net.URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : java.net.URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            form.put(key, value);
+        }
+        return form;
+    }
+
+    // Method to quote a string as a JSON literal
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
+
+// --- Batch compile/run of saved programs sharded across worker JVMs (coordinator side) ---
+final class BatchCoordinator {
+    // Handshake magic "MBAT" (rejects stray connections)
+    static final int MAGIC = 0x4D424154;
+    // Tries per shard before its jobs are reported as lost
+    static final int MAX_ATTEMPTS = 3;
+    // Programs per shard by default
+    static final int DEFAULT_SHARD = 8;
+    // Environment variable carrying the shared worker token (kept off command lines, which other users can list)
+    static final String TOKEN_ENV = "MINI_BATCH_TOKEN";
+    // Time a connection gets to send its handshake
+    static final int HANDSHAKE_MS = 10_000;
+
+    // One program to compile and run
+    static final class Job {
+        // Position in the merged report
+        final int index;
+        // File name
+        final String name;
+        // Program text and stdin as UTF-8
+        final byte[] source, input;
+
+        // Constructor to initialize all fields
+        Job(int index, String name, byte[] source, byte[] input) {
+            this.index = index;
+            this.name = name;
+            this.source = source;
+            this.input = input;
+        }
+    }
+
+    // Unit of work handed to a worker
+    static final class Shard {
+        // Jobs in file order
+        final Job[] jobs;
+        // Tries so far
+        final int attempts;
+
+        // Constructor to initialize all fields
+        Shard(Job[] jobs, int attempts) {
+            this.jobs = jobs;
+            this.attempts = attempts;
+        }
+    }
+
+    // Outcome of one job
+    static final class JobResult {
+        // Backend status ("Program executed successfully", "Parser error", ...)
+        final String status;
+        // Output size in UTF-8 bytes
+        final long outputBytes;
+        // SHA-256 of the output, hex (empty when nothing ran)
+        final String digest;
+        // Compile and run time on the worker
+        final long nanos;
+        // Worker that ran it
+        final String worker;
+        // Tries it took
+        final int attempts;
+
+        // Constructor to initialize all fields
+        JobResult(String status, long outputBytes, String digest, long nanos, String worker, int attempts) {
+            this.status = status;
+            this.outputBytes = outputBytes;
+            this.digest = digest;
+            this.nanos = nanos;
+            this.worker = worker;
+            this.attempts = attempts;
+        }
+    }
+
+    // Throughput counters of one worker
+    static final class WorkerStats {
+        // Worker id
+        final String id;
+        // Jobs and shards finished, shards stolen from other queues, shards lost when it died
+        int jobs, shards, stolen, lost;
+        // Source bytes processed
+        long sourceBytes;
+        // Time spent compiling and running, as reported by the worker
+        long busyNanos;
+        // Connected from, until
+        final long since = System.nanoTime();
+        long until;
+
+        // Constructor naming the worker
+        WorkerStats(String id) {
+            this.id = id;
+        }
+    }
+
+    // All jobs in report order
+    private final Job[] jobs;
+    // Results by job index
+    private final JobResult[] results;
+    // One deque per worker: it takes from the head, idle workers steal from the tail
+    private final List<ArrayDeque<Shard>> queues = new ArrayList<>();
+    // Initial queues not yet claimed by a worker
+    private int unclaimed;
+    // Jobs with a result
+    private int done;
+    // Workers in connection order
+    private final List<WorkerStats> workers = new ArrayList<>();
+    // Backend the workers run
+    private final String backend;
+    // Local worker JVMs running, replacements still allowed, open worker connections
+    private int aliveProcesses, replacementsLeft, connections;
+    // Whether the batch relies on local workers (otherwise it waits for remote ones indefinitely)
+    private boolean local;
+    // Secret every worker must present in its handshake
+    private final String token;
+    // Longest a worker may take to answer one shard before the shard counts as lost (-Dmini.batch.shard.timeout.ms)
+    private final int shardTimeoutMs = Integer.getInteger("mini.batch.shard.timeout.ms", 300_000);
+    // Local worker JVMs by id (destroyed when they miss a shard deadline)
+    private final Map<String, Process> processes = new HashMap<>();
+
+    // Constructor to split jobs into shards, spread over the expected workers' queues in contiguous ranges
+    BatchCoordinator(Job[] jobs, int shardSize, int expectedWorkers, String backend, String token) {
+        this.jobs = jobs;
+        this.results = new JobResult[jobs.length];
+        this.backend = backend;
+        this.token = token;
+        int queueCount = Math.max(1, expectedWorkers);
+        for (int i = 0; i < queueCount; i++) queues.add(new ArrayDeque<>());
+        int shardCount = (jobs.length + shardSize - 1) / shardSize;
+        for (int k = 0; k < shardCount; k++) {
+            Job[] part = Arrays.copyOfRange(jobs, k * shardSize, Math.min(jobs.length, (k + 1) * shardSize));
+            // Neighbouring shards share a queue, so a worker runs a contiguous range unless it steals
+            queues.get((int) ((long) k * queueCount / shardCount)).addLast(new Shard(part, 0));
+        }
+    }
+
+    // Method to run a batch from the command line: --batch [dir] [--workers N] [--shard N] [--backend NAME] [--port N]
+    static int main(String[] args) throws IOException, InterruptedException {
+        List<String> flags = Arrays.asList(args);
+        File dir = new File(args.length > 1 && !args[1].startsWith("--") ? args[1] : "saved");
+        int workerCount = intFlag(flags, "--workers", Runtime.getRuntime().availableProcessors());
+        int shardSize = Math.max(1, intFlag(flags, "--shard", DEFAULT_SHARD));
+        int port = intFlag(flags, "--port", 0);
+        int backendArg = flags.indexOf("--backend");
+        String backend = backendArg >= 0 && backendArg + 1 < args.length ? args[backendArg + 1] : "java";
+        // Programs in name order; name.in next to a program is its stdin
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".cpp"));
+        if (files == null) {
+            System.err.println("Not a directory: " + dir);
+            return 2;
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        Job[] jobs = new Job[files.length];
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            File in = new File(dir, name.substring(0, name.length() - 4) + ".in");
+            jobs[i] = new Job(i, name, java.nio.file.Files.readAllBytes(files[i].toPath()),
+                    in.isFile() ? java.nio.file.Files.readAllBytes(in.toPath()) : new byte[0]);
+        }
+        // Loopback unless remote workers should be able to connect (-Dmini.batch.bind=0.0.0.0)
+        InetAddress bind = InetAddress.getByName(System.getProperty("mini.batch.bind", "127.0.0.1"));
+        // Workers prove they were invited with a shared token: the configured one, else a fresh random one
+        String configured = configuredToken();
+        String token = configured != null ? configured : randomToken();
+        BatchCoordinator batch = new BatchCoordinator(jobs, shardSize, workerCount, backend, token);
+        try (ServerSocket server = new ServerSocket(port, 64, bind)) {
+            System.err.println("Batch coordinator on " + bind.getHostAddress() + ":" + server.getLocalPort() + ": "
+                    + jobs.length + " programs, " + workerCount + " local workers");
+            // Remote workers need the generated token in their environment
+            if (configured == null && !bind.isLoopbackAddress()) System.err.println("Worker token (" + TOKEN_ENV + "): " + token);
+            batch.accept(server);
+            batch.startLocalWorkers(server.getLocalPort(), workerCount);
+            batch.awaitDone();
+        }
+        // Merged results in file order, then the fleet sizing table
+        batch.writeReport(new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        batch.writeThroughput(new PrintWriter(new OutputStreamWriter(System.err, StandardCharsets.UTF_8)));
+        return batch.lostJobs() == 0 ? 0 : 1;
+    }
+
+    // Method to read the shared worker token from the environment or -Dmini.batch.token (null if unset)
+    static String configuredToken() {
+        String token = System.getenv(TOKEN_ENV);
+        if (token == null || token.isEmpty()) token = System.getProperty("mini.batch.token");
+        return token == null || token.isEmpty() ? null : token;
+    }
+
+    // Method to generate a 128-bit token as hex
+    private static String randomToken() {
+        byte[] bytes = new byte[16];
+        new java.security.SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(32);
+        for (byte b : bytes) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    // Method to read an integer option
+    private static int intFlag(List<String> flags, String name, int fallback) {
+        int i = flags.indexOf(name);
+        return i >= 0 && i + 1 < flags.size() ? Integer.parseInt(flags.get(i + 1)) : fallback;
+    }
+
+    // Method to accept worker connections on a daemon thread, one handler thread per worker
+    void accept(ServerSocket server) {
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    Thread handler = new Thread(() -> serve(socket), "batch-worker-conn");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException ex) {
+                    // Server closed at the end of the batch
+                }
+            }
+        }, "batch-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // Method to start worker JVMs on this machine, replacing ones that die while work is left (at most n replacements)
+    synchronized void startLocalWorkers(int port, int n) throws IOException {
+        if (n <= 0) return;
+        local = true;
+        replacementsLeft = n;
+        for (int i = 1; i <= n; i++) startLocalWorker(port, "w" + i);
+    }
+
+    // Method to start one worker JVM and watch it
+    private synchronized void startLocalWorker(int port, String id) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        // Same class path and mini.* settings as the coordinator
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for (String key : System.getProperties().stringPropertyNames()) {
+            // The token travels in the environment instead
+            if (key.startsWith("mini.") && !key.equals("mini.batch.token")) command.add("-D" + key + "=" + System.getProperty(key));
+        }
+        command.add("MiniCompilerGUI");
+        command.add("--batch-worker");
+        command.add("127.0.0.1:" + port);
+        command.add(id);
+        ProcessBuilder builder = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        builder.environment().put(TOKEN_ENV, token);
+        Process process = builder.start();
+        aliveProcesses++;
+        processes.put(id, process);
+        process.onExit().thenRun(() -> {
+            synchronized (this) {
+                aliveProcesses--;
+                processes.remove(id);
+                if (done == jobs.length) return;
+                // Died with work left: start a replacement
+                if (replacementsLeft > 0) {
+                    replacementsLeft--;
+                    try {
+                        startLocalWorker(port, id + "'");
+                    } catch (IOException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+                abandonIfStranded();
+            }
+        });
+    }
+
+    // Method to fail the queued work once no local worker is left to take it
+    private synchronized void abandonIfStranded() {
+        if (local && done < jobs.length && aliveProcesses == 0 && connections == 0) abandon("no workers left");
+    }
+
+    // Method to talk to one worker until the batch is done or the connection drops
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            // A silent connection doesn't get to hold a handler thread
+            socket.setSoTimeout(HANDSHAKE_MS);
+            if (in.readInt() != MAGIC) return;
+            // Only invited workers receive programs (compared in constant time)
+            if (!java.security.MessageDigest.isEqual(in.readUTF().getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+                System.err.println("Batch: rejected a worker from " + socket.getRemoteSocketAddress() + " (wrong token)");
+                return;
+            }
+            WorkerStats worker = register(in.readUTF());
+            out.writeUTF(backend);
+            out.flush();
+            // Deadline for each shard's answer; a hung worker's shard goes back to the queue
+            socket.setSoTimeout(shardTimeoutMs);
+            int queue = claimQueue();
+            Shard shard = null;
+            try {
+                while ((shard = next(queue, worker)) != null) {
+                    send(out, shard);
+                    complete(shard, receive(in, shard, worker.id), worker);
+                    shard = null;
+                }
+                // No more work: the worker exits
+                out.writeInt(0);
+                out.flush();
+            } catch (java.net.SocketTimeoutException ex) {
+                // Worker missed the deadline: retry the shard elsewhere and stop a local worker (it gets replaced)
+                System.err.println("Batch: worker " + worker.id + " missed the " + shardTimeoutMs + " ms shard deadline");
+                if (shard != null) lost(queue, shard, worker);
+                destroyLocal(worker.id);
+            } catch (IOException ex) {
+                // Worker died or hung up mid-shard: retry the shard elsewhere
+                if (shard != null) lost(queue, shard, worker);
+            } finally {
+                synchronized (this) {
+                    worker.until = System.nanoTime();
+                    connections--;
+                }
+                abandonIfStranded();
+            }
+        } catch (IOException | InterruptedException ex) {
+            // Handshake failed or the coordinator is shutting down
+        }
+    }
+
+    // Method to kill a local worker JVM that stopped answering
+    private synchronized void destroyLocal(String id) {
+        Process process = processes.get(id);
+        if (process != null) process.destroyForcibly();
+    }
+
+    // Method to send a shard: job count, then index, name, source and stdin of each job
+    private static void send(DataOutputStream out, Shard shard) throws IOException {
+        out.writeInt(shard.jobs.length);
+        for (Job job : shard.jobs) {
+            out.writeInt(job.index);
+            out.writeUTF(job.name);
+            out.writeInt(job.source.length);
+            out.write(job.source);
+            out.writeInt(job.input.length);
+            out.write(job.input);
+        }
+        out.flush();
+    }
+
+    // Method to read a shard's results in job order
+    private static JobResult[] receive(DataInputStream in, Shard shard, String worker) throws IOException {
+        JobResult[] r = new JobResult[shard.jobs.length];
+        for (int i = 0; i < r.length; i++) {
+            String status = in.readUTF();
+            long bytes = in.readLong();
+            String digest = in.readUTF();
+            r[i] = new JobResult(status, bytes, digest, in.readLong(), worker, shard.attempts + 1);
+        }
+        return r;
+    }
+
+    // Method to add a worker to the throughput table
+    private synchronized WorkerStats register(String id) {
+        connections++;
+        WorkerStats w = new WorkerStats(id);
+        workers.add(w);
+        return w;
+    }
+
+    // Method to give a new worker one of the initial queues (or an empty one if all are taken)
+    private synchronized int claimQueue() {
+        if (unclaimed < queues.size()) return unclaimed++;
+        queues.add(new ArrayDeque<>());
+        return queues.size() - 1;
+    }
+
+    // Method to get a worker's next shard: its own queue's head, else the tail of the longest queue (null when done)
+    private synchronized Shard next(int queue, WorkerStats worker) throws InterruptedException {
+        while (done < jobs.length) {
+            Shard own = queues.get(queue).pollFirst();
+            if (own != null) return own;
+            ArrayDeque<Shard> victim = null;
+            for (ArrayDeque<Shard> q : queues) if (victim == null || q.size() > victim.size()) victim = q;
+            if (victim != null && !victim.isEmpty()) {
+                worker.stolen++;
+                return victim.pollLast();
+            }
+            // Everything is in flight: wait for results or for a dead worker's shard to come back
+            wait();
+        }
+        return null;
+    }
+
+    // Method to store a shard's results
+    private synchronized void complete(Shard shard, JobResult[] r, WorkerStats worker) {
+        for (int i = 0; i < r.length; i++) {
+            worker.busyNanos += r[i].nanos;
+            worker.sourceBytes += shard.jobs[i].source.length;
+            results[shard.jobs[i].index] = r[i];
+        }
+        worker.jobs += r.length;
+        worker.shards++;
+        done += r.length;
+        notifyAll();
+    }
+
+    // Method to requeue a shard whose worker died, one job per shard so a job that kills workers only fails itself
+    private synchronized void lost(int queue, Shard shard, WorkerStats worker) {
+        worker.lost++;
+        if (shard.attempts + 1 >= MAX_ATTEMPTS) {
+            for (Job job : shard.jobs) fail(job, "Lost: worker died " + MAX_ATTEMPTS + " times", shard.attempts + 1);
+        } else {
+            ArrayDeque<Shard> q = queues.get(queue);
+            for (int i = shard.jobs.length - 1; i >= 0; i--) q.addFirst(new Shard(new Job[] { shard.jobs[i] }, shard.attempts + 1));
+        }
+        notifyAll();
+    }
+
+    // Method to fail every queued shard (no worker can take them any more)
+    private synchronized void abandon(String reason) {
+        for (ArrayDeque<Shard> q : queues) {
+            for (Shard shard; (shard = q.pollFirst()) != null; ) {
+                for (Job job : shard.jobs) fail(job, "Lost: " + reason, shard.attempts);
+            }
+        }
+        notifyAll();
+    }
+
+    // Method to record a job that won't run
+    private void fail(Job job, String status, int attempts) {
+        results[job.index] = new JobResult(status, 0, "", 0, "-", attempts);
+        done++;
+    }
+
+    // Method to wait for every job's result (abandoned shards count as results)
+    synchronized void awaitDone() throws InterruptedException {
+        while (done < jobs.length) wait();
+    }
+
+    // Method to count jobs that never ran
+    synchronized int lostJobs() {
+        int n = 0;
+        for (JobResult r : results) if (r.status.startsWith("Lost:")) n++;
+        return n;
+    }
+
+    // Method to write one tab-separated line per program in file order (the same order however the work was split)
+    synchronized void writeReport(PrintWriter out) {
+        out.println("program\tstatus\toutput_bytes\toutput_sha256\tworker\tattempts\tmillis");
+        for (int i = 0; i < jobs.length; i++) {
+            JobResult r = results[i];
+            out.println(jobs[i].name + "\t" + r.status.replaceAll("\\s+", " ") + "\t" + r.outputBytes + "\t" + r.digest + "\t" + r.worker + "\t"
+                    + r.attempts + "\t" + String.format("%.3f", r.nanos / 1e6));
+        }
+        out.flush();
+    }
+
+    // Method to write per-worker throughput (busy rate shows the worker's own speed, wall rate what it added to the batch)
+    synchronized void writeThroughput(PrintWriter out) {
+        out.println(String.format("%-10s %7s %7s %7s %5s %10s %10s %10s", "worker", "jobs", "shards", "stolen", "lost",
+                "busy ms", "jobs/s", "KB/s"));
+        for (WorkerStats w : workers) {
+            double wall = Math.max(1, (w.until == 0 ? System.nanoTime() : w.until) - w.since) / 1e9;
+            out.println(String.format("%-10s %7d %7d %7d %5d %10.1f %10.1f %10.1f", w.id, w.jobs, w.shards, w.stolen, w.lost,
+                    w.busyNanos / 1e6, w.jobs / wall, w.sourceBytes / 1024.0 / wall));
+        }
+        out.flush();
+    }
+}
+
+// --- Batch worker JVM: runs shards from a coordinator (see BatchCoordinator) ---
+final class BatchWorker {
+    // No instances
+    private BatchWorker() {}
+
+    // Method to run as a worker: --batch-worker host:port [id] (token from MINI_BATCH_TOKEN or -Dmini.batch.token)
+    static void main(String[] args) throws IOException {
+        String address = args[1];
+        int colon = address.lastIndexOf(':');
+        String id = args.length > 2 ? args[2] : ProcessHandle.current().pid() + "@" + InetAddress.getLocalHost().getHostName();
+        String token = BatchCoordinator.configuredToken();
+        if (token == null) {
+            System.err.println("No worker token: set " + BatchCoordinator.TOKEN_ENV + " to the coordinator's token");
+            System.exit(2);
+        }
+        run(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)), id, token);
+    }
+
+    // Method to take shards until the coordinator sends an empty one
+    static void run(String host, int port, String id, String token) throws IOException {
+        try (Socket socket = new Socket(host, port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            out.writeInt(BatchCoordinator.MAGIC);
+            out.writeUTF(token);
+            out.writeUTF(id);
+            out.flush();
+            // Backend chosen by the coordinator (the in-process one if this machine lacks it)
+            ExecutionBackend backend = new BackendSelector().byName(in.readUTF());
+            if (backend == null || !backend.isAvailable()) backend = new JavaBackend();
+            for (int n; (n = in.readInt()) > 0; ) {
+                // Read the whole shard, then answer with one result per job
+                String[] names = new String[n];
+                byte[][] sources = new byte[n][], inputs = new byte[n][];
+                for (int i = 0; i < n; i++) {
+                    in.readInt();
+                    names[i] = in.readUTF();
+                    sources[i] = in.readNBytes(in.readInt());
+                    inputs[i] = in.readNBytes(in.readInt());
+                }
+                for (int i = 0; i < n; i++) runJob(backend, sources[i], inputs[i], out);
+                out.flush();
+            }
+        }
+    }
+
+    // Method to run one program and write status, output size, output hash and time
+    private static void runJob(ExecutionBackend backend, byte[] source, byte[] input, DataOutputStream out) throws IOException {
+        long t0 = System.nanoTime();
+        String status;
+        long bytes = 0;
+        String digest = "";
+        try {
+            BackendResult result = backend.run(new String(source, StandardCharsets.UTF_8),
+                    ProgramInput.ofText(new String(input, StandardCharsets.UTF_8)));
+            status = result.status;
+            // Hash the output as it streams out of the spool
+            java.security.MessageDigest sha = java.security.MessageDigest.getInstance("SHA-256");
+            try (OutputSpool output = result.output) {
+                bytes = output.writeTo(new java.security.DigestOutputStream(OutputStream.nullOutputStream(), sha));
+            }
+            digest = hex(sha.digest());
+        } catch (Exception ex) {
+            status = "Worker error: " + ex;
+        }
+        out.writeUTF(status);
+        out.writeLong(bytes);
+        out.writeUTF(digest);
+        out.writeLong(System.nanoTime() - t0);
+    }
+
+    // Method to format bytes as lowercase hex
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+}
+
+// --- Debounced background syntax checking for the code editor ---
+class LiveDiagnostics {
+    // Pause in typing before a check starts
+    static final int DELAY_MS = 350;
+    // Color of the squiggly underline
+    private static final Color SQUIGGLE_COLOR = new Color(255, 85, 85);
+
+    // Editor being checked
+    private final JTextArea area;
+    // Gutter showing error markers
+    private final LineNumberView gutter;
+    // Debounce timer restarted on every edit
+    private final javax.swing.Timer timer;
+    // Single background thread running checks
+    private final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "live-diagnostics");
+        t.setDaemon(true);
+        return t;
+    });
+    // Generation of the latest edit (only that generation's results are applied)
+    private final java.util.concurrent.atomic.AtomicLong generation = new java.util.concurrent.atomic.AtomicLong();
+    // Check currently queued or running
+    private java.util.concurrent.Future<?> job;
+    // Highlight tags of the shown diagnostics
+    private final List<Object> tags = new ArrayList<>();
+    // Diagnostics currently shown
+    private List<MiniDiagnostic> shown = Collections.emptyList();
+
+    // Constructor to hook into the editor
+    LiveDiagnostics(JTextArea area, LineNumberView gutter) {
+        this.area = area;
+        this.gutter = gutter;
+        // Start a check after the typing pause
+        timer = new javax.swing.Timer(DELAY_MS, e -> startCheck());
+        timer.setRepeats(false);
+        // Every edit makes running checks stale and restarts the pause
+        javax.swing.event.DocumentListener edits = new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { edited(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { edited(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {}
+        };
+        area.getDocument().addDocumentListener(edits);
+        // A swapped-in document (switching files) drops the old underlines and is checked after the pause
+        area.addPropertyChangeListener("document", e -> {
+            ((Document) e.getOldValue()).removeDocumentListener(edits);
+            ((Document) e.getNewValue()).addDocumentListener(edits);
+            apply(Collections.emptyList());
+            edited();
+        });
+        // Show the message under the mouse as a tooltip
+        area.addMouseMotionListener(new java.awt.event.MouseMotionAdapter() {
+            @Override public void mouseMoved(java.awt.event.MouseEvent e) {
+                area.setToolTipText(messageAt(area.viewToModel2D(e.getPoint())));
+            }
+        });
+    }
+
+    // Method to react to an edit (on the EDT)
+    private void edited() {
+        // Invalidate every older job
+        generation.incrementAndGet();
+        // Interrupt a stale job right away
+        if (job != null) job.cancel(true);
+        // Wait for the next pause
+        timer.restart();
+    }
+
+    // Method to show diagnostics already known for the current document instead of checking it again
+    void show(List<MiniDiagnostic> diagnostics) {
+        generation.incrementAndGet();
+        if (job != null) job.cancel(true);
+        timer.stop();
+        apply(diagnostics);
+    }
+
+    // Method to queue a check of the current document
+    private void startCheck() {
+        // Generation this job belongs to
+        long gen = generation.get();
+        // Document to check
+        Document doc = area.getDocument();
+        // Lex and parse off the EDT
+        job = executor.submit(() -> check(doc, gen));
+    }
+
+    // Method to lex and parse a snapshot of the document (background thread)
+    private void check(Document doc, long gen) {
+        // Snapshot the text under the document's read lock
+        String[] text = new String[1];
+        doc.render(() -> {
+            try { text[0] = doc.getText(0, doc.getLength()); } catch (BadLocationException ignored) {}
+        });
+        if (text[0] == null || stale(gen)) return;
+        // Lex
+        TokenBuffer tokens = MiniLexer.lex(text[0]);
+        if (stale(gen)) return;
+        // Parse
+        MiniParser parser = new MiniParser(text[0], tokens);
+        parser.parse();
+        if (stale(gen)) return;
+        // Apply on the EDT if nothing changed meanwhile
+        List<MiniDiagnostic> diagnostics = parser.diagnostics();
+        SwingUtilities.invokeLater(() -> { if (generation.get() == gen) apply(diagnostics); });
+    }
+
+    // Check whether a job has been superseded
+    private boolean stale(long gen) {
+        return generation.get() != gen || Thread.currentThread().isInterrupted();
+    }
+
+    // Method to show diagnostics in the editor and gutter (on the EDT)
+    private void apply(List<MiniDiagnostic> diagnostics) {
+        // Remove old underlines
+        Highlighter h = area.getHighlighter();
+        for (Object tag : tags) h.removeHighlight(tag);
+        tags.clear();
+        // Add an underline per diagnostic (at least one character wide)
+        int len = area.getDocument().getLength();
+        for (MiniDiagnostic d : diagnostics) {
+            int start = Math.max(0, Math.min(d.start, len - 1));
+            int end = Math.min(len, Math.max(d.end, start + 1));
+            try { tags.add(h.addHighlight(start, end, SQUIGGLE)); } catch (BadLocationException ignored) {}
+        }
+        // Mark gutter lines
+        gutter.setDiagnostics(diagnostics);
+        shown = diagnostics;
+    }
+
+    // Method to find the message of a diagnostic covering an offset
+    private String messageAt(int offset) {
+        for (MiniDiagnostic d : shown) {
+            if (offset >= d.start - 1 && offset <= d.end) return "Line " + d.line + ": " + d.message;
+        }
+        return null;
+    }
+
+    // Painter drawing a zigzag under the highlighted range
+    private static final Highlighter.HighlightPainter SQUIGGLE = (g, p0, p1, bounds, c) -> {
+        try {
+            // Rectangles of both ends
+            Rectangle a = c.modelToView2D(p0).getBounds();
+            Rectangle b = c.modelToView2D(p1).getBounds();
+            // Only underline the first line of a multi-line span
+            int x1 = b.y == a.y ? b.x : bounds.getBounds().x + bounds.getBounds().width;
+            int y = a.y + a.height - 2;
+            g.setColor(SQUIGGLE_COLOR);
+            // Draw the zigzag in 4px periods
+            for (int x = a.x; x < Math.max(x1, a.x + 4); x += 4) {
+                g.drawLine(x, y, x + 2, y - 2);
+                g.drawLine(x + 2, y - 2, x + 4, y);
+            }
+        } catch (BadLocationException ignored) {} // Range went away during an edit
+    };
+}
+
+// --- Versioned binary artifact (.mcb) holding a compiled program next to its source ---
+final class ProgramArtifact {
+    // File magic "MCB1"
+    static final int MAGIC = 0x4D434231;
+    // Format version (bump when the layout or MiniProgram changes)
+    static final int VERSION = 2;
+    // File extension of artifacts
+    static final String EXTENSION = ".mcb";
+    // Length of the SHA-256 source hash
+    static final int HASH_LENGTH = 32;
+
+    // No instances
+    private ProgramArtifact() {}
+
+    // Method to get the artifact file for a source file (name.cpp -> name.mcb)
+    static File artifactFor(File source) {
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(source.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + EXTENSION);
+    }
+
+    // Method to hash source text (SHA-256 of its UTF-8 bytes)
+    static byte[] hash(CharSequence source) {
+        try {
+            // Stream the UTF-8 bytes through the digest instead of materializing them
+            java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+            SourceText.writeUtf8(source, new java.security.DigestOutputStream(OutputStream.nullOutputStream(), digest));
+            return digest.digest();
+        } catch (java.security.NoSuchAlgorithmException ex) {
+            // Every JDK ships SHA-256
+            throw new IllegalStateException(ex);
+        } catch (IOException ex) {
+            // The null stream doesn't throw
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Method to write an artifact atomically (temp file, then rename)
+    static void write(File file, byte[] hash, CompileResult result) throws IOException {
+        MiniProgram p = result.program;
+        // Write next to the target so the rename stays on one file system
+        File temp = File.createTempFile("artifact", ".tmp", file.getAbsoluteFile().getParentFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            // Header
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(hash);
+            // Interned symbols and string literals
+            writeStrings(out, p.symbols);
+            writeStrings(out, p.strings);
+            // Statements
+            out.writeInt(p.stmtCount);
+            out.write(p.stmtKind, 0, p.stmtCount);
+            writeInts(out, p.stmtTarget, p.stmtCount);
+            writeInts(out, p.stmtTermStart, p.stmtCount);
+            writeInts(out, p.stmtTermEnd, p.stmtCount);
+            writeInts(out, p.stmtStart, p.stmtCount);
+            writeInts(out, p.stmtEnd, p.stmtCount);
+            writeInts(out, p.stmtLine, p.stmtCount);
+            // Terms
+            out.writeInt(p.termCount);
+            for (int i = 0; i < p.termCount; i++) out.writeByte(p.termIsVar[i] ? 1 : 0);
+            writeInts(out, p.termValue, p.termCount);
+            // Diagnostics
+            out.writeInt(result.diagnostics.size());
+            for (MiniDiagnostic d : result.diagnostics) {
+                out.writeInt(d.start);
+                out.writeInt(d.end);
+                out.writeInt(d.line);
+                out.writeInt(d.column);
+                writeString(out, d.message);
+            }
+        } catch (IOException ex) {
+            temp.delete();
+            throw ex;
+        }
+        // Replace the old artifact in one step
+        try {
+            java.nio.file.Files.move(temp.toPath(), file.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                    java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            temp.delete();
+            throw ex;
+        }
+    }
+
+    // Method to load an artifact through a memory mapping (null if missing, stale or from another version)
+    static CompileResult load(File file, byte[] hash) throws IOException {
+        // No artifact yet
+        if (!file.isFile()) return null;
+        long t0 = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // Map the whole artifact
+            java.nio.ByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            // Check header before decoding anything else
+            if (in.remaining() < 8 + HASH_LENGTH || in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+            byte[] stored = new byte[HASH_LENGTH];
+            in.get(stored);
+            if (!Arrays.equals(stored, hash)) return null;
+            // Symbols and strings
+            MiniProgram p = new MiniProgram();
+            for (String s : readStrings(in)) p.intern(s);
+            p.strings.addAll(readStrings(in));
+            // Statements
+            int n = in.getInt();
+            p.stmtCount = n;
+            p.stmtKind = new byte[Math.max(1, n)];
+            in.get(p.stmtKind, 0, n);
+            p.stmtTarget = readInts(in, n);
+            p.stmtTermStart = readInts(in, n);
+            p.stmtTermEnd = readInts(in, n);
+            p.stmtStart = readInts(in, n);
+            p.stmtEnd = readInts(in, n);
+            p.stmtLine = readInts(in, n);
+            // Terms
+            int t = in.getInt();
+            p.termCount = t;
+            p.termIsVar = new boolean[Math.max(1, t)];
+            for (int i = 0; i < t; i++) p.termIsVar[i] = in.get() != 0;
+            p.termValue = readInts(in, t);
+            // Diagnostics
+            int d = in.getInt();
+            List<MiniDiagnostic> diagnostics = new ArrayList<>(d);
+            for (int i = 0; i < d; i++) {
+                int start = in.getInt(), end = in.getInt(), line = in.getInt(), column = in.getInt();
+                diagnostics.add(new MiniDiagnostic(start, end, line, column, readString(in)));
+            }
+            // No lexing; "parse" time is the load time
+            return new CompileResult(null, p, diagnostics, 0, System.nanoTime() - t0);
+        } catch (java.nio.BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException ex) {
+            // Truncated or corrupt artifact
+            throw new IOException("Corrupt artifact: " + file, ex);
+        }
+    }
+
+    // Method to write a length-prefixed list of strings
+    private static void writeStrings(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String s : list) writeString(out, s);
+    }
+
+    // Method to write a length-prefixed UTF-8 string
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    // Method to write the first n ints of an array
+    private static void writeInts(DataOutputStream out, int[] a, int n) throws IOException {
+        for (int i = 0; i < n; i++) out.writeInt(a[i]);
+    }
+
+    // Method to read a length-prefixed list of strings
+    private static List<String> readStrings(java.nio.ByteBuffer in) {
+        int n = in.getInt();
+        List<String> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) list.add(readString(in));
+        return list;
+    }
+
+    // Method to read a length-prefixed UTF-8 string
+    private static String readString(java.nio.ByteBuffer in) {
+        byte[] b = new byte[in.getInt()];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // Method to read n ints into an array (at least one slot so the program can still grow)
+    private static int[] readInts(java.nio.ByteBuffer in, int n) {
+        int[] a = new int[Math.max(1, n)];
+        in.asIntBuffer().get(a, 0, n);
+        in.position(in.position() + n * 4);
+        return a;
+    }
+}
+
+// --- Binary token stream written by the native token_stream lexer (see token_stream.cpp) ---
+final class BinaryTokenStream {
+    // Stream magic "MTK1"
+    static final int MAGIC = 0x4D544B31;
+
+    // No instances
+    private BinaryTokenStream() {}
+
+    // Method to find the native lexer executable (null if it isn't built)
+    static File nativeLexer() {
+        for (String name : new String[] {"token_stream", "token_stream.exe"}) {
+            File f = new File(name);
+            if (f.isFile() && f.canExecute()) return f;
+        }
+        return null;
+    }
+
+    // Method to lex source with the native lexer, decoding into a reused buffer
+    static void lexNative(CharSequence source, TokenBuffer out) throws IOException, InterruptedException {
+        File temp = File.createTempFile("input", ".cpp");
+        try {
+            // Source bytes as the native lexer sees them, encoded in chunks
+            long utf8Length;
+            try (OutputStream file = new FileOutputStream(temp)) {
+                utf8Length = SourceText.writeUtf8(source, file);
+            }
+            // Run the lexer and take its whole stdout as one buffer
+            Process process = new ProcessBuilder(nativeLexer().getAbsolutePath(), temp.getAbsolutePath())
+                    .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            byte[] stream;
+            try (InputStream in = process.getInputStream()) {
+                stream = in.readAllBytes();
+            }
+            if (process.waitFor() != 0) throw new IOException("token_stream exited with " + process.exitValue());
+            // Decode without creating any strings
+            decode(java.nio.ByteBuffer.wrap(stream), out);
+            // Native offsets count bytes; convert when the source isn't pure ASCII
+            if (utf8Length != source.length()) toCharOffsets(out, source);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    // Method to decode a stream into out (cleared first)
+    static void decode(java.nio.ByteBuffer in, TokenBuffer out) throws IOException {
+        out.clear();
+        try {
+            if (in.getInt() != MAGIC) throw new IOException("Not a token stream");
+            // End offset of the previous token
+            int prevEnd = 0;
+            for (byte kind; (kind = in.get()) != TokenKind.EOF; ) {
+                // Span relative to the previous token
+                int start = prevEnd + readVarint(in);
+                int length = readVarint(in);
+                // Inline value for numbers (zigzag) and single characters
+                int value = 0;
+                if (kind == TokenKind.NUMBER) {
+                    int z = readVarint(in);
+                    value = (z >>> 1) ^ -(z & 1);
+                } else if (kind == TokenKind.CHAR) {
+                    value = readVarint(in);
+                }
+                out.add(kind, start, length, value);
+                prevEnd = start + length;
+            }
+        } catch (java.nio.BufferUnderflowException ex) {
+            throw new IOException("Truncated token stream", ex);
+        }
+    }
+
+    // Method to encode tokens in the same format (mirror of token_stream.cpp)
+    static void encode(TokenBuffer tokens, OutputStream out) throws IOException {
+        new DataOutputStream(out).writeInt(MAGIC);
+        int prevEnd = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            byte kind = tokens.kind(i);
+            out.write(kind);
+            writeVarint(out, tokens.start(i) - prevEnd);
+            writeVarint(out, tokens.length(i));
+            if (kind == TokenKind.NUMBER) writeVarint(out, (tokens.value(i) << 1) ^ (tokens.value(i) >> 31));
+            else if (kind == TokenKind.CHAR) writeVarint(out, tokens.value(i));
+            prevEnd = tokens.end(i);
+        }
+        out.write(TokenKind.EOF);
+    }
+
+    // Method to read an unsigned LEB128 varint
+    private static int readVarint(java.nio.ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+
+    // Method to write an unsigned LEB128 varint
+    private static void writeVarint(OutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    // Method to turn UTF-8 byte spans into char spans with one forward pass over the source chars
+    static void toCharOffsets(TokenBuffer tokens, CharSequence source) {
+        // Byte and char positions walked so far
+        int bytePos = 0, charPos = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            // Advance to the token start, then to its end
+            int startByte = tokens.start(i), endByte = tokens.end(i);
+            while (bytePos < startByte) bytePos += utf8Bytes(source, charPos++);
+            int startChar = charPos;
+            while (bytePos < endByte) bytePos += utf8Bytes(source, charPos++);
+            tokens.setSpan(i, startChar, charPos - startChar);
+        }
+    }
+
+    // UTF-8 bytes of the char at i (a surrogate pair's 4 bytes count at its low half; unpaired surrogates become '?')
+    private static int utf8Bytes(CharSequence s, int i) {
+        char c = s.charAt(i);
+        if (c < 0x80) return 1;
+        if (c < 0x800) return 2;
+        if (Character.isHighSurrogate(c)) return i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1)) ? 0 : 1;
+        if (Character.isLowSurrogate(c)) return i > 0 && Character.isHighSurrogate(s.charAt(i - 1)) ? 4 : 1;
+        return 3;
+    }
+}
+
+// --- Zero-copy source text: a Swing document's segments or a mapped file, read through CharSequence ---
+final class SourceText implements CharSequence {
+    // Chunk size for streaming text out
+    private static final int CHUNK = 1 << 13;
+    // Files at least this large are memory-mapped (smaller ones are cheaper to read)
+    static final int MAP_MIN_BYTES = 1 << 20;
+    // Windows refuses to truncate a file while a mapping of it is still uncollected, which would break the next save
+    private static final boolean MAP = !System.getProperty("os.name", "").startsWith("Windows");
+
+    // Document text before the gap
+    private final char[] head;
+    private final int headOffset;
+    // Length of the head piece
+    private final int split;
+    // Document text after the gap
+    private final char[] tail;
+    private final int tailOffset;
+    // Bounds of this view within head + tail
+    private final int start, length;
+
+    // Constructor for a view over two pieces
+    private SourceText(char[] head, int headOffset, int split, char[] tail, int tailOffset, int start, int length) {
+        this.head = head;
+        this.headOffset = headOffset;
+        this.split = split;
+        this.tail = tail;
+        this.tailOffset = tailOffset;
+        this.start = start;
+        this.length = length;
+    }
+
+    // Method to view a document's text without copying (valid until the document changes, so use it on the EDT or under render)
+    static CharSequence of(Document doc) {
+        int len = doc.getLength();
+        try {
+            // Partial return hands out the content's own array up to the gap
+            Segment first = new Segment();
+            first.setPartialReturn(true);
+            doc.getText(0, len, first);
+            if (first.count == len) return first;
+            // The rest is contiguous after the gap
+            Segment second = new Segment();
+            second.setPartialReturn(true);
+            doc.getText(first.count, len - first.count, second);
+            if (first.count + second.count == len) {
+                return new SourceText(first.array, first.offset, first.count, second.array, second.offset, 0, len);
+            }
+            // Content kept in more than two pieces: copy once
+            return doc.getText(0, len);
+        } catch (BadLocationException ex) {
+            // Offsets come from the document itself
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // Method to view a file's text: ASCII is read straight from the (mapped) bytes, anything else is decoded once
+    static CharSequence map(File file) throws IOException {
+        java.nio.ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("File too large: " + file);
+            if (MAP && size >= MAP_MIN_BYTES) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = java.nio.ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {}
+                bytes.flip();
+            }
+        }
+        // One byte per char when every byte is ASCII
+        for (int i = 0, n = bytes.limit(); i < n; i++) {
+            if (bytes.get(i) < 0) {
+                // Decode like new String(bytes, UTF_8) and view the decoder's array
+                java.nio.CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+                return new Segment(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+            }
+        }
+        return new AsciiText(bytes, 0, bytes.limit());
+    }
+
+    // Method to drop leading and trailing whitespace like String.trim (a view, not a copy)
+    static CharSequence trim(CharSequence s) {
+        int from = 0, to = s.length();
+        while (from < to && s.charAt(from) <= ' ') from++;
+        while (to > from && s.charAt(to - 1) <= ' ') to--;
+        return from == 0 && to == s.length() ? s : s.subSequence(from, to);
+    }
+
+    // Check whether s contains needle
+    static boolean contains(CharSequence s, String needle) {
+        int last = s.length() - needle.length();
+        outer:
+        for (int i = 0; i <= last; i++) {
+            for (int j = 0; j < needle.length(); j++) if (s.charAt(i + j) != needle.charAt(j)) continue outer;
+            return true;
+        }
+        return false;
+    }
+
+    // Method to write text to a writer without building a String
+    static void write(CharSequence s, Writer out) throws IOException {
+        if (s instanceof String) { out.write((String) s); return; }
+        if (s instanceof Segment) { Segment seg = (Segment) s; out.write(seg.array, seg.offset, seg.count); return; }
+        if (s instanceof SourceText) { ((SourceText) s).writeTo(out); return; }
+        char[] buf = new char[CHUNK];
+        for (int i = 0; i < s.length(); ) {
+            int n = Math.min(buf.length, s.length() - i);
+            for (int j = 0; j < n; j++) buf[j] = s.charAt(i + j);
+            out.write(buf, 0, n);
+            i += n;
+        }
+    }
+
+    // Method to write text as UTF-8 (same bytes as getBytes(UTF_8)) in small chunks, returning the byte count
+    static long writeUtf8(CharSequence s, OutputStream out) throws IOException {
+        java.nio.charset.CharsetEncoder encoder = utf8Encoder();
+        java.nio.CharBuffer in = chars(s);
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(CHUNK);
+        long total = 0;
+        // Encode until the input is used up, emptying the buffer whenever it fills
+        while (encoder.encode(in, buf, true).isOverflow()) total += drain(buf, out);
+        while (encoder.flush(buf).isOverflow()) total += drain(buf, out);
+        return total + drain(buf, out);
+    }
+
+    // Method to empty an encoder buffer into a stream
+    private static int drain(java.nio.ByteBuffer buf, OutputStream out) throws IOException {
+        buf.flip();
+        int n = buf.remaining();
+        out.write(buf.array(), buf.arrayOffset(), n);
+        buf.clear();
+        return n;
+    }
+
+    // Method to encode text as UTF-8 straight into a buffer sized with utf8Length (e.g. native memory)
+    static void encodeUtf8(CharSequence s, java.nio.ByteBuffer out) {
+        java.nio.charset.CharsetEncoder encoder = utf8Encoder();
+        if (encoder.encode(chars(s), out, true).isOverflow() || encoder.flush(out).isOverflow()) {
+            throw new IllegalArgumentException("Buffer smaller than the encoded text");
+        }
+    }
+
+    // Encoder that replaces unpaired surrogates with '?' like String.getBytes
+    private static java.nio.charset.CharsetEncoder utf8Encoder() {
+        return StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(java.nio.charset.CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(java.nio.charset.CodingErrorAction.REPLACE);
+    }
+
+    // Method to wrap text for an encoder (a Segment's array directly)
+    private static java.nio.CharBuffer chars(CharSequence s) {
+        if (s instanceof Segment) {
+            Segment seg = (Segment) s;
+            return java.nio.CharBuffer.wrap(seg.array, seg.offset, seg.count);
+        }
+        return java.nio.CharBuffer.wrap(s);
+    }
+
+    // Method to count the UTF-8 bytes of text (unpaired surrogates count as the one-byte '?' they are replaced by)
+    static long utf8Length(CharSequence s) {
+        long n = 0;
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) n++;
+            else if (c < 0x800) n += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) { n += 4; i++; }
+            else if (Character.isSurrogate(c)) n++;
+            else n += 3;
+        }
+        return n;
+    }
+
+    // Method to write both pieces of this view
+    private void writeTo(Writer out) throws IOException {
+        int end = start + length;
+        if (start < split) out.write(head, headOffset + start, Math.min(end, split) - start);
+        if (end > split) out.write(tail, tailOffset + Math.max(start, split) - split, end - Math.max(start, split));
+    }
+
+    @Override public int length() {
+        return length;
+    }
+
+    @Override public char charAt(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+        int k = start + index;
+        return k < split ? head[headOffset + k] : tail[tailOffset + k - split];
+    }
+
+    @Override public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length || from > to) throw new IndexOutOfBoundsException();
+        return new SourceText(head, headOffset, split, tail, tailOffset, start + from, to - from);
+    }
+
+    // Method to copy the text into a String (only for callers that must keep it)
+    @Override public String toString() {
+        StringWriter out = new StringWriter(length);
+        try {
+            writeTo(out);
+        } catch (IOException ex) {
+            // StringWriter doesn't throw
+            throw new UncheckedIOException(ex);
+        }
+        return out.toString();
+    }
+
+    // --- ASCII bytes (mapped or read) viewed as chars ---
+    static final class AsciiText implements CharSequence {
+        // File bytes
+        private final java.nio.ByteBuffer bytes;
+        // Bounds of this view
+        private final int start, length;
+
+        // Constructor for a view over bytes[start, start + length)
+        AsciiText(java.nio.ByteBuffer bytes, int start, int length) {
+            this.bytes = bytes;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override public int length() {
+            return length;
+        }
+
+        @Override public char charAt(int index) {
+            if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+            return (char) bytes.get(start + index);
+        }
+
+        @Override public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > length || from > to) throw new IndexOutOfBoundsException();
+            return new AsciiText(bytes, start + from, to - from);
+        }
+
+        @Override public String toString() {
+            byte[] b = new byte[length];
+            bytes.get(start, b);
+            return new String(b, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
+
+// --- Editor text snapshot that also says how much of it is unchanged since the previous snapshot ---
+final class EditedSource implements CharSequence {
+    // Snapshot text
+    final String text;
+    // Previous snapshot (null when unknown) and this one
+    final Object base, version;
+    // Lengths of the leading and trailing text unchanged since base
+    final int prefix, suffix;
+
+    // Constructor for a snapshot
+    EditedSource(String text, Object base, Object version, int prefix, int suffix) {
+        this.text = text;
+        this.base = base;
+        this.version = version;
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    @Override public int length() { return text.length(); }
+
+    @Override public char charAt(int index) { return text.charAt(index); }
+
+    @Override public CharSequence subSequence(int start, int end) { return text.subSequence(start, end); }
+
+    @Override public String toString() { return text; }
+}
+
+// --- Program stdin: input field text, an attached file, or a piped stream ---
+final class ProgramInput {
+    // Buffer size used when pumping input into a process
+    private static final int PUMP_BUFFER = 1 << 16;
+
+    // Input text (input field), or null
+    private final String text;
+    // Input file, or null
+    private final File file;
+    // Piped stream, or null
+    private final InputStream stream;
+
+    // Constructor for exactly one of the three sources
+    private ProgramInput(String text, File file, InputStream stream) {
+        this.text = text;
+        this.file = file;
+        this.stream = stream;
+    }
+
+    // Factory for text input
+    static ProgramInput ofText(String text) {
+        return new ProgramInput(text == null ? "" : text, null, null);
+    }
+
+    // Factory for file input (read lazily)
+    static ProgramInput ofFile(File file) {
+        return new ProgramInput(null, file, null);
+    }
+
+    // Factory for a piped stream (read lazily, not closed)
+    static ProgramInput ofStream(InputStream stream) {
+        return new ProgramInput(null, null, stream);
+    }
+
+    // Method to open the input as cin tokens for the in-process interpreter
+    InputTokens tokens() throws IOException {
+        // Files and streams are decoded in large chunks, never loaded whole
+        if (file != null) return new InputTokens(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        if (stream != null) return new InputTokens(new InputStreamReader(new FilterInputStream(stream) {
+            @Override public void close() {} // Leave the shared stream open
+        }, StandardCharsets.UTF_8));
+        return InputTokens.of(text);
+    }
+
+    // Method to read the whole input as UTF-8 bytes (for backends that take cin in one buffer)
+    byte[] readBytes() throws IOException {
+        if (file != null) return java.nio.file.Files.readAllBytes(file.toPath());
+        if (stream != null) return stream.readAllBytes();
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Method to read the whole input unless it is larger than limit bytes (null then; a stream is consumed up to the limit)
+    byte[] readBytes(int limit) throws IOException {
+        if (file != null && file.length() > limit) return null;
+        byte[] bytes = stream != null ? stream.readNBytes(limit + 1) : readBytes();
+        return bytes.length > limit ? null : bytes;
+    }
+
+    // Method to identify the input's content for memoization (null for a stream, which can only be read once)
+    String identity() {
+        if (file != null) return "file:" + file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        if (stream != null) return null;
+        return "text:" + text;
+    }
+
+    // Method to start a process with this input as its stdin
+    Process start(ProcessBuilder pb) throws IOException {
+        // Files are handed to the OS directly
+        if (file != null) return pb.redirectInput(file).start();
+        // Text and streams are pumped through a pipe
+        Process process = pb.redirectInput(ProcessBuilder.Redirect.PIPE).start();
+        Thread pump = new Thread(() -> pump(process), "stdin-pump");
+        pump.setDaemon(true);
+        pump.start();
+        return process;
+    }
+
+    // Method to copy text or stream input into a process and close its stdin
+    private void pump(Process process) {
+        try (OutputStream out = process.getOutputStream()) {
+            if (text != null) {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            byte[] buf = new byte[PUMP_BUFFER];
+            for (int n; (n = stream.read(buf)) > 0; ) out.write(buf, 0, n);
+        } catch (IOException ignored) {
+            // The process exited before reading all of its input
+        }
+    }
+}
+
+// --- Per-statement execution counts and times from a profiling run ---
+final class ProfileResult {
+    // Program that was profiled
+    final MiniProgram program;
+    // Source the program was compiled from
+    final String source;
+    // Executions per statement
+    final long[] counts;
+    // Cumulative nanoseconds per statement
+    final long[] nanos;
+
+    // Constructor allocating one counter per statement
+    ProfileResult(MiniProgram program, String source) {
+        this.program = program;
+        this.source = source;
+        this.counts = new long[program.stmtCount];
+        this.nanos = new long[program.stmtCount];
+    }
+
+    // Get total profiled time
+    long totalNanos() {
+        long total = 0;
+        for (long n : nanos) total += n;
+        return total;
+    }
+
+    // Method to compute heat per 0-based line (log-scaled share of the hottest line)
+    double[] heatByLine(int lineCount) {
+        // Sum time per line
+        long[] perLine = new long[Math.max(1, lineCount)];
+        for (int s = 0; s < program.stmtCount; s++) {
+            int line = program.stmtLine[s] - 1;
+            if (line >= 0 && line < perLine.length) perLine[line] += nanos[s];
+        }
+        // Scale against the hottest line
+        long max = 0;
+        for (long n : perLine) max = Math.max(max, n);
+        double[] heat = new double[perLine.length];
+        if (max == 0) return heat;
+        for (int i = 0; i < heat.length; i++) heat[i] = Math.log1p(perLine[i]) / Math.log1p(max);
+        return heat;
+    }
+
+    // Method to write one CSV row per statement
+    void writeCsv(Writer out) throws IOException {
+        out.write("line,statement,kind,count,total_ns,mean_ns,source\n");
+        for (int s = 0; s < program.stmtCount; s++) {
+            // Statement text, quoted for CSV
+            String text = source.substring(program.stmtStart[s], Math.min(source.length(), program.stmtEnd[s]));
+            out.write(program.stmtLine[s] + "," + s + "," + kindName(program.stmtKind[s]) + "," + counts[s] + ","
+                    + nanos[s] + "," + (counts[s] == 0 ? 0 : nanos[s] / counts[s]) + ",\"" + text.replace("\"", "\"\"") + "\"\n");
+        }
+    }
+
+    // Method to name a statement kind after its grammar rule
+    private static String kindName(byte kind) {
+        return switch (kind) {
+            case MiniProgram.INPUT -> "input_stmt";
+            case MiniProgram.ASSIGN -> "assign_stmt";
+            default -> "output_stmt";
+        };
+    }
+}
+
+// --- Search over a Document's Segment chunks (no full-text copy) ---
+final class DocumentSearch {
+    // Characters requested per chunk
+    private static final int CHUNK = 1 << 16;
+
+    // Receiver of matches in document order
+    interface MatchSink {
+        // Called for each match (replacement is the expanded text for regex searches, else null)
+        void match(int start, int end, String replacement);
+    }
+
+    // No instances
+    private DocumentSearch() {}
+
+    // Method to find non-overlapping matches of a literal or (line-scoped) regex
+    static void find(Document doc, String pattern, boolean regex, boolean matchCase, String replacement,
+                     MatchSink sink, java.util.function.BooleanSupplier cancelled) throws BadLocationException {
+        if (pattern.isEmpty()) return;
+        if (regex) findRegex(doc, Pattern.compile(pattern, matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE),
+                replacement, sink, cancelled);
+        else findLiteral(doc, pattern, matchCase, sink, cancelled);
+    }
+
+    // Method to run Boyer-Moore-Horspool directly over partial-return segments
+    static void findLiteral(Document doc, String pattern, boolean matchCase, MatchSink sink,
+                            java.util.function.BooleanSupplier cancelled) throws BadLocationException {
+        // Folded pattern
+        int m = pattern.length();
+        char[] p = new char[m];
+        for (int i = 0; i < m; i++) p[i] = fold(pattern.charAt(i), matchCase);
+        // Bad-character shifts bucketed by the low byte (a smaller shift is always safe)
+        int[] shift = new int[256];
+        Arrays.fill(shift, m);
+        for (int i = 0; i < m - 1; i++) shift[p[i] & 0xFF] = Math.min(shift[p[i] & 0xFF], m - 1 - i);
+        // Last m-1 characters seen (to catch matches straddling two segments)
+        char[] tail = new char[Math.max(0, m - 1)];
+        int tailLen = 0;
+        // Earliest start for the next match (keeps matches non-overlapping)
+        int minStart = 0;
+        // Reused segment handing out the document's own arrays
+        Segment seg = new Segment();
+        seg.setPartialReturn(true);
+        int pos = 0;
+        int length = doc.getLength();
+        while (pos < length && !cancelled.getAsBoolean()) {
+            // Read the next chunk under the document's read lock
+            int at = pos;
+            BadLocationException[] failure = new BadLocationException[1];
+            doc.render(() -> {
+                try { doc.getText(at, Math.min(CHUNK, doc.getLength() - at), seg); } catch (BadLocationException ex) { failure[0] = ex; }
+            });
+            if (failure[0] != null) throw failure[0];
+            if (seg.count == 0) break;
+            char[] a = seg.array;
+            int base = seg.offset;
+            // Matches that start in the tail and end in this segment
+            if (tailLen > 0) {
+                int head = Math.min(m - 1, seg.count);
+                char[] stitched = new char[tailLen + head];
+                System.arraycopy(tail, 0, stitched, 0, tailLen);
+                System.arraycopy(a, base, stitched, tailLen, head);
+                for (int i = 0; i < tailLen && i + m <= stitched.length; i++) {
+                    int start = pos - tailLen + i;
+                    if (start < minStart || !regionMatches(stitched, i, p, matchCase)) continue;
+                    sink.match(start, start + m, null);
+                    minStart = start + m;
+                }
+            }
+            // Matches inside this segment
+            int s = Math.max(base, base + minStart - pos);
+            int last = base + seg.count - m;
+            while (s <= last) {
+                int j = m - 1;
+                while (j >= 0 && fold(a[s + j], matchCase) == p[j]) j--;
+                if (j < 0) {
+                    int start = pos + s - base;
+                    sink.match(start, start + m, null);
+                    minStart = start + m;
+                    s += m;
+                } else {
+                    s += shift[fold(a[s + m - 1], matchCase) & 0xFF];
+                }
+            }
+            // Keep the last m-1 characters for the next boundary
+            if (tail.length > 0) {
+                int keep = Math.min(tail.length, tailLen + seg.count);
+                int fromTail = keep - Math.min(keep, seg.count);
+                System.arraycopy(tail, tailLen - fromTail, tail, 0, fromTail);
+                System.arraycopy(a, base + seg.count - (keep - fromTail), tail, fromTail, keep - fromTail);
+                tailLen = keep;
+            }
+            pos += seg.count;
+        }
+    }
+
+    // Method to match a regex line by line (each line is read as one segment)
+    static void findRegex(Document doc, Pattern pattern, String replacement, MatchSink sink,
+                          java.util.function.BooleanSupplier cancelled) throws BadLocationException {
+        Element root = doc.getDefaultRootElement();
+        Segment seg = new Segment();
+        StringBuilder expanded = new StringBuilder();
+        for (int line = 0; line < root.getElementCount() && !cancelled.getAsBoolean(); line++) {
+            // Line range without its newline
+            Element el = root.getElement(line);
+            int start = el.getStartOffset();
+            int end = Math.min(el.getEndOffset() - 1, doc.getLength());
+            if (end <= start) continue;
+            // Read the line under the read lock (only copied if it spans the gap)
+            BadLocationException[] failure = new BadLocationException[1];
+            doc.render(() -> {
+                try { doc.getText(start, end - start, seg); } catch (BadLocationException ex) { failure[0] = ex; }
+            });
+            if (failure[0] != null) throw failure[0];
+            Matcher matcher = pattern.matcher(seg);
+            int prevEnd = 0;
+            while (matcher.find()) {
+                // Skip empty matches (they can't be highlighted or replaced sensibly)
+                if (matcher.end() == matcher.start()) continue;
+                String repl = null;
+                if (replacement != null) {
+                    // Expand $1 etc. for this match only
+                    expanded.setLength(0);
+                    matcher.appendReplacement(expanded, replacement);
+                    repl = expanded.substring(matcher.start() - prevEnd);
+                    prevEnd = matcher.end();
+                }
+                sink.match(start + matcher.start(), start + matcher.end(), repl);
+            }
+        }
+    }
+
+    // Method to compare a folded pattern at position i of a buffer
+    private static boolean regionMatches(char[] a, int i, char[] p, boolean matchCase) {
+        for (int j = 0; j < p.length; j++) if (fold(a[i + j], matchCase) != p[j]) return false;
+        return true;
+    }
+
+    // Method to fold a character for case-insensitive search
+    private static char fold(char c, boolean matchCase) {
+        return matchCase ? c : Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
+
+// --- Find/replace bar (background search, viewport-limited highlights) ---
+class FindReplaceBar extends JPanel {
+    // Serialization version (JPanel is Serializable)
+    private static final long serialVersionUID = 1L;
+    // Pause in typing before a search restarts
+    static final int DELAY_MS = 150;
+    // Matches delivered to the EDT per batch
+    private static final int BATCH = 512;
+    // Color of highlighted matches
+    private static final Color MATCH_COLOR = new Color(255, 200, 0, 90);
+
+    // Editor being searched
+    private final JTextArea area;
+    // Sink for status messages
+    private final java.util.function.Consumer<String> status;
+    // Search text
+    private final JTextField findField = new JTextField(18);
+    // Replacement text
+    private final JTextField replaceField = new JTextField(14);
+    // Regex toggle
+    private final JCheckBox regexBox = new JCheckBox("Regex");
+    // Case toggle
+    private final JCheckBox caseBox = new JCheckBox("Case");
+    // Match count display
+    private final JLabel countLabel = new JLabel(" ");
+    // Row holding the replace controls
+    private final JPanel replaceRow = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
+    // Debounce timer for searches
+    private final javax.swing.Timer timer;
+    // Single background thread running searches and replace-all scans
+    private final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "find-replace");
+        t.setDaemon(true);
+        return t;
+    });
+    // Generation of the latest search or edit (older results are dropped)
+    private final java.util.concurrent.atomic.AtomicLong generation = new java.util.concurrent.atomic.AtomicLong();
+    // Match starts in document order
+    private int[] starts = new int[64];
+    // Match ends in document order
+    private int[] ends = new int[64];
+    // Number of matches found so far
+    private int count;
+    // Whether the current search finished
+    private boolean complete;
+    // Highlight tags currently painted (visible matches only)
+    private final List<Object> tags = new ArrayList<>();
+    // Painter for match highlights
+    private final Highlighter.HighlightPainter painter = new DefaultHighlighter.DefaultHighlightPainter(MATCH_COLOR);
+    // Whether the bar itself is applying edits (its own edits don't restart the search)
+    private boolean applying;
+
+    // Constructor to build the bar for an editor inside a scroll pane
+    FindReplaceBar(JTextArea area, JScrollPane scroll, java.util.function.Consumer<String> status) {
+        super(new BorderLayout());
+        this.area = area;
+        this.status = status;
+        setBackground(new Color(20, 20, 20));
+        setBorder(new EmptyBorder(4, 6, 4, 6));
+        // Find row
+        JPanel findRow = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
+        findRow.setOpaque(false);
+        findRow.add(label("Find:"));
+        findRow.add(findField);
+        findRow.add(regexBox);
+        findRow.add(caseBox);
+        findRow.add(button("Prev", e -> step(false)));
+        findRow.add(button("Next", e -> step(true)));
+        countLabel.setForeground(new Color(200, 150, 255));
+        findRow.add(countLabel);
+        findRow.add(button("x", e -> close()));
+        add(findRow, BorderLayout.NORTH);
+        // Replace row
+        replaceRow.setOpaque(false);
+        replaceRow.add(label("Replace:"));
+        replaceRow.add(replaceField);
+        replaceRow.add(button("Replace", e -> replaceCurrent()));
+        replaceRow.add(button("All", e -> replaceAll()));
+        add(replaceRow, BorderLayout.SOUTH);
+        for (JCheckBox box : new JCheckBox[] { regexBox, caseBox }) {
+            box.setOpaque(false);
+            box.setForeground(new Color(220, 220, 220));
+            box.addActionListener(e -> restart());
+        }
+        // Restart the search after a pause in typing
+        timer = new javax.swing.Timer(DELAY_MS, e -> startSearch());
+        timer.setRepeats(false);
+        findField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { restart(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { restart(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {}
+        });
+        // Editor edits make the match offsets stale
+        javax.swing.event.DocumentListener edits = new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { edited(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { edited(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {}
+        };
+        area.getDocument().addDocumentListener(edits);
+        // So does switching the editor to another document
+        area.addPropertyChangeListener("document", e -> {
+            ((Document) e.getOldValue()).removeDocumentListener(edits);
+            ((Document) e.getNewValue()).addDocumentListener(edits);
+            edited();
+        });
+        // Only the visible matches are highlighted, so repaint them on scroll
+        scroll.getViewport().addChangeListener(e -> { if (isVisible()) highlightVisible(); });
+        // Enter finds next, Shift+Enter previous, Escape closes
+        findField.addActionListener(e -> step(true));
+        bind(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, KeyEvent.SHIFT_DOWN_MASK), "findPrev", () -> step(false));
+        bind(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "closeFind", this::close);
+        setVisible(false);
+    }
+
+    // Method to show the bar (with or without the replace row)
+    void open(boolean replace) {
+        replaceRow.setVisible(replace);
+        setVisible(true);
+        // Seed the search with a single-line selection
+        String sel = area.getSelectedText();
+        if (sel != null && !sel.isEmpty() && sel.indexOf('\n') < 0) findField.setText(sel);
+        (replace && !findField.getText().isEmpty() ? replaceField : findField).requestFocusInWindow();
+        findField.selectAll();
+        restart();
+        revalidate();
+    }
+
+    // Method to hide the bar and clear its highlights
+    void close() {
+        setVisible(false);
+        generation.incrementAndGet();
+        timer.stop();
+        clearMatches();
+        area.requestFocusInWindow();
+        revalidate();
+    }
+
+    // Method to select the next or previous match from the caret
+    void step(boolean forward) {
+        if (!isVisible()) { open(false); return; }
+        if (count == 0) { status.accept(complete ? "No matches" : "Searching..."); return; }
+        int caret = forward ? area.getSelectionEnd() : area.getSelectionStart();
+        // First match at/after the caret (or last before it), wrapping around
+        int i = lowerBound(caret);
+        if (!forward) i = i - 1;
+        if (i >= count) i = 0;
+        if (i < 0) i = count - 1;
+        select(i);
+    }
+
+    // Method to restart the search after the debounce pause
+    private void restart() {
+        generation.incrementAndGet();
+        timer.restart();
+    }
+
+    // Method to react to an edit of the searched document
+    private void edited() {
+        if (!isVisible() || applying) return;
+        clearMatches();
+        restart();
+    }
+
+    // Method to start a background search streaming matches to the EDT
+    private void startSearch() {
+        clearMatches();
+        String pattern = findField.getText();
+        if (!isVisible() || pattern.isEmpty()) { countLabel.setText(" "); return; }
+        boolean regex = regexBox.isSelected();
+        boolean matchCase = caseBox.isSelected();
+        long gen = generation.incrementAndGet();
+        countLabel.setText("...");
+        Document doc = area.getDocument();
+        executor.submit(() -> {
+            int[] batch = new int[BATCH * 2];
+            int[] n = new int[1];
+            String error = null;
+            try {
+                DocumentSearch.find(doc, pattern, regex, matchCase, null, (s, e, r) -> {
+                    batch[n[0]++] = s;
+                    batch[n[0]++] = e;
+                    if (n[0] == batch.length) { deliver(gen, Arrays.copyOf(batch, n[0]), false); n[0] = 0; }
+                }, () -> generation.get() != gen);
+            } catch (PatternSyntaxException ex) {
+                error = "Bad regex: " + ex.getDescription();
+            } catch (BadLocationException ex) {
+                // Document changed underneath; a newer search will follow
+                return;
+            }
+            if (error != null) {
+                String msg = error;
+                SwingUtilities.invokeLater(() -> { if (generation.get() == gen) countLabel.setText(msg); });
+            } else {
+                deliver(gen, Arrays.copyOf(batch, n[0]), true);
+            }
+        });
+    }
+
+    // Method to hand a batch of matches to the EDT
+    private void deliver(long gen, int[] batch, boolean last) {
+        SwingUtilities.invokeLater(() -> {
+            if (generation.get() != gen) return;
+            for (int i = 0; i < batch.length; i += 2) addMatch(batch[i], batch[i + 1]);
+            complete = last;
+            countLabel.setText(count + (last ? "" : "+") + (count == 1 ? " match" : " matches"));
+            highlightVisible();
+        });
+    }
+
+    // Method to replace the selected match and move to the next one
+    private void replaceCurrent() {
+        int s = area.getSelectionStart();
+        int e = area.getSelectionEnd();
+        int i = lowerBound(s);
+        if (i >= count || starts[i] != s || ends[i] != e) { step(true); return; }
+        // Expand regex groups against the selected text alone
+        String replacement = replaceField.getText();
+        if (regexBox.isSelected()) {
+            try {
+                Pattern p = Pattern.compile(findField.getText(), caseBox.isSelected() ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+                replacement = p.matcher(area.getSelectedText()).replaceFirst(replacement);
+            } catch (RuntimeException ex) {
+                status.accept("Replace failed: " + ex.getMessage());
+                return;
+            }
+        }
+        area.replaceSelection(replacement);
+        // The edit restarts the search; select the next match once it streams in
+        area.setCaretPosition(s + replacement.length());
+    }
+
+    // Method to scan in the background and apply all replacements as one compound edit
+    private void replaceAll() {
+        String pattern = findField.getText();
+        if (pattern.isEmpty()) return;
+        boolean regex = regexBox.isSelected();
+        boolean matchCase = caseBox.isSelected();
+        String replacement = replaceField.getText();
+        long gen = generation.incrementAndGet();
+        timer.stop();
+        AbstractDocument doc = (AbstractDocument) area.getDocument();
+        countLabel.setText("Replacing...");
+        executor.submit(() -> {
+            // Collect every match and its expansion off the EDT
+            int[][] ranges = { new int[256] };
+            List<String> expansions = new ArrayList<>();
+            int[] n = new int[1];
+            try {
+                DocumentSearch.find(doc, pattern, regex, matchCase, regex ? replacement : null, (s, e, r) -> {
+                    if (n[0] + 2 > ranges[0].length) ranges[0] = Arrays.copyOf(ranges[0], ranges[0].length * 2);
+                    ranges[0][n[0]++] = s;
+                    ranges[0][n[0]++] = e;
+                    if (regex) expansions.add(r);
+                }, () -> generation.get() != gen);
+            } catch (PatternSyntaxException | BadLocationException ex) {
+                SwingUtilities.invokeLater(() -> { if (generation.get() == gen) countLabel.setText("Replace failed"); });
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                // Abort if the document was edited while scanning
+                if (generation.get() != gen) { status.accept("Replace all cancelled (document changed)"); return; }
+                int replaced = n[0] / 2;
+                // All replacements form one undo step
+                UndoHistory history = UndoHistory.of(doc);
+                if (history != null) history.beginGroup();
+                applying = true;
+                try {
+                    // Back to front so earlier offsets stay valid
+                    for (int k = replaced - 1; k >= 0; k--) {
+                        int s = ranges[0][2 * k];
+                        doc.replace(s, ranges[0][2 * k + 1] - s, regex ? expansions.get(k) : replacement, null);
+                    }
+                } catch (BadLocationException ex) {
+                    status.accept("Replace failed: " + ex.getMessage());
+                } finally {
+                    applying = false;
+                    if (history != null) history.endGroup();
+                }
+                status.accept("Replaced " + replaced + (replaced == 1 ? " match" : " matches"));
+                restart();
+            });
+        });
+    }
+
+    // Method to highlight only the matches inside the viewport
+    private void highlightVisible() {
+        Highlighter h = area.getHighlighter();
+        for (Object tag : tags) h.removeHighlight(tag);
+        tags.clear();
+        if (count == 0) return;
+        Rectangle view = area.getVisibleRect();
+        int from = area.viewToModel2D(new Point(view.x, view.y));
+        int to = area.viewToModel2D(new Point(view.x + view.width, view.y + view.height));
+        int length = area.getDocument().getLength();
+        for (int i = lowerBound(Math.max(0, from - 1)); i < count && starts[i] <= to; i++) {
+            if (ends[i] > length) break;
+            try { tags.add(h.addHighlight(starts[i], ends[i], painter)); } catch (BadLocationException ex) { break; }
+        }
+    }
+
+    // Method to select match i and scroll it into view
+    private void select(int i) {
+        area.select(starts[i], ends[i]);
+        try {
+            Rectangle r = area.modelToView2D(starts[i]).getBounds();
+            area.scrollRectToVisible(r);
+        } catch (BadLocationException ex) {
+            // Stale match; the running search will replace it
+        }
+        countLabel.setText((i + 1) + " of " + count + (complete ? "" : "+"));
+    }
+
+    // Method to append a match in document order
+    private void addMatch(int s, int e) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = s;
+        ends[count++] = e;
+    }
+
+    // Method to drop all matches and highlights
+    private void clearMatches() {
+        count = 0;
+        complete = false;
+        Highlighter h = area.getHighlighter();
+        for (Object tag : tags) h.removeHighlight(tag);
+        tags.clear();
+    }
+
+    // Method to find the first match starting at or after an offset
+    private int lowerBound(int offset) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < offset) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // Method to bind a key while focus is inside the bar
+    private void bind(KeyStroke key, String name, Runnable action) {
+        getInputMap(WHEN_ANCESTOR_OF_FOCUSED_COMPONENT).put(key, name);
+        getActionMap().put(name, new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) { action.run(); }
+        });
+    }
+
+    // Method to create a themed label
+    private static JLabel label(String text) {
+        JLabel l = new JLabel(text);
+        l.setForeground(new Color(200, 150, 255));
+        return l;
+    }
+
+    // Method to create a small bar button
+    private static JButton button(String text, java.awt.event.ActionListener action) {
+        JButton b = new JButton(text);
+        b.setMargin(new Insets(2, 6, 2, 6));
+        b.addActionListener(action);
+        return b;
+    }
+}
+
+// --- Memory-bounded undo/redo history of compact edit deltas ---
+class UndoHistory {
+    // Longest pause between keystrokes that still merge into one entry
+    static final long MERGE_MS = 1000;
+    // Rough fixed cost of an entry (object headers and arrays)
+    private static final int ENTRY_OVERHEAD = 96;
+
+    // One undo step: a run of deltas (offset, removed text, inserted text) in application order
+    private static final class Entry {
+        // Number of deltas
+        int n;
+        // Offsets of the deltas
+        int[] offsets = new int[1];
+        // Removed-text lengths
+        int[] removedLen = new int[1];
+        // Inserted-text lengths
+        int[] insertedLen = new int[1];
+        // Removed and inserted text of each delta, back to back
+        final StringBuilder text = new StringBuilder();
+        // Time of the last delta (for keystroke merging)
+        long lastTime;
+        // Caret before the first delta
+        int caretBefore;
+
+        // Method to append a delta
+        void add(int offset, String removed, String inserted) {
+            if (n == offsets.length) {
+                offsets = Arrays.copyOf(offsets, n * 2);
+                removedLen = Arrays.copyOf(removedLen, n * 2);
+                insertedLen = Arrays.copyOf(insertedLen, n * 2);
+            }
+            offsets[n] = offset;
+            removedLen[n] = removed.length();
+            insertedLen[n++] = inserted.length();
+            text.append(removed).append(inserted);
+        }
+
+        // Method to estimate retained bytes
+        long bytes() {
+            return ENTRY_OVERHEAD + 2L * text.length() + 12L * offsets.length;
+        }
+    }
+
+    // Document being tracked (follows the editor when it switches documents)
+    private AbstractDocument doc;
+    // Editor (for caret restore)
+    private final JTextArea area;
+    // Memory budget for undo plus redo history, in bytes
+    private final long budget;
+    // Undo entries, oldest first
+    private final ArrayDeque<Entry> undo = new ArrayDeque<>();
+    // Redo entries, most recently undone last
+    private final ArrayDeque<Entry> redo = new ArrayDeque<>();
+    // Estimated bytes held by both stacks
+    private long bytes;
+    // Whether edits are currently being recorded
+    private boolean recording = true;
+    // Open group depth (deltas inside a group form one entry)
+    private int groupDepth;
+    // Entry collecting the current group
+    private Entry group;
+    // Entry that keystrokes may still merge into (null after undo/redo/group)
+    private Entry open;
+    // Whether history was dropped to stay under the budget
+    private boolean truncated;
+    // Listener told about every history change (status bar)
+    private Runnable listener = () -> {};
+
+    // Constructor to start tracking an editor's document
+    UndoHistory(JTextArea area, long budget) {
+        this.area = area;
+        this.budget = budget;
+        attach((AbstractDocument) area.getDocument());
+        // A swapped-in document (switching files) starts a fresh history
+        area.addPropertyChangeListener("document", e -> {
+            AbstractDocument old = (AbstractDocument) e.getOldValue();
+            old.setDocumentFilter(null);
+            old.putProperty(UndoHistory.class, null);
+            attach((AbstractDocument) e.getNewValue());
+            reset(() -> {});
+        });
+    }
+
+    // Method to start recording a document's edits
+    private void attach(AbstractDocument target) {
+        doc = target;
+        // Record every edit as a delta before it is applied (the removed text is still readable then)
+        doc.setDocumentFilter(new DocumentFilter() {
+            @Override public void insertString(FilterBypass fb, int offset, String s, AttributeSet a) throws BadLocationException {
+                record(offset, "", s);
+                fb.insertString(offset, s, a);
+            }
+            @Override public void remove(FilterBypass fb, int offset, int length) throws BadLocationException {
+                record(offset, target.getText(offset, length), "");
+                fb.remove(offset, length);
+            }
+            @Override public void replace(FilterBypass fb, int offset, int length, String s, AttributeSet a) throws BadLocationException {
+                record(offset, target.getText(offset, length), s == null ? "" : s);
+                fb.replace(offset, length, s, a);
+            }
+        });
+        // Let other components find the history through the document
+        doc.putProperty(UndoHistory.class, this);
+    }
+
+    // Method to get the history tracking a document (null if none)
+    static UndoHistory of(Document doc) {
+        return (UndoHistory) doc.getProperty(UndoHistory.class);
+    }
+
+    // Method to set the change listener
+    void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    // Method to start a group of edits that undo as one step
+    void beginGroup() {
+        if (groupDepth++ == 0) group = null;
+    }
+
+    // Method to end a group of edits
+    void endGroup() {
+        if (--groupDepth == 0) {
+            group = null;
+            open = null;
+            trim();
+            listener.run();
+        }
+    }
+
+    // Method to run a load (e.g. opening a file) without recording it, then forget all history
+    void reset(Runnable load) {
+        recording = false;
+        try { load.run(); } finally { recording = true; }
+        undo.clear();
+        redo.clear();
+        open = null;
+        bytes = 0;
+        truncated = false;
+        listener.run();
+    }
+
+    // Method to undo the latest entry
+    boolean undo() {
+        Entry e = undo.pollLast();
+        if (e == null) return false;
+        open = null;
+        recording = false;
+        try {
+            // Reverse order: take out what was inserted, put back what was removed
+            int pos = e.text.length();
+            for (int i = e.n - 1; i >= 0; i--) {
+                int insStart = pos - e.insertedLen[i];
+                int remStart = insStart - e.removedLen[i];
+                doc.replace(e.offsets[i], e.insertedLen[i], e.text.substring(remStart, insStart), null);
+                pos = remStart;
+            }
+            area.setCaretPosition(Math.min(e.caretBefore, doc.getLength()));
+        } catch (BadLocationException ex) {
+            // History no longer matches the document; drop it
+            reset(() -> {});
+            return false;
+        } finally {
+            recording = true;
+        }
+        redo.addLast(e);
+        listener.run();
+        return true;
+    }
+
+    // Method to redo the latest undone entry
+    boolean redo() {
+        Entry e = redo.pollLast();
+        if (e == null) return false;
+        open = null;
+        recording = false;
+        try {
+            // Forward order: take out what was removed, put back what was inserted
+            int pos = 0;
+            int caret = e.caretBefore;
+            for (int i = 0; i < e.n; i++) {
+                int insStart = pos + e.removedLen[i];
+                doc.replace(e.offsets[i], e.removedLen[i], e.text.substring(insStart, insStart + e.insertedLen[i]), null);
+                pos = insStart + e.insertedLen[i];
+                caret = e.offsets[i] + e.insertedLen[i];
+            }
+            area.setCaretPosition(Math.min(caret, doc.getLength()));
+        } catch (BadLocationException ex) {
+            reset(() -> {});
+            return false;
+        } finally {
+            recording = true;
+        }
+        undo.addLast(e);
+        listener.run();
+        return true;
+    }
+
+    // Method to check for undoable entries
+    boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    // Method to check for redoable entries
+    boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    // Method to describe the history for the status bar
+    String summary() {
+        return String.format("Undo %d/%d  %s of %s%s", undo.size(), redo.size(), size(bytes), size(budget),
+                truncated ? " (oldest dropped)" : "");
+    }
+
+    // Method to get the estimated retained bytes
+    long bytes() {
+        return bytes;
+    }
+
+    // Method to record a delta about to be applied
+    private void record(int offset, String removed, String inserted) {
+        if (!recording || (removed.isEmpty() && inserted.isEmpty())) return;
+        long now = System.currentTimeMillis();
+        // Any new edit invalidates redo
+        for (Entry e : redo) bytes -= e.bytes();
+        redo.clear();
+        Entry target;
+        if (groupDepth > 0 && group != null) {
+            // Inside a group: everything goes into one entry
+            target = group;
+            bytes -= target.bytes();
+            target.add(offset, removed, inserted);
+        } else if (groupDepth == 0 && (target = open) != null && merge(target, offset, removed, inserted, now)) {
+            // Keystroke run merged into the last entry
+        } else {
+            target = new Entry();
+            target.caretBefore = area.getCaretPosition();
+            target.add(offset, removed, inserted);
+            undo.addLast(target);
+            if (groupDepth > 0) group = target; else open = target;
+            bytes += target.bytes();
+            target.lastTime = now;
+            if (groupDepth == 0) trim();
+            listener.run();
+            return;
+        }
+        bytes += target.bytes();
+        target.lastTime = now;
+        if (groupDepth == 0) {
+            trim();
+            listener.run();
+        }
+    }
+
+    // Method to merge a single-character keystroke into the last entry's last delta
+    private boolean merge(Entry e, int offset, String removed, String inserted, long now) {
+        if (e.n != 1 || now - e.lastTime > MERGE_MS) return false;
+        int last = e.n - 1;
+        int at = e.offsets[last];
+        if (removed.isEmpty() && inserted.length() == 1 && inserted.charAt(0) != '\n'
+                && e.removedLen[last] == 0 && offset == at + e.insertedLen[last]) {
+            // Typing: extend the inserted run
+            bytes -= e.bytes();
+            e.text.append(inserted);
+            e.insertedLen[last]++;
+            return true;
+        }
+        if (inserted.isEmpty() && removed.length() == 1 && removed.charAt(0) != '\n' && e.insertedLen[last] == 0) {
+            if (offset + 1 == at) {
+                // Backspace: prepend to the removed run
+                bytes -= e.bytes();
+                e.text.insert(e.text.length() - e.removedLen[last], removed);
+                e.removedLen[last]++;
+                e.offsets[last] = offset;
+                return true;
+            }
+            if (offset == at) {
+                // Delete: append to the removed run
+                bytes -= e.bytes();
+                e.text.append(removed);
+                e.removedLen[last]++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Method to drop the oldest history until under the budget
+    private void trim() {
+        while (bytes > budget && !undo.isEmpty()) {
+            if (undo.peekFirst() == open) open = null;
+            bytes -= undo.pollFirst().bytes();
+            truncated = true;
+        }
+        while (bytes > budget && !redo.isEmpty()) {
+            bytes -= redo.pollFirst().bytes();
+            truncated = true;
+        }
+        // Give back the slack of entries that shrank or grew in place
+        if (undo.isEmpty() && redo.isEmpty()) bytes = 0;
+    }
+
+    // Method to format a byte count
+    private static String size(long b) {
+        if (b < 1024) return b + " B";
+        if (b < 1 << 20) return String.format("%.1f KB", b / 1024.0);
+        return String.format("%.1f MB", b / (1024.0 * 1024));
+    }
+}
+
+// --- Bounded cache of per-file editor documents and their compiled programs (soft references) ---
+final class DocumentCache {
+    // Default number of files kept (-Dmini.doccache.size)
+    static final int DEFAULT_CAPACITY = 16;
+    // File stamp of a document whose save is still queued (trusted until the write lands)
+    private static final long PENDING = -1;
+
+    // One cached file: its document, the file stamp it matches and its compiled text
+    static final class Entry {
+        // Document shown in the editor for the file
+        final PlainDocument doc;
+        // File stamp when the document last matched the disk
+        volatile long modified, length;
+        // Edits made to the document (bumped on the EDT)
+        volatile long edits;
+        // Edit count at which the document last matched the disk
+        volatile long cleanAt;
+        // Lexed and parsed document text, or null until compiled (and after every edit)
+        volatile CompileResult compiled;
+
+        // Constructor to wrap a document
+        Entry(PlainDocument doc) {
+            this.doc = doc;
+        }
+
+        // Method to check whether the document is unedited since it was loaded or saved
+        boolean clean() {
+            return edits == cleanAt;
+        }
+    }
+
+    // Maximum number of files kept
+    private final int capacity;
+    // Maps a dropdown entry to its file (for the stamp)
+    private final java.util.function.Function<String, File> files;
+    // Reads a dropdown entry's text
+    private final java.util.function.Function<String, String> loader;
+    // Cache hit counters
+    private final MetricsRegistry metrics;
+    // Entries by dropdown name, least recently used first; the GC may clear any of them under memory pressure
+    private final LinkedHashMap<String, java.lang.ref.SoftReference<Entry>> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, java.lang.ref.SoftReference<Entry>> eldest) {
+            return size() > capacity;
+        }
+    };
+    // Single low-priority thread loading and compiling in the background
+    private final java.util.concurrent.ExecutorService prefetcher = java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "document-prefetch");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    // Constructor to cache the documents of a file list
+    DocumentCache(int capacity, java.util.function.Function<String, File> files, java.util.function.Function<String, String> loader,
+                  MetricsRegistry metrics) {
+        this.capacity = Math.max(1, capacity);
+        this.files = files;
+        this.loader = loader;
+        this.metrics = metrics;
+    }
+
+    // Method to get the cache entry of a document (null if it isn't cached)
+    static Entry of(Document doc) {
+        return (Entry) doc.getProperty(DocumentCache.class);
+    }
+
+    // Method to get a file's document: the cached one while unedited and unchanged on disk, else a fresh load (EDT)
+    Entry open(String key) {
+        Entry e = reusable(key);
+        if (e != null) {
+            metrics.cacheHit("document");
+        } else {
+            metrics.cacheMiss("document");
+            e = load(key);
+        }
+        // Compile in the background so the first run doesn't have to
+        Entry shown = e;
+        prefetcher.execute(() -> compile(shown));
+        return e;
+    }
+
+    // Method to load and compile a file in the background so switching to it is instant
+    void prefetch(String key) {
+        prefetcher.execute(() -> {
+            Entry e = reusable(key);
+            compile(e != null ? e : load(key));
+        });
+    }
+
+    // Method to get the compiled program of a document's current text (null if not compiled yet or edited since)
+    static CompileResult compiled(Document doc) {
+        Entry e = of(doc);
+        return e == null ? null : e.compiled;
+    }
+
+    // Method to adopt the editor's document as a file's cached copy when its save is queued (EDT)
+    void saved(String key, Document doc) {
+        if (!(doc instanceof PlainDocument)) return;
+        Entry e = of(doc);
+        if (e == null) e = attach((PlainDocument) doc);
+        // The document matches the file once the queued write lands
+        e.modified = PENDING;
+        e.length = PENDING;
+        e.cleanAt = e.edits;
+        synchronized (entries) {
+            // A document saved under a new name no longer stands for its old file
+            Entry adopted = e;
+            entries.values().removeIf(ref -> ref.get() == adopted);
+            entries.put(key, new java.lang.ref.SoftReference<>(e));
+        }
+        Entry shown = e;
+        prefetcher.execute(() -> compile(shown));
+    }
+
+    // Method to record a file's stamp after a queued write landed (EDT)
+    void written(String key) {
+        Entry e;
+        synchronized (entries) {
+            java.lang.ref.SoftReference<Entry> ref = entries.get(key);
+            e = ref == null ? null : ref.get();
+        }
+        if (e == null) return;
+        File file = files.apply(key);
+        e.modified = file.lastModified();
+        e.length = file.length();
+    }
+
+    // Method to forget a file (deleted, or its save failed)
+    void remove(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    // Method to find an entry that can be shown as is (null when missing, collected, edited or stale on disk)
+    private Entry reusable(String key) {
+        Entry e;
+        synchronized (entries) {
+            java.lang.ref.SoftReference<Entry> ref = entries.get(key);
+            e = ref == null ? null : ref.get();
+        }
+        if (e == null || !e.clean()) return null;
+        // Our own write is still on its way to the disk
+        if (e.modified == PENDING) return e;
+        File file = files.apply(key);
+        return file.lastModified() == e.modified && file.length() == e.length ? e : null;
+    }
+
+    // Method to read a file into a new document and cache it (any thread)
+    private Entry load(String key) {
+        // Stamp before reading, so a write during the read leaves the entry stale rather than wrong
+        File file = files.apply(key);
+        long modified = file.lastModified();
+        long length = file.length();
+        String text = loader.apply(key);
+        // Build the document off-screen (its line elements are computed here, not on the EDT at switch time)
+        PlainDocument doc = new PlainDocument();
+        try {
+            doc.insertString(0, text, null);
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        Entry e = attach(doc);
+        e.modified = modified;
+        e.length = length;
+        synchronized (entries) {
+            entries.put(key, new java.lang.ref.SoftReference<>(e));
+        }
+        return e;
+    }
+
+    // Method to start tracking a document's edits
+    private static Entry attach(PlainDocument doc) {
+        Entry e = new Entry(doc);
+        doc.addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent ev) { edited(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent ev) { edited(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent ev) {}
+            // Any edit makes the document differ from the file and the compiled program stale
+            private void edited() {
+                e.edits++;
+                e.compiled = null;
+            }
+        });
+        doc.putProperty(DocumentCache.class, e);
+        return e;
+    }
+
+    // Method to compile an entry's text unless it already is (background thread)
+    private static void compile(Entry e) {
+        if (e.compiled != null) return;
+        // Snapshot the text and its edit count under the document's read lock
+        String[] text = new String[1];
+        long[] edits = new long[1];
+        e.doc.render(() -> {
+            edits[0] = e.edits;
+            try { text[0] = e.doc.getText(0, e.doc.getLength()); } catch (BadLocationException ignored) {}
+        });
+        if (text[0] == null) return;
+        CompileResult result = MiniFrontEnd.compile(text[0]);
+        // Keep it only if nothing was typed meanwhile (edits need the write lock, so none can slip in here)
+        e.doc.render(() -> { if (e.edits == edits[0]) e.compiled = result; });
+    }
+}
+
+// --- Inverted identifier index over the saved programs ---
+class IdentifierIndex {
+    // Identifier is assigned (x = ...)
+    static final byte ASSIGN = 0;
+    // Identifier is read in an expression
+    static final byte READ = 1;
+    // Identifier is read from stdin (cin >> x)
+    static final byte CIN = 2;
+    // Index file header "MIX1"
+    static final int MAGIC = 0x4D495831;
+    // Bumped whenever the layout changes
+    static final int VERSION = 1;
+    // Index file name inside the saved directory
+    static final String FILE_NAME = ".identifier-index";
+    // Files lexed per fork/join leaf
+    private static final int LEAF_FILES = 8;
+
+    // One identifier occurrence
+    static final class Usage {
+        // Saved file name
+        final String file;
+        // 1-based line
+        final int line;
+        // ASSIGN, READ or CIN
+        final byte role;
+
+        // Constructor to create a usage
+        Usage(String file, int line, byte role) {
+            this.file = file;
+            this.line = line;
+            this.role = role;
+        }
+
+        @Override public String toString() {
+            return file + ":" + line + "  " + roleName(role);
+        }
+    }
+
+    // Usages within one file (forward index entry)
+    static final class FileUsages {
+        // Saved file name
+        final String name;
+        // Modification time when indexed
+        final long modified;
+        // File length when indexed
+        final long length;
+        // Distinct identifiers in the file
+        final String[] symbols;
+        // Symbol index of each usage
+        final int[] symbol;
+        // Line of each usage
+        final int[] lines;
+        // Role of each usage
+        final byte[] roles;
+
+        // Constructor to create a file's entry
+        FileUsages(String name, long modified, long length, String[] symbols, int[] symbol, int[] lines, byte[] roles) {
+            this.name = name;
+            this.modified = modified;
+            this.length = length;
+            this.symbols = symbols;
+            this.symbol = symbol;
+            this.lines = lines;
+            this.roles = roles;
+        }
+    }
+
+    // Directory being indexed
+    private final File dir;
+    // Forward index: file name -> usages
+    private final Map<String, FileUsages> files = new HashMap<>();
+    // Inverted index: identifier -> files using it
+    private final Map<String, Set<String>> postings = new HashMap<>();
+    // Single background thread for updates and persistence
+    private final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "identifier-index");
+        t.setDaemon(true);
+        return t;
+    });
+    // Whether the initial load/build finished
+    private volatile boolean ready;
+
+    // Constructor to index a directory of saved programs
+    IdentifierIndex(File dir) {
+        this.dir = dir;
+    }
+
+    // Method to get a role's display name
+    static String roleName(byte role) {
+        return role == ASSIGN ? "assign" : role == CIN ? "cin" : "read";
+    }
+
+    // Method to check whether the initial build finished
+    boolean isReady() {
+        return ready;
+    }
+
+    // Method to load the persisted index, re-index changed files in parallel and persist (background)
+    java.util.concurrent.Future<?> loadOrBuildAsync() {
+        return executor.submit(() -> {
+            try {
+                loadOrBuild();
+            } catch (IOException ex) {
+                // Queries stay empty until the next save updates the index
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    // Method to re-index one saved file after it was written (background)
+    void updateAsync(File file, String text) {
+        long modified = file.lastModified();
+        long length = file.length();
+        executor.execute(() -> {
+            put(scan(file.getName(), modified, length, text));
+            persistQuietly();
+        });
+    }
+
+    // Method to drop a deleted file from the index (background)
+    void removeAsync(String name) {
+        executor.execute(() -> {
+            synchronized (this) { unlink(name); }
+            persistQuietly();
+        });
+    }
+
+    // Method to find every usage of an identifier, ordered by file and line
+    synchronized List<Usage> usages(String identifier) {
+        List<Usage> out = new ArrayList<>();
+        Set<String> names = postings.get(identifier);
+        if (names == null) return out;
+        List<String> sorted = new ArrayList<>(names);
+        Collections.sort(sorted);
+        for (String name : sorted) {
+            FileUsages f = files.get(name);
+            int sym = Arrays.asList(f.symbols).indexOf(identifier);
+            for (int i = 0; i < f.symbol.length; i++) {
+                if (f.symbol[i] == sym) out.add(new Usage(name, f.lines[i], f.roles[i]));
+            }
+        }
+        return out;
+    }
+
+    // Method to count indexed files
+    synchronized int fileCount() {
+        return files.size();
+    }
+
+    // Method to count distinct identifiers
+    synchronized int identifierCount() {
+        return postings.size();
+    }
+
+    // Method to load the on-disk index and bring it up to date with the directory
+    void loadOrBuild() throws IOException {
+        Map<String, FileUsages> loaded = load(new File(dir, FILE_NAME));
+        File[] current = dir.listFiles((d, name) -> name.endsWith(".cpp"));
+        if (current == null) current = new File[0];
+        // Keep entries whose file is unchanged; collect the rest for re-indexing
+        List<File> stale = new ArrayList<>();
+        Map<String, FileUsages> keep = new HashMap<>();
+        for (File f : current) {
+            FileUsages old = loaded.get(f.getName());
+            if (old != null && old.modified == f.lastModified() && old.length == f.length()) keep.put(f.getName(), old);
+            else stale.add(f);
+        }
+        // Lex changed and new files in parallel
+        List<FileUsages> fresh = java.util.concurrent.ForkJoinPool.commonPool()
+                .invoke(new BuildTask(stale.toArray(new File[0]), 0, stale.size()));
+        synchronized (this) {
+            files.clear();
+            postings.clear();
+            for (FileUsages f : keep.values()) link(f);
+            for (FileUsages f : fresh) link(f);
+        }
+        // Persist only if something changed
+        if (!stale.isEmpty() || keep.size() != loaded.size()) persist();
+        ready = true;
+    }
+
+    // Fork/join task lexing a range of files
+    private static final class BuildTask extends java.util.concurrent.RecursiveTask<List<FileUsages>> {
+        // Serialization version (ForkJoinTask is Serializable)
+        private static final long serialVersionUID = 1L;
+        // Files to index
+        private final File[] files;
+        // Range start
+        private final int from;
+        // Range end (exclusive)
+        private final int to;
+
+        // Constructor to cover files[from, to)
+        BuildTask(File[] files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override protected List<FileUsages> compute() {
+            if (to - from <= LEAF_FILES) {
+                List<FileUsages> out = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    File f = files[i];
+                    try {
+                        long modified = f.lastModified();
+                        long length = f.length();
+                        // Large files are scanned straight from a mapping
+                        out.add(scan(f.getName(), modified, length, SourceText.map(f)));
+                    } catch (IOException ex) {
+                        // Unreadable files are left out until saved again
+                    }
+                }
+                return out;
+            }
+            // Split the range and merge the halves in order
+            int mid = (from + to) >>> 1;
+            BuildTask left = new BuildTask(files, from, mid);
+            left.fork();
+            List<FileUsages> right = new BuildTask(files, mid, to).compute();
+            List<FileUsages> out = left.join();
+            out.addAll(right);
+            return out;
+        }
+    }
+
+    // Method to lex a program and classify each identifier occurrence
+    static FileUsages scan(String name, long modified, long length, CharSequence text) {
+        TokenBuffer tokens = MiniLexer.lex(text);
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> symbols = new ArrayList<>();
+        int n = 0;
+        int[] symbol = new int[16];
+        int[] lines = new int[16];
+        byte[] roles = new byte[16];
+        // Lines are counted incrementally between token starts
+        int line = 1;
+        int pos = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            int start = tokens.start(i);
+            for (; pos < start; pos++) if (text.charAt(pos) == '\n') line++;
+            // The "include" of a #include directive isn't a variable
+            if (tokens.kind(i) != TokenKind.IDENT || i > 0 && tokens.kind(i - 1) == TokenKind.CHAR && tokens.value(i - 1) == '#') continue;
+            // cin >> x reads input, x = ... assigns, anything else reads
+            byte role = i > 0 && tokens.kind(i - 1) == TokenKind.SHIFTIN ? CIN
+                    : i + 1 < tokens.size() && tokens.kind(i + 1) == TokenKind.ASSIGN ? ASSIGN : READ;
+            String id = text.subSequence(start, start + tokens.length(i)).toString();
+            Integer sym = ids.get(id);
+            if (sym == null) {
+                sym = symbols.size();
+                ids.put(id, sym);
+                symbols.add(id);
+            }
+            if (n == symbol.length) {
+                symbol = Arrays.copyOf(symbol, n * 2);
+                lines = Arrays.copyOf(lines, n * 2);
+                roles = Arrays.copyOf(roles, n * 2);
+            }
+            symbol[n] = sym;
+            lines[n] = line;
+            roles[n++] = role;
+        }
+        return new FileUsages(name, modified, length, symbols.toArray(new String[0]),
+                Arrays.copyOf(symbol, n), Arrays.copyOf(lines, n), Arrays.copyOf(roles, n));
+    }
+
+    // Method to replace a file's entry
+    private synchronized void put(FileUsages f) {
+        unlink(f.name);
+        link(f);
+    }
+
+    // Method to add a file's identifiers to the inverted index
+    private void link(FileUsages f) {
+        files.put(f.name, f);
+        for (String s : f.symbols) postings.computeIfAbsent(s, k -> new HashSet<>()).add(f.name);
+    }
+
+    // Method to remove a file's identifiers from the inverted index
+    private void unlink(String name) {
+        FileUsages old = files.remove(name);
+        if (old == null) return;
+        for (String s : old.symbols) {
+            Set<String> names = postings.get(s);
+            if (names != null && names.remove(name) && names.isEmpty()) postings.remove(s);
+        }
+    }
+
+    // Method to persist, logging failures
+    private void persistQuietly() {
+        try {
+            persist();
+        } catch (IOException ex) {
+            // Rebuilt from the files on the next start
+            ex.printStackTrace();
+        }
+    }
+
+    // Method to write the forward index atomically (the inverted index is rebuilt on load)
+    void persist() throws IOException {
+        List<FileUsages> snapshot;
+        synchronized (this) { snapshot = new ArrayList<>(files.values()); }
+        File target = new File(dir, FILE_NAME);
+        File temp = File.createTempFile("index", ".tmp", dir.getAbsoluteFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (FileUsages f : snapshot) {
+                out.writeUTF(f.name);
+                out.writeLong(f.modified);
+                out.writeLong(f.length);
+                out.writeInt(f.symbols.length);
+                for (String s : f.symbols) out.writeUTF(s);
+                out.writeInt(f.symbol.length);
+                for (int i = 0; i < f.symbol.length; i++) {
+                    out.writeInt(f.symbol[i]);
+                    out.writeInt(f.lines[i]);
+                    out.writeByte(f.roles[i]);
+                }
+            }
+        } catch (IOException ex) {
+            temp.delete();
+            throw ex;
+        }
+        java.nio.file.Files.move(temp.toPath(), target.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Method to read a persisted forward index (empty if missing, corrupt or from another version)
+    static Map<String, FileUsages> load(File file) {
+        Map<String, FileUsages> out = new HashMap<>();
+        if (!file.isFile()) return out;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return out;
+            int count = in.readInt();
+            for (int k = 0; k < count; k++) {
+                String name = in.readUTF();
+                long modified = in.readLong();
+                long length = in.readLong();
+                String[] symbols = new String[in.readInt()];
+                for (int i = 0; i < symbols.length; i++) symbols[i] = in.readUTF();
+                int n = in.readInt();
+                int[] symbol = new int[n];
+                int[] lines = new int[n];
+                byte[] roles = new byte[n];
+                for (int i = 0; i < n; i++) {
+                    symbol[i] = in.readInt();
+                    lines[i] = in.readInt();
+                    roles[i] = in.readByte();
+                }
+                out.put(name, new FileUsages(name, modified, length, symbols, symbol, lines, roles));
+            }
+        } catch (IOException ex) {
+            // Start over from the files
+            out.clear();
+        }
+        return out;
+    }
+}
+
+// --- Write-behind save queue: coalesced writes, temp file + atomic move, fsync policy, drained on exit ---
+final class SaveQueue {
+    // Writes a program's text to its file (e.g. through the content store), forcing it to disk when sync is set
+    interface Sink {
+        void write(File file, String text, boolean sync) throws IOException;
+    }
+
+    // Latest text waiting for a file and everyone waiting for it to land
+    private static final class Pending {
+        // Text to write (replaced by newer saves of the same file)
+        String text;
+        // Called on the EDT with null or the write's error
+        final List<java.util.function.Consumer<IOException>> done = new ArrayList<>();
+
+        // Constructor for a first save
+        Pending(String text) {
+            this.text = text;
+        }
+    }
+
+    // Writes the sink performs
+    private final Sink sink;
+    // Whether each write is forced to disk before it replaces the file (-Dmini.save.fsync=always|never)
+    private final boolean sync;
+    // Pause after the first save of a burst so the rest coalesce into it
+    private final long coalesceMs;
+    // Files waiting to be written, oldest first (guarded by this)
+    private final LinkedHashMap<File, Pending> pending = new LinkedHashMap<>();
+    // Batch being written right now (guarded by this)
+    private Map<File, Pending> writing = Collections.emptyMap();
+    // Whether someone is waiting for the queue to empty (skips the coalescing pause)
+    private boolean draining;
+
+    // Constructor to start the writer thread and drain the queue when the JVM exits
+    SaveQueue(Sink sink, boolean sync, long coalesceMs) {
+        this.sink = sink;
+        this.sync = sync;
+        this.coalesceMs = coalesceMs;
+        Thread writer = new Thread(this::writeLoop, "save-queue");
+        writer.setDaemon(true);
+        writer.start();
+        // The daemon writer keeps running while the hook waits for it
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> drain(10_000), "save-queue-drain"));
+    }
+
+    // Method to read the fsync policy from -Dmini.save.fsync (default always)
+    static boolean syncPolicy() {
+        String policy = System.getProperty("mini.save.fsync", "always");
+        if ("never".equalsIgnoreCase(policy)) return false;
+        if (!"always".equalsIgnoreCase(policy)) System.err.println("Unknown mini.save.fsync policy '" + policy + "', using always");
+        return true;
+    }
+
+    // Method to queue a save; a newer save of the same file replaces the text of one still waiting
+    synchronized void save(File file, String text, java.util.function.Consumer<IOException> done) {
+        Pending p = pending.get(file);
+        if (p == null) pending.put(file, p = new Pending(text));
+        else p.text = text;
+        if (done != null) p.done.add(done);
+        notifyAll();
+    }
+
+    // Method to get the newest text of a file that hasn't reached the disk yet (null if none)
+    synchronized String pendingText(File file) {
+        Pending p = pending.get(file);
+        if (p == null) p = writing.get(file);
+        return p == null ? null : p.text;
+    }
+
+    // Method to drop a waiting save and wait out one in progress (before deleting the file)
+    synchronized void cancel(File file) {
+        pending.remove(file);
+        boolean interrupted = false;
+        while (writing.containsKey(file)) {
+            try { wait(); } catch (InterruptedException ex) { interrupted = true; }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // Method to wait until every queued save has been written (false on timeout)
+    synchronized boolean drain(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        draining = true;
+        notifyAll();
+        try {
+            while (!pending.isEmpty() || !writing.isEmpty()) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) return false;
+                wait(left);
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            draining = false;
+        }
+    }
+
+    // Method to write batches of coalesced saves (writer thread)
+    private void writeLoop() {
+        while (true) {
+            Map<File, Pending> batch;
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty()) wait();
+                    // Let a burst of saves (autosave while typing) collapse into one write per file
+                    long until = System.currentTimeMillis() + coalesceMs;
+                    for (long left = coalesceMs; !draining && left > 0; left = until - System.currentTimeMillis()) wait(left);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+                writing = batch;
+            }
+            Set<File> dirs = new HashSet<>();
+            for (Map.Entry<File, Pending> e : batch.entrySet()) {
+                IOException error = null;
+                try {
+                    sink.write(e.getKey(), e.getValue().text, sync);
+                    dirs.add(e.getKey().getAbsoluteFile().getParentFile());
+                } catch (IOException ex) {
+                    error = ex;
+                } catch (RuntimeException ex) {
+                    error = new IOException(ex);
+                }
+                // Report on the EDT
+                IOException result = error;
+                for (java.util.function.Consumer<IOException> done : e.getValue().done) {
+                    SwingUtilities.invokeLater(() -> done.accept(result));
+                }
+            }
+            // One directory fsync per batch makes the renames durable
+            if (sync) for (File dir : dirs) syncDirectory(dir);
+            synchronized (this) {
+                writing = Collections.emptyMap();
+                notifyAll();
+            }
+        }
+    }
+
+    // Method to replace a file's content: write a temp file next to it, optionally force it, then move it over the file
+    static void replace(File file, String text, boolean sync) throws IOException {
+        File temp = File.createTempFile("." + file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        // Same encoding as FileWriter (and the FileReader that loads it)
+        try (FileOutputStream out = new FileOutputStream(temp); Writer writer = new OutputStreamWriter(out)) {
+            writer.write(text);
+            writer.flush();
+            if (sync) out.getFD().sync();
+        } catch (IOException ex) {
+            temp.delete();
+            throw ex;
+        }
+        // A crash leaves either the old or the new file, never a truncated one
+        try {
+            java.nio.file.Files.move(temp.toPath(), file.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                    java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            temp.delete();
+            throw ex;
+        }
+    }
+
+    // Method to flush a directory's entries to disk (not possible on every platform)
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // Windows can't open directories; the file data itself was already forced
+        }
+    }
+}
+
+// --- Content-addressed store for saved programs (enable with -Dmini.store=cas) ---
+class ContentStore {
+    // Directory of blobs named by content hash
+    static final String OBJECTS = ".objects";
+    // Append-only journal of name -> hash ("-" marks a removal), rewritten by compaction
+    static final String REFS = ".refs";
+
+    // Saved directory
+    private final File dir;
+    // Blob directory
+    private final File objects;
+    // Names and the hash each points to
+    private final Map<String, String> refs = new TreeMap<>();
+    // Whether visible files may share the blob's inode (POSIX: the blob is read-only and renames/unlinks ignore that)
+    private final boolean linkBlobs = java.nio.file.FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    // Constructor to open (or create) a store inside a saved directory
+    ContentStore(File dir) throws IOException {
+        this.dir = dir;
+        this.objects = new File(dir, OBJECTS);
+        objects.mkdirs();
+        File manifest = new File(dir, REFS);
+        if (manifest.isFile()) {
+            // Replay the journal (a torn last line has no valid hash and is skipped)
+            for (String line : java.nio.file.Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab == 1 && line.charAt(0) == '-') refs.remove(line.substring(2));
+                else if (tab == 64) refs.put(line.substring(tab + 1), line.substring(0, tab));
+            }
+        }
+    }
+
+    // Method to check whether the store is switched on
+    static boolean enabled() {
+        return "cas".equalsIgnoreCase(System.getProperty("mini.store"));
+    }
+
+    // Method to save a program: store the content once, then point the name at it
+    synchronized void write(String name, String text, boolean sync) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        String hash = hex(ProgramArtifact.hash(text));
+        File blob = blobFor(hash);
+        // Only new content costs a write; a blob changed behind the store's back no longer matches its name and is replaced
+        if (!blob.isFile() || !intact(blob, hash)) {
+            blob.getParentFile().mkdirs();
+            File temp = File.createTempFile("blob", ".tmp", blob.getParentFile());
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(bytes);
+                // The visible file links to this blob, so forcing it covers the file's data
+                if (sync) out.getFD().sync();
+            } catch (IOException ex) {
+                temp.delete();
+                throw ex;
+            }
+            // Read-only, so a tool writing a linked name in place fails instead of changing every name sharing the content
+            temp.setReadOnly();
+            move(temp, blob);
+        }
+        File target = new File(dir, name);
+        File link = new File(dir, "." + name + ".link.tmp");
+        link.delete();
+        if (!linkBlobs || !tryLink(link, blob)) {
+            // An independent, writable copy where a read-only shared inode can't be replaced or deleted normally
+            java.nio.file.Files.copy(blob.toPath(), link.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            link.setWritable(true);
+            if (sync) forceFile(link);
+        }
+        move(link, target);
+        // Unchanged content needs no journal entry
+        if (!hash.equals(refs.put(name, hash))) appendRef(hash, name);
+    }
+
+    // Method to forget a deleted name (its blob goes away at the next compaction)
+    synchronized void remove(String name) throws IOException {
+        if (refs.remove(name) != null) appendRef("-", name);
+    }
+
+    // Method to delete blobs no name points to; returns the bytes freed
+    synchronized long compact() throws IOException {
+        // Names whose file was deleted outside the IDE no longer count
+        refs.keySet().removeIf(name -> !new File(dir, name).isFile());
+        // Collapse the journal to one line per name
+        writeManifest();
+        Set<String> live = new HashSet<>(refs.values());
+        long freed = 0;
+        File[] shards = objects.listFiles(File::isDirectory);
+        if (shards == null) return 0;
+        for (File shard : shards) {
+            File[] blobs = shard.listFiles();
+            if (blobs == null) continue;
+            for (File blob : blobs) {
+                // Leftover temp files and unreferenced blobs
+                if (!live.contains(shard.getName() + blob.getName())) {
+                    long size = blob.length();
+                    // Blobs are read-only, which some platforms also apply to deletion
+                    boolean deleted = blob.delete() || (blob.setWritable(true) && blob.delete());
+                    if (deleted) freed += size;
+                }
+            }
+            shard.delete();
+        }
+        return freed;
+    }
+
+    // Method to count stored names
+    synchronized int nameCount() {
+        return refs.size();
+    }
+
+    // Method to count distinct stored contents
+    synchronized int blobCount() {
+        return new HashSet<>(refs.values()).size();
+    }
+
+    // Method to check that a blob still holds the content its name promises
+    private static boolean intact(File blob, String hash) {
+        try {
+            java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new java.security.DigestInputStream(new FileInputStream(blob), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            return hash.equals(hex(digest.digest()));
+        } catch (IOException | java.security.NoSuchAlgorithmException ex) {
+            // Unreadable counts as damaged
+            return false;
+        }
+    }
+
+    // Method to hard-link a name to a blob (false where the file system refuses)
+    private static boolean tryLink(File link, File blob) {
+        try {
+            java.nio.file.Files.createLink(link.toPath(), blob.toPath());
+            return true;
+        } catch (UnsupportedOperationException | IOException ex) {
+            return false;
+        }
+    }
+
+    // Method to force a copied file's data to disk
+    private static void forceFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    // Method to map a hash to its blob (two-character shard directories)
+    private File blobFor(String hash) {
+        return new File(new File(objects, hash.substring(0, 2)), hash.substring(2));
+    }
+
+    // Method to append one journal line (constant cost however many names exist)
+    private void appendRef(String hash, String name) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, REFS), true), StandardCharsets.UTF_8)) {
+            out.write(hash + "\t" + name + "\n");
+        }
+    }
+
+    // Method to rewrite the journal atomically
+    private void writeManifest() throws IOException {
+        File temp = File.createTempFile("refs", ".tmp", dir.getAbsoluteFile());
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, String> e : refs.entrySet()) out.write(e.getValue() + "\t" + e.getKey() + "\n");
+        } catch (IOException ex) {
+            temp.delete();
+            throw ex;
+        }
+        move(temp, new File(dir, REFS));
+    }
+
+    // Method to replace a file in one step
+    private static void move(File from, File to) throws IOException {
+        java.nio.file.Files.move(from.toPath(), to.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Method to format a hash as lowercase hex
+    private static String hex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+}
+
+// --- EDT stall watchdog (probes the event queue, captures the blocked stack) ---
+class EdtWatchdog {
+    // How often the event queue is probed
+    static final long PROBE_MS = 50;
+
+    // Stall threshold in nanoseconds
+    private final long thresholdNanos;
+    // Log file for stall reports (null logs to stderr only)
+    private final File logFile;
+    // Queue latency of every probe
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // Duration of every stall above the threshold
+    private final LatencyHistogram stalls = new LatencyHistogram();
+    // When the pending probe was posted (0 when none is pending)
+    private final java.util.concurrent.atomic.AtomicLong postedAt = new java.util.concurrent.atomic.AtomicLong();
+    // The event dispatch thread (seen by the first probe)
+    private volatile Thread edt;
+    // Stack captured during the current stall
+    private volatile StackTraceElement[] stallStack;
+    // Longest stall seen in nanoseconds
+    private volatile long worstNanos;
+    // Probing thread
+    private Thread thread;
+
+    // Constructor to watch the EDT with a stall threshold
+    EdtWatchdog(long thresholdMs, File logFile) {
+        this.thresholdNanos = thresholdMs * 1_000_000L;
+        this.logFile = logFile;
+    }
+
+    // Method to start probing on a daemon thread
+    synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(this::loop, "edt-watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Method to stop probing
+    synchronized void stop() {
+        if (thread != null) thread.interrupt();
+        thread = null;
+    }
+
+    // Method to get how long the EDT has currently been blocked (0 when responsive)
+    long currentLagNanos() {
+        long posted = postedAt.get();
+        return posted == 0 ? 0 : System.nanoTime() - posted;
+    }
+
+    // Method to get the number of stalls above the threshold
+    long stallCount() {
+        return stalls.count();
+    }
+
+    // Method to get the longest stall in milliseconds
+    long worstMillis() {
+        return worstNanos / 1_000_000;
+    }
+
+    // Method to summarize responsiveness and stalls
+    String report() {
+        return "EDT queue latency: " + latency.summary() + System.lineSeparator()
+                + "EDT stalls > " + thresholdNanos / 1_000_000 + " ms: " + stalls.summary() + System.lineSeparator()
+                + stalls.distribution();
+    }
+
+    // Method to probe the event queue until stopped
+    private void loop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            // Post a probe unless the previous one is still waiting
+            long now = System.nanoTime();
+            if (postedAt.compareAndSet(0, now)) {
+                SwingUtilities.invokeLater(() -> probed(now));
+            } else if (stallStack == null && now - postedAt.get() > thresholdNanos && edt != null) {
+                // Blocked past the threshold: capture what the EDT is doing right now
+                stallStack = edt.getStackTrace();
+            }
+            try {
+                Thread.sleep(PROBE_MS);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    // Method run on the EDT when a probe gets through
+    private void probed(long posted) {
+        edt = Thread.currentThread();
+        long waited = System.nanoTime() - posted;
+        latency.record(waited);
+        StackTraceElement[] stack = stallStack;
+        stallStack = null;
+        postedAt.set(0);
+        if (waited <= thresholdNanos) return;
+        // A stall: record and log it
+        stalls.record(waited);
+        worstNanos = Math.max(worstNanos, waited);
+        log(waited, stack);
+    }
+
+    // Method to log one stall with its captured stack and the running histogram
+    private void log(long nanos, StackTraceElement[] stack) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[%tT] EDT stalled for %d ms%n", System.currentTimeMillis(), nanos / 1_000_000));
+        if (stack != null) {
+            for (StackTraceElement frame : stack) sb.append("    at ").append(frame).append(System.lineSeparator());
+        } else {
+            sb.append("    (stack not captured)").append(System.lineSeparator());
+        }
+        sb.append(stalls.summary()).append(System.lineSeparator()).append(stalls.distribution());
+        String entry = sb.toString();
+        System.err.print(entry);
+        if (logFile == null) return;
+        // Append off the EDT (it just stalled, don't add file I/O to it)
+        new Thread(() -> {
+            synchronized (EdtWatchdog.class) {
+                try (Writer w = new OutputStreamWriter(new FileOutputStream(logFile, true), StandardCharsets.UTF_8)) {
+                    w.write(entry);
+                } catch (IOException ex) {
+                    // stderr already has it
+                }
+            }
+        }, "edt-watchdog-log").start();
+    }
+}
+
+// --- Execution backend SPI (source + stdin -> output, diagnostics, timings) ---
+interface ExecutionBackend {
+    // Method to get the backend's short name (used by -Dmini.backend and the backend selector)
+    String name();
+
+    // Method to check whether the backend can run here (e.g. its executables exist)
+    boolean isAvailable();
+
+    // Method to run a program to completion
+    BackendResult run(CharSequence source, ProgramInput input);
+
+    // Method to check whether auto mode may pick this backend from calibration timings
+    default boolean autoSelectable() { return true; }
+
+    // Method to read a process's stdout into a spool (large output spills to disk)
+    static OutputSpool readProcess(Process process) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        OutputSpool output = new OutputSpool(OutputSpool.SPILL_THRESHOLD);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) output.append(line).append('\n');
+            process.waitFor();
+            output.finish();
+        } catch (Exception ex) {
+            // Release the temp file before reporting the failure
+            output.close();
+            throw ex;
+        }
+        return output;
+    }
+
+    // Method to find the first existing executable among candidate names
+    static File executable(String... names) {
+        for (String name : names) {
+            File f = new File(name);
+            if (f.isFile() && f.canExecute()) return f;
+        }
+        return null;
+    }
+}
+
+// --- Result of one backend run ---
+final class BackendResult {
+    // Backend that produced the result
+    final String backend;
+    // Program output (null when the backend failed before producing any)
+    final OutputSpool output;
+    // Compiler diagnostics (empty when the backend doesn't report them separately)
+    final List<MiniDiagnostic> diagnostics;
+    // Status line for the GUI
+    final String status;
+    // Whether the run failed (an error message is in the output)
+    final boolean failed;
+    // Lex, parse and run time in nanoseconds (-1 when not measured separately)
+    final long lexNanos, parseNanos, runNanos;
+    // Wall time of the whole run in nanoseconds
+    final long totalNanos;
+    // Bytes allocated by the running thread per phase (-1 when not measured separately)
+    final long lexBytes, parseBytes, runBytes;
+
+    // Constructor for a result without allocation figures
+    BackendResult(String backend, OutputSpool output, List<MiniDiagnostic> diagnostics, String status, boolean failed,
+                  long lexNanos, long parseNanos, long runNanos, long totalNanos) {
+        this(backend, output, diagnostics, status, failed, lexNanos, parseNanos, runNanos, totalNanos, -1, -1, -1);
+    }
+
+    // Constructor to create a result
+    BackendResult(String backend, OutputSpool output, List<MiniDiagnostic> diagnostics, String status, boolean failed,
+                  long lexNanos, long parseNanos, long runNanos, long totalNanos, long lexBytes, long parseBytes, long runBytes) {
+        this.backend = backend;
+        this.output = output;
+        this.diagnostics = diagnostics;
+        this.status = status;
+        this.failed = failed;
+        this.lexNanos = lexNanos;
+        this.parseNanos = parseNanos;
+        this.runNanos = runNanos;
+        this.totalNanos = totalNanos;
+        this.lexBytes = lexBytes;
+        this.parseBytes = parseBytes;
+        this.runBytes = runBytes;
+    }
+
+    // Method to create a failed result carrying an error message
+    static BackendResult error(String backend, String message, String status, long totalNanos) {
+        return new BackendResult(backend, OutputSpool.of(message), Collections.emptyList(), status, true, -1, -1, -1, totalNanos);
+    }
+
+    // Method to describe the timings
+    String timings() {
+        StringBuilder sb = new StringBuilder(backend).append(String.format(": %.2f ms", totalNanos / 1e6));
+        if (lexNanos >= 0) sb.append(String.format(" (lex %.2f, parse %.2f, run %.2f)", lexNanos / 1e6, parseNanos / 1e6, runNanos / 1e6));
+        return sb.toString();
+    }
+}
+
+// --- Backend: Java lexer, parser and interpreter in-process ---
+final class JavaBackend implements ExecutionBackend {
+    @Override public String name() { return "java"; }
+
+    @Override public boolean isAvailable() { return true; }
+
+    @Override public BackendResult run(CharSequence source, ProgramInput input) {
+        long t0 = System.nanoTime();
+        return execute(name(), MiniFrontEnd.compile(source), input, t0);
+    }
+
+    // Method to interpret an already compiled program (also used for precompiled artifacts)
+    static BackendResult execute(String backend, CompileResult compiled, ProgramInput input, long startNanos) {
+        // Pull in #include'd units (each compiled separately and cached)
+        compiled = CompilationUnits.SHARED.link(compiled);
+        // Spool for the program output
+        OutputSpool output = new OutputSpool(OutputSpool.SPILL_THRESHOLD);
+        // Status to show at the end
+        String status = "Program executed successfully";
+        long b0 = MetricsRegistry.allocatedBytes();
+        long t0 = System.nanoTime();
+        try (InputTokens tokens = input.tokens()) {
+            // Run statements before the first syntax error, like the native parser
+            new MiniInterpreter(compiled.program).run(tokens, output);
+            // Report the syntax error after the output it allowed
+            if (!compiled.diagnostics.isEmpty()) {
+                output.append("Parse error: ").append(compiled.diagnostics.get(0).toString()).append('\n');
+                status = "Parser error";
+            }
+        } catch (Exception ex) {
+            // Report runtime errors (e.g. out-of-range input)
+            output.append("Runtime error: ").append(String.valueOf(ex.getMessage())).append('\n');
+            status = "Runtime error";
+        }
+        // Problems that didn't stop the program (e.g. an unwritable unit artifact)
+        if (!compiled.warnings.isEmpty()) status += " (" + String.join("; ", compiled.warnings) + ")";
+        long runNanos = System.nanoTime() - t0;
+        long runBytes = b0 < 0 ? -1 : MetricsRegistry.allocatedBytes() - b0;
+        try {
+            // Seal the spool
+            output.finish();
+        } catch (IOException ex) {
+            // Spill file could not be mapped
+            output.close();
+            return BackendResult.error(backend, "Error: Could not read program output: " + ex.getMessage(), "Output error",
+                    System.nanoTime() - startNanos);
+        }
+        return new BackendResult(backend, output, compiled.diagnostics, status, false,
+                compiled.lexNanos, compiled.parseNanos, runNanos, System.nanoTime() - startNanos,
+                compiled.lexBytes, compiled.parseBytes, runBytes);
+    }
+}
+
+// --- Backend: re-runs only the statements an edit can affect (def->use worklist from the edited range) ---
+final class IncrementalBackend implements ExecutionBackend {
+    // Runs whose output is larger than this (chars) are not memoized
+    private static final int MAX_MEMO_CHARS = 1 << 26;
+
+    // Ascending statement indexes (built once, then shared by later memos and never changed)
+    private static final class StmtList {
+        // Shared empty list (never added to)
+        static final StmtList EMPTY = new StmtList(new int[0], 0);
+        // Statements and how many there are
+        int[] at;
+        int size;
+
+        // Constructor for an empty list to add to
+        StmtList() {
+            this(new int[4], 0);
+        }
+
+        // Constructor over filled-in statements
+        StmtList(int[] at, int size) {
+            this.at = at;
+            this.size = size;
+        }
+
+        // Method to append a statement (larger than every one so far)
+        void add(int s) {
+            if (size == at.length) at = Arrays.copyOf(at, size * 2);
+            at[size++] = s;
+        }
+
+        // Method to find the position of the first statement >= s (size if none)
+        int lowerBound(int s) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int m = (lo + hi) >>> 1;
+                if (at[m] < s) lo = m + 1; else hi = m;
+            }
+            return lo;
+        }
+
+        // Method to replace the old statements [from, oldTo) by added ones and move the statements after them by shift
+        static StmtList splice(StmtList old, int from, int oldTo, StmtList added, int shift) {
+            int keep = old.lowerBound(from), tail = old.lowerBound(oldTo);
+            int count = added == null ? 0 : added.size;
+            // Nothing removed, added or moved
+            if (count == 0 && keep == tail && (shift == 0 || tail == old.size)) return old;
+            int[] at = new int[keep + count + old.size - tail];
+            System.arraycopy(old.at, 0, at, 0, keep);
+            if (count > 0) System.arraycopy(added.at, 0, at, keep, count);
+            for (int i = tail, j = keep + count; i < old.size; i++, j++) at[j] = old.at[i] + shift;
+            return new StmtList(at, at.length);
+        }
+
+        // Method to get a symbol's list (EMPTY for a symbol it has no list for)
+        static StmtList of(StmtList[] lists, int sym) {
+            return sym < lists.length && lists[sym] != null ? lists[sym] : EMPTY;
+        }
+    }
+
+    // Snapshot of the last complete run of an error-free program
+    private static final class Memo {
+        // Source and program that were run
+        final String source;
+        final MiniProgram program;
+        // Editor snapshot the source came from (null for plain text)
+        final Object version;
+        // Identity of the input that was read
+        final String input;
+        // Value written by each INPUT/ASSIGN statement
+        final byte[] kind;
+        final int[] ival;
+        final String[] raw;
+        // Output of each OUTPUT statement (null for none) and their total length
+        final String[] out;
+        final long outChars;
+        // Statements defining and using each symbol, reading cin and writing output
+        final StmtList[] defs, uses;
+        final StmtList inputs, outputs;
+
+        // Constructor to capture a run
+        Memo(String source, MiniProgram program, Object version, String input, byte[] kind, int[] ival, String[] raw,
+             String[] out, long outChars, StmtList[] defs, StmtList[] uses, StmtList inputs, StmtList outputs) {
+            this.source = source;
+            this.program = program;
+            this.version = version;
+            this.input = input;
+            this.kind = kind;
+            this.ival = ival;
+            this.raw = raw;
+            this.out = out;
+            this.outChars = outChars;
+            this.defs = defs;
+            this.uses = uses;
+            this.inputs = inputs;
+            this.outputs = outputs;
+        }
+    }
+
+    // Spliced program: kept leading statements, re-parsed statements and the old statement the kept suffix starts at
+    private static final class Front {
+        // Compile result
+        final CompileResult compiled;
+        // Statements [0, kept) are the old ones, [kept, kept + added) are new, the rest are old statements from resume on
+        final int kept, added, resume;
+
+        // Constructor to describe the splice
+        Front(CompileResult compiled, int kept, int added, int resume) {
+            this.compiled = compiled;
+            this.kept = kept;
+            this.added = added;
+            this.resume = resume;
+        }
+    }
+
+    // cin tokens by ordinal: the previous run's tokens, then the input read past them
+    private static final class Cin implements Closeable {
+        // Previous run and the input both runs read
+        private final Memo old;
+        private final ProgramInput input;
+        // Input past the previous run's tokens (opened on first use) and the ordinal of its next token
+        private InputTokens more;
+        private int next;
+
+        // Constructor over the previous run
+        Cin(Memo old, ProgramInput input) {
+            this.old = old;
+            this.input = input;
+        }
+
+        // Method to get token k ("" at end of input); ordinals past the old ones are asked for in increasing order
+        String token(int k) throws IOException {
+            if (k < old.inputs.size) return old.raw[old.inputs.at[k]];
+            if (more == null) {
+                // Skip the tokens the previous run already read
+                more = input.tokens();
+                for (next = 0; next < old.inputs.size; next++) more.next();
+            }
+            String tok = "";
+            while (next <= k) {
+                tok = more.next();
+                next++;
+            }
+            return tok;
+        }
+
+        // Method to close the input read past the old tokens
+        @Override public void close() throws IOException {
+            if (more != null) more.close();
+        }
+    }
+
+    // Last complete run (null before the first run, after a runtime error or for a program that can't be spliced)
+    private Memo memo;
+
+    @Override public String name() { return "incremental"; }
+
+    @Override public boolean isAvailable() { return true; }
+
+    // Repeated calibration runs would all be memo hits
+    @Override public boolean autoSelectable() { return false; }
+
+    // Synchronized: each run starts from the previous run's memo
+    @Override public synchronized BackendResult run(CharSequence text, ProgramInput input) {
+        long start = System.nanoTime();
+        // The editor hands over its own snapshot and edited range; other callers' text is copied once (free for a String)
+        EditedSource edit = text instanceof EditedSource ? (EditedSource) text : null;
+        String source = edit != null ? edit.text : text.toString();
+        Memo old = memo;
+        memo = null;
+        // Input that can be read again is memoized by identity; a piped stream always runs in full
+        String inputKey = input.identity();
+        if (old != null && (inputKey == null || !inputKey.equals(old.input))) old = null;
+        // Re-parse only the edited statements when possible, otherwise compile and run everything
+        Front front = null;
+        if (old != null) {
+            int oldLen = old.source.length(), newLen = source.length(), min = Math.min(oldLen, newLen);
+            int prefix, suffix;
+            if (edit != null && edit.base != null && edit.base == old.version && edit.prefix + edit.suffix <= min) {
+                // The editor's edited range since the memo's snapshot
+                prefix = edit.prefix;
+                suffix = edit.suffix;
+            } else {
+                // Common prefix and suffix of the two texts
+                prefix = 0;
+                while (prefix < min && old.source.charAt(prefix) == source.charAt(prefix)) prefix++;
+                suffix = 0;
+                while (suffix < min - prefix && old.source.charAt(oldLen - 1 - suffix) == source.charAt(newLen - 1 - suffix)) suffix++;
+            }
+            front = splice(old, source, prefix, suffix);
+        }
+        CompileResult compiled = front != null ? front.compiled : MiniFrontEnd.compile(source);
+        // Included units aren't tracked statement by statement: run the linked program in full
+        if (compiled.program.hasIncludes()) return JavaBackend.execute(name(), compiled, input, start);
+        MiniProgram p = compiled.program;
+        long b0 = MetricsRegistry.allocatedBytes();
+        long t0 = System.nanoTime();
+        Pass pass = front != null ? new Pass(p, old, front) : new Pass(p);
+        String error = null;
+        try {
+            if (front != null) pass.rerun(input);
+            else pass.runAll(input);
+            // Keep the run for the next edit (a program with a syntax error ends early, so it can't be spliced)
+            if (inputKey != null && compiled.diagnostics.isEmpty() && pass.outChars <= MAX_MEMO_CHARS) {
+                memo = new Memo(source, p, edit != null ? edit.version : null, inputKey, pass.kind, pass.ival, pass.raw,
+                        pass.out, pass.outChars, pass.defs, pass.uses, pass.inputs, pass.outputs);
+            }
+        } catch (Exception ex) {
+            // Report runtime errors (e.g. out-of-range input); the next run starts from scratch
+            error = String.valueOf(ex.getMessage());
+        }
+        long runNanos = System.nanoTime() - t0;
+        long runBytes = b0 < 0 ? -1 : MetricsRegistry.allocatedBytes() - b0;
+        // Output segments in statement order, up to the failing statement (large output spills to disk)
+        OutputSpool output = new OutputSpool(OutputSpool.SPILL_THRESHOLD);
+        int end = error == null ? pass.outputs.size : pass.outputs.lowerBound(pass.current);
+        for (int i = 0; i < end; i++) {
+            String o = pass.out[pass.outputs.at[i]];
+            if (o != null) output.append(o);
+        }
+        String status = String.format("Program executed successfully (re-ran %,d of %,d statements)", pass.rerun, p.stmtCount);
+        if (error != null) {
+            output.append("Runtime error: ").append(error).append('\n');
+            status = "Runtime error";
+        } else if (!compiled.diagnostics.isEmpty()) {
+            // Report the syntax error after the output it allowed
+            output.append("Parse error: ").append(compiled.diagnostics.get(0).toString()).append('\n');
+            status = "Parser error";
+        }
+        try {
+            output.finish();
+        } catch (IOException ex) {
+            output.close();
+            return BackendResult.error(name(), "Error: Could not read program output: " + ex.getMessage(), "Output error",
+                    System.nanoTime() - start);
+        }
+        return new BackendResult(name(), output, compiled.diagnostics, status, false, compiled.lexNanos, compiled.parseNanos,
+                runNanos, System.nanoTime() - start, compiled.lexBytes, compiled.parseBytes, runBytes);
+    }
+
+    // One run: statement values, output segments and def/use lists of the new program
+    private static final class Pass {
+        // Program being run and its interpreter
+        final MiniProgram p;
+        final MiniInterpreter interpreter;
+        // Previous run and the splice (null for a full run)
+        final Memo old;
+        final Front front;
+        // Value written by each INPUT/ASSIGN statement, output of each OUTPUT statement and their total length
+        final byte[] kind;
+        final int[] ival;
+        final String[] raw;
+        final String[] out;
+        long outChars;
+        // Statements defining and using each symbol, reading cin and writing output
+        final StmtList[] defs, uses;
+        StmtList inputs, outputs;
+        // Statements still to re-run
+        final BitSet dirty;
+        // Buffer for one statement's output
+        final StringBuilder segment = new StringBuilder();
+        // Statement being run (the failing one after a runtime error) and how many ran
+        int current, rerun;
+
+        // Constructor for a full run
+        Pass(MiniProgram p) {
+            this.p = p;
+            this.interpreter = new MiniInterpreter(p);
+            this.old = null;
+            this.front = null;
+            int n = p.stmtCount;
+            kind = new byte[n];
+            ival = new int[n];
+            raw = new String[n];
+            out = new String[n];
+            defs = new StmtList[p.symbols.size()];
+            uses = new StmtList[defs.length];
+            inputs = new StmtList();
+            outputs = new StmtList();
+            dirty = null;
+        }
+
+        // Constructor for a re-run: carry the kept statements' values and segments over and splice the lists
+        Pass(MiniProgram p, Memo old, Front front) {
+            this.p = p;
+            this.interpreter = new MiniInterpreter(p);
+            this.old = old;
+            this.front = front;
+            int n = p.stmtCount, n0 = front.kept, mid = n0 + front.added, k1 = front.resume;
+            int tail = n - mid, shift = mid - k1;
+            kind = new byte[n];
+            ival = new int[n];
+            raw = new String[n];
+            out = new String[n];
+            System.arraycopy(old.kind, 0, kind, 0, n0);
+            System.arraycopy(old.ival, 0, ival, 0, n0);
+            System.arraycopy(old.raw, 0, raw, 0, n0);
+            System.arraycopy(old.out, 0, out, 0, n0);
+            System.arraycopy(old.kind, k1, kind, mid, tail);
+            System.arraycopy(old.ival, k1, ival, mid, tail);
+            System.arraycopy(old.raw, k1, raw, mid, tail);
+            System.arraycopy(old.out, k1, out, mid, tail);
+            outChars = old.outChars;
+            for (int s = n0; s < k1; s++) outChars -= length(old.out[s]);
+            // Definitions and uses of the re-parsed statements
+            Map<Integer, StmtList> addedDefs = new HashMap<>(), addedUses = new HashMap<>();
+            StmtList addedInputs = new StmtList(), addedOutputs = new StmtList();
+            for (int s = n0; s < mid; s++) {
+                index(p, s, v -> addedDefs.computeIfAbsent(v, k -> new StmtList()), v -> addedUses.computeIfAbsent(v, k -> new StmtList()),
+                        addedInputs, addedOutputs);
+            }
+            // Symbols whose lists the edit changed (every list moves when statements were added or removed)
+            defs = Arrays.copyOf(old.defs, p.symbols.size());
+            uses = Arrays.copyOf(old.uses, defs.length);
+            Set<Integer> touched = new HashSet<>(addedDefs.keySet());
+            touched.addAll(addedUses.keySet());
+            MiniProgram q = old.program;
+            for (int s = n0; s < k1; s++) {
+                if (q.stmtKind[s] == MiniProgram.INPUT || q.stmtKind[s] == MiniProgram.ASSIGN) touched.add(q.stmtTarget[s]);
+                for (int t = q.stmtTermStart[s]; t < q.stmtTermEnd[s]; t++) if (q.termIsVar[t]) touched.add(q.termValue[t]);
+            }
+            if (shift == 0) {
+                for (int v : touched) splice(v, n0, k1, addedDefs.get(v), addedUses.get(v), 0);
+            } else {
+                for (int v = 0; v < defs.length; v++) splice(v, n0, k1, addedDefs.get(v), addedUses.get(v), shift);
+            }
+            inputs = StmtList.splice(old.inputs, n0, k1, addedInputs, shift);
+            outputs = StmtList.splice(old.outputs, n0, k1, addedOutputs, shift);
+            // The re-parsed statements run; every later cin read moves when the edit changed how many tokens come before it
+            dirty = new BitSet(n);
+            dirty.set(n0, mid);
+            if (addedInputs.size != old.inputs.lowerBound(k1) - old.inputs.lowerBound(n0)) {
+                for (int i = inputs.lowerBound(mid); i < inputs.size; i++) dirty.set(inputs.at[i]);
+            }
+        }
+
+        // Method to splice one symbol's definition and use lists
+        private void splice(int v, int from, int oldTo, StmtList addedDefs, StmtList addedUses, int shift) {
+            defs[v] = StmtList.splice(StmtList.of(old.defs, v), from, oldTo, addedDefs, shift);
+            uses[v] = StmtList.splice(StmtList.of(old.uses, v), from, oldTo, addedUses, shift);
+        }
+
+        // Method to run every statement in order
+        void runAll(ProgramInput input) throws Exception {
+            try (InputTokens tokens = input.tokens()) {
+                for (current = 0; current < p.stmtCount; current++) {
+                    int s = current;
+                    index(p, s, v -> defs[v] == null ? (defs[v] = new StmtList()) : defs[v],
+                            v -> uses[v] == null ? (uses[v] = new StmtList()) : uses[v], inputs, outputs);
+                    segment.setLength(0);
+                    interpreter.execute(s, tokens, segment);
+                    record(s);
+                }
+            }
+        }
+
+        // Method to re-run the edited statements, then every later statement a changed value reaches
+        void rerun(ProgramInput input) throws Exception {
+            int mid = front.kept + front.added;
+            try (Cin cin = new Cin(old, input)) {
+                // The re-parsed statements
+                for (current = dirty.nextSetBit(0); current >= 0 && current < mid; current = dirty.nextSetBit(current + 1)) {
+                    rerun(current, cin);
+                }
+                // Variables the edit defined or removed a definition of: uses after the edit see a new value if the one reaching them changed
+                MiniProgram q = old.program;
+                Set<Integer> redefined = new HashSet<>();
+                for (int s = front.kept; s < mid; s++) {
+                    if (p.stmtKind[s] == MiniProgram.INPUT || p.stmtKind[s] == MiniProgram.ASSIGN) redefined.add(p.stmtTarget[s]);
+                }
+                for (int s = front.kept; s < front.resume; s++) {
+                    if (q.stmtKind[s] == MiniProgram.INPUT || q.stmtKind[s] == MiniProgram.ASSIGN) redefined.add(q.stmtTarget[s]);
+                }
+                for (int v : redefined) {
+                    StmtList after = StmtList.of(defs, v), before = StmtList.of(old.defs, v);
+                    int now = after.lowerBound(mid) - 1, was = before.lowerBound(front.resume) - 1;
+                    boolean same = now < 0 || was < 0 ? now == was
+                            : kind[after.at[now]] == old.kind[before.at[was]] && ival[after.at[now]] == old.ival[before.at[was]]
+                            && Objects.equals(raw[after.at[now]], old.raw[before.at[was]]);
+                    if (!same) markUses(v, mid);
+                }
+                // Kept statements whose inputs changed, in order (re-running one may mark later ones)
+                for (current = dirty.nextSetBit(mid); current >= 0; current = dirty.nextSetBit(current + 1)) {
+                    rerun(current, cin);
+                }
+            }
+        }
+
+        // Method to re-run one statement from its reaching definitions
+        private void rerun(int s, Cin cin) throws Exception {
+            // Each variable it reads holds the value of the last definition before it (unset if none)
+            for (int t = p.stmtTermStart[s]; t < p.stmtTermEnd[s]; t++) {
+                if (!p.termIsVar[t]) continue;
+                int v = p.termValue[t];
+                StmtList d = StmtList.of(defs, v);
+                int i = d.lowerBound(s) - 1;
+                if (i < 0) interpreter.restore(v, (byte) 0, 0, null);
+                else interpreter.restore(v, kind[d.at[i]], ival[d.at[i]], raw[d.at[i]]);
+            }
+            boolean def = p.stmtKind[s] == MiniProgram.INPUT || p.stmtKind[s] == MiniProgram.ASSIGN;
+            byte k = kind[s];
+            int i = ival[s];
+            String r = raw[s];
+            segment.setLength(0);
+            if (p.stmtKind[s] == MiniProgram.INPUT) interpreter.input(s, cin.token(inputs.lowerBound(s)));
+            else interpreter.execute(s, null, segment);
+            outChars -= length(out[s]);
+            record(s);
+            // A kept definition whose value changed reaches different values into its uses
+            if (def && s >= front.kept + front.added && (kind[s] != k || ival[s] != i || !Objects.equals(raw[s], r))) {
+                markUses(p.stmtTarget[s], s + 1);
+            }
+        }
+
+        // Method to mark the uses of v from statement from up to and including its next definition
+        private void markUses(int v, int from) {
+            StmtList d = StmtList.of(defs, v), u = StmtList.of(uses, v);
+            int j = d.lowerBound(from);
+            int until = j < d.size ? d.at[j] : Integer.MAX_VALUE;
+            for (int i = u.lowerBound(from); i < u.size && u.at[i] <= until; i++) dirty.set(u.at[i]);
+        }
+
+        // Method to remember what statement s wrote
+        private void record(int s) {
+            rerun++;
+            byte k = p.stmtKind[s];
+            if (k == MiniProgram.INPUT || k == MiniProgram.ASSIGN) {
+                int target = p.stmtTarget[s];
+                kind[s] = interpreter.kindOf(target);
+                ival[s] = interpreter.intOf(target);
+                raw[s] = interpreter.rawOf(target);
+            } else {
+                out[s] = segment.length() == 0 ? null : segment.toString();
+                outChars += segment.length();
+            }
+        }
+
+        // Method to add statement s to the lists of what it defines and uses
+        private static void index(MiniProgram p, int s, java.util.function.IntFunction<StmtList> defsOf, java.util.function.IntFunction<StmtList> usesOf,
+                                  StmtList inputs, StmtList outputs) {
+            byte k = p.stmtKind[s];
+            if (k == MiniProgram.INPUT || k == MiniProgram.ASSIGN) defsOf.apply(p.stmtTarget[s]).add(s);
+            if (k == MiniProgram.INPUT) inputs.add(s);
+            else if (k != MiniProgram.ASSIGN) outputs.add(s);
+            for (int t = p.stmtTermStart[s]; t < p.stmtTermEnd[s]; t++) {
+                if (!p.termIsVar[t]) continue;
+                StmtList u = usesOf.apply(p.termValue[t]);
+                if (u.size == 0 || u.at[u.size - 1] != s) u.add(s);
+            }
+        }
+
+        // Method to get a segment's length (0 for none)
+        private static int length(String segment) {
+            return segment == null ? 0 : segment.length();
+        }
+    }
+
+    // Method to re-lex and re-parse only the text between the unchanged leading and trailing statements (null to compile everything)
+    private static Front splice(Memo old, String source, int prefix, int suffix) {
+        MiniProgram q = old.program;
+        // Splicing only adds to the shared tables; start over once they are mostly stale
+        if (q.symbols.size() > 2 * q.stmtCount + 1024 || q.strings.size() > 2 * q.stmtCount + 1024) return null;
+        long b0 = MetricsRegistry.allocatedBytes();
+        long t0 = System.nanoTime();
+        int oldLen = old.source.length(), newLen = source.length(), shift = newLen - oldLen;
+        // Statements ending inside the prefix are unchanged (in an error-free program no token looks past its statement's ';')
+        int k0 = lastEndingBy(q, prefix);
+        int from = k0 < 0 ? 0 : q.stmtEnd[k0];
+        // Statements starting inside the suffix are unchanged if the edited text ends at a token boundary before them
+        int k1 = firstStartingAt(q, Math.max(oldLen - suffix, from));
+        while (k1 < q.stmtCount && !boundary(source, q.stmtStart[k1] + shift)) k1++;
+        int to = k1 < q.stmtCount ? q.stmtStart[k1] + shift : newLen;
+        // Lex the edited text on its own
+        TokenBuffer tokens = new TokenBuffer(64);
+        MiniLexer.lex(source, from, to, tokens);
+        long t1 = System.nanoTime();
+        long b1 = MetricsRegistry.allocatedBytes();
+        // Parse it into a program sharing the old symbol and string tables, counting lines from the last kept statement
+        int line = 1;
+        if (k0 >= 0) {
+            line = q.stmtLine[k0];
+            for (int i = q.stmtStart[k0]; i < from; i++) if (source.charAt(i) == '\n') line++;
+        }
+        MiniProgram mid = new MiniProgram(q.symbols, q.strings, q.symbolIds);
+        MiniParser parser = new MiniParser(source, tokens, mid, from, line, source.lastIndexOf('\n', from - 1) + 1);
+        parser.parse();
+        // A syntax error ends the program there, so the kept suffix would be wrong
+        if (!parser.diagnostics().isEmpty()) return null;
+        // Lines added or removed by the edit: the first kept statement's new line against its old one
+        int lineShift = 0;
+        if (k1 < q.stmtCount) {
+            lineShift = line - q.stmtLine[k1];
+            for (int i = from; i < to; i++) if (source.charAt(i) == '\n') lineShift++;
+        }
+        // Assemble prefix, edited statements and suffix
+        int n0 = k0 + 1, n1 = mid.stmtCount, n2 = q.stmtCount - k1;
+        int prefixTerms = k0 < 0 ? 0 : q.stmtTermEnd[k0];
+        int suffixTerms = k1 < q.stmtCount ? q.stmtTermStart[k1] : q.termCount;
+        MiniProgram p = new MiniProgram(q.symbols, q.strings, q.symbolIds);
+        int count = n0 + n1 + n2;
+        int terms = prefixTerms + mid.termCount + (q.termCount - suffixTerms);
+        p.stmtKind = new byte[Math.max(64, count)];
+        p.stmtTarget = new int[p.stmtKind.length];
+        p.stmtTermStart = new int[p.stmtKind.length];
+        p.stmtTermEnd = new int[p.stmtKind.length];
+        p.stmtStart = new int[p.stmtKind.length];
+        p.stmtEnd = new int[p.stmtKind.length];
+        p.stmtLine = new int[p.stmtKind.length];
+        copyStatements(q, 0, p, 0, n0, 0, 0, 0);
+        copyStatements(mid, 0, p, n0, n1, 0, 0, prefixTerms);
+        copyStatements(q, k1, p, n0 + n1, n2, shift, lineShift, prefixTerms + mid.termCount - suffixTerms);
+        p.stmtCount = count;
+        p.termIsVar = new boolean[Math.max(64, terms)];
+        p.termValue = new int[p.termIsVar.length];
+        System.arraycopy(q.termIsVar, 0, p.termIsVar, 0, prefixTerms);
+        System.arraycopy(q.termValue, 0, p.termValue, 0, prefixTerms);
+        System.arraycopy(mid.termIsVar, 0, p.termIsVar, prefixTerms, mid.termCount);
+        System.arraycopy(mid.termValue, 0, p.termValue, prefixTerms, mid.termCount);
+        System.arraycopy(q.termIsVar, suffixTerms, p.termIsVar, prefixTerms + mid.termCount, q.termCount - suffixTerms);
+        System.arraycopy(q.termValue, suffixTerms, p.termValue, prefixTerms + mid.termCount, q.termCount - suffixTerms);
+        p.termCount = terms;
+        long t2 = System.nanoTime();
+        long b2 = MetricsRegistry.allocatedBytes();
+        // "Lex" covers the edited region, "parse" covers parsing it and splicing
+        return new Front(new CompileResult(null, p, Collections.emptyList(), t1 - t0, t2 - t1,
+                b0 < 0 ? -1 : b1 - b0, b0 < 0 ? -1 : b2 - b1), n0, n1, k1);
+    }
+
+    // Method to find the last statement ending at or before offset (-1 if none)
+    private static int lastEndingBy(MiniProgram q, int offset) {
+        int lo = 0, hi = q.stmtCount;
+        while (lo < hi) {
+            int m = (lo + hi) >>> 1;
+            if (q.stmtEnd[m] <= offset) lo = m + 1; else hi = m;
+        }
+        return lo - 1;
+    }
+
+    // Method to find the first statement starting at or after offset (stmtCount if none)
+    private static int firstStartingAt(MiniProgram q, int offset) {
+        int lo = 0, hi = q.stmtCount;
+        while (lo < hi) {
+            int m = (lo + hi) >>> 1;
+            if (q.stmtStart[m] < offset) lo = m + 1; else hi = m;
+        }
+        return lo;
+    }
+
+    // Check whether a token can't continue across offset (whitespace or ';' before it)
+    private static boolean boundary(String source, int offset) {
+        if (offset == 0) return true;
+        char c = source.charAt(offset - 1);
+        return c == ';' || MiniLexer.isSpace(c);
+    }
+
+    // Method to copy statements between programs, moving their offsets, lines and term indexes
+    private static void copyStatements(MiniProgram from, int start, MiniProgram to, int at, int count,
+                                       int offsetShift, int lineShift, int termShift) {
+        System.arraycopy(from.stmtKind, start, to.stmtKind, at, count);
+        System.arraycopy(from.stmtTarget, start, to.stmtTarget, at, count);
+        for (int i = 0; i < count; i++) {
+            to.stmtTermStart[at + i] = from.stmtTermStart[start + i] + termShift;
+            to.stmtTermEnd[at + i] = from.stmtTermEnd[start + i] + termShift;
+            to.stmtStart[at + i] = from.stmtStart[start + i] + offsetShift;
+            to.stmtEnd[at + i] = from.stmtEnd[start + i] + offsetShift;
+            to.stmtLine[at + i] = from.stmtLine[start + i] + lineShift;
+        }
+    }
+}
+
+// --- Tracks the range of the editor's document changed between two run snapshots ---
+final class EditTracker implements javax.swing.event.DocumentListener {
+    // Last snapshot (null before the first one or after a document switch), its text length and surrounding whitespace
+    private Object version;
+    private int length, lead, trail;
+    // Whether the text changed since, the range [lo, hi) covering every change and the change in length
+    private boolean edited;
+    private int lo, hi, delta;
+
+    // Constructor to follow an editor from document to document
+    EditTracker(JTextArea editor) {
+        editor.getDocument().addDocumentListener(this);
+        editor.addPropertyChangeListener("document", e -> {
+            ((Document) e.getOldValue()).removeDocumentListener(this);
+            ((Document) e.getNewValue()).addDocumentListener(this);
+            // Another document's text has nothing in common with the last snapshot
+            version = null;
+        });
+    }
+
+    // Method to widen the range by inserted text
+    @Override public void insertUpdate(javax.swing.event.DocumentEvent e) {
+        int off = e.getOffset(), n = e.getLength();
+        if (!edited) {
+            lo = off;
+            hi = off + n;
+        } else {
+            lo = Math.min(lo, off);
+            hi = off > hi ? off + n : hi + n;
+        }
+        edited = true;
+        delta += n;
+    }
+
+    // Method to widen the range by removed text
+    @Override public void removeUpdate(javax.swing.event.DocumentEvent e) {
+        int off = e.getOffset(), n = e.getLength();
+        if (!edited) {
+            lo = off;
+            hi = off;
+        } else {
+            lo = Math.min(lo, off);
+            hi = hi >= off + n ? hi - n : off;
+        }
+        edited = true;
+        delta -= n;
+    }
+
+    // Attribute changes leave the text alone
+    @Override public void changedUpdate(javax.swing.event.DocumentEvent e) {}
+
+    // Method to snapshot the text (on the EDT, with code its trimmed form): unchanged lengths are relative to the trimmed previous snapshot
+    EditedSource snapshot(CharSequence text, CharSequence code) {
+        int len = text.length(), codeLen = code.length();
+        int newLead = 0;
+        while (newLead < len && text.charAt(newLead) <= ' ') newLead++;
+        int newTrail = len - newLead - codeLen;
+        int prefix = 0, suffix = 0;
+        if (version != null && len - length == delta) {
+            // Raw text before lo and after hi is unchanged; it covers the code's ends only if it covers both snapshots' whitespace
+            int a = edited ? lo : len, b = edited ? hi : len;
+            if (a >= Math.max(newLead, lead)) prefix = a - newLead;
+            if (len - b >= Math.max(newTrail, trail)) suffix = len - b - newTrail;
+            int oldCodeLen = length - lead - trail;
+            prefix = Math.min(prefix, Math.min(codeLen, oldCodeLen));
+            suffix = Math.min(suffix, Math.min(codeLen, oldCodeLen) - prefix);
+        }
+        EditedSource snapshot = new EditedSource(code.toString(), version, new Object(), prefix, suffix);
+        version = snapshot.version;
+        length = len;
+        lead = newLead;
+        trail = newTrail;
+        edited = false;
+        delta = 0;
+        return snapshot;
+    }
+}
+
+// --- Backend: native token_stream lexer, Java parser and interpreter ---
+final class NativeTokenBackend implements ExecutionBackend {
+    // Token buffer reused by every run
+    private final TokenBuffer tokens = new TokenBuffer(4096);
+
+    @Override public String name() { return "native-tokens"; }
+
+    @Override public boolean isAvailable() { return BinaryTokenStream.nativeLexer() != null; }
+
+    @Override public synchronized BackendResult run(CharSequence source, ProgramInput input) {
+        long t0 = System.nanoTime();
+        try {
+            // Native lexing straight into the reusable token buffer
+            BinaryTokenStream.lexNative(source, tokens);
+            long t1 = System.nanoTime();
+            // Parse the decoded tokens
+            MiniParser parser = new MiniParser(source, tokens);
+            MiniProgram program = parser.parse();
+            // Run it
+            return JavaBackend.execute(name(), new CompileResult(tokens, program, parser.diagnostics(), t1 - t0, System.nanoTime() - t1), input, t0);
+        } catch (Exception ex) {
+            // Print stack trace for debugging
+            ex.printStackTrace();
+            return BackendResult.error(name(), "Error: Lexer execution failed. " + ex.getMessage(), "Lexer error", System.nanoTime() - t0);
+        }
+    }
+}
+
+// --- Backend: native ./lexer process piped into the native ./parser process ---
+final class LexerThenParserBackend implements ExecutionBackend {
+    @Override public String name() { return "lexer+parser"; }
+
+    @Override public boolean isAvailable() {
+        return ExecutionBackend.executable("lexer", "lexer.exe") != null && ExecutionBackend.executable("parser", "parser.exe") != null;
+    }
+
+    @Override public BackendResult run(CharSequence source, ProgramInput input) {
+        long t0 = System.nanoTime();
+        // Step 1: Pass code to lexer
+        String lexerOutput = runLexer(source);
+        long t1 = System.nanoTime();
+        // Check if lexer returned an error
+        if (lexerOutput.contains("Error")) return BackendResult.error(name(), lexerOutput, "Lexer error", t1 - t0);
+        // Step 2: Pass lexer output (tokens) to parser
+        OutputSpool parserOutput = runParser(lexerOutput, input);
+        long t2 = System.nanoTime();
+        // Check if parser returned an error (error messages are always short enough to stay in memory)
+        if (!parserOutput.isSpilled() && parserOutput.toString().contains("Error")) {
+            return new BackendResult(name(), parserOutput, Collections.emptyList(), "Parser error", true, t1 - t0, -1, -1, t2 - t0);
+        }
+        return new BackendResult(name(), parserOutput, Collections.emptyList(), "Program executed successfully", false,
+                t1 - t0, -1, -1, t2 - t0);
+    }
+
+    // Method to run the lexer on code
+    static String runLexer(CharSequence code) {
+        try {
+            // Step 1: Create a temporary file
+            File tempFile = File.createTempFile("input", ".cpp");  // Creates a file with a random name, ending in ".cpp"
+            
+            // Step 2: Write the code to the temporary file
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+                SourceText.write(code, writer);  // Write the code entered by the user in the codeArea
+            }
+    
+            // Step 3: Run the lexer on the temp file
+            // Here we assume that the lexer is a compiled executable that reads from a file.
+            Process process = Runtime.getRuntime().exec("./lexer " + tempFile.getAbsolutePath());
+    
+            // Step 4: Capture the output of the lexer (tokens)
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            // StringBuilder to store output
+            StringBuilder output = new StringBuilder();
+            // Variable to store each line
+            String line;
+            // Read all lines from lexer output
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append("\n");
+            }
+    
+            // Wait for the process to finish
+            process.waitFor();
+    
+            // Step 5: Delete the temporary file after processing
+            tempFile.delete();
+    
+            // Return the output from the lexer (tokens)
+            return output.toString();
+        } catch (Exception ex) {
+            // Print stack trace for debugging
+            ex.printStackTrace();
+            // Return error message
+            return "Error: Lexer execution failed.";
+        }
+    }
+
+    // Method to run parser on lexer output (large output spills to a temp file)
+    static OutputSpool runParser(String lexerOutput, ProgramInput input) {
+        try {
+            // Execute parser with lexer output as arguments (split like Runtime.exec does), feeding the program's stdin
+            Process parserProcess = input.start(new ProcessBuilder(Collections.list(new StringTokenizer("./parser " + lexerOutput))
+                    .stream().map(Object::toString).toArray(String[]::new)));
+            // Return parser output
+            return ExecutionBackend.readProcess(parserProcess);
+        } catch (Exception ex) {
+            // Print stack trace for debugging
+            ex.printStackTrace();
+            // Return error message
+            return OutputSpool.of("Error: Parser execution failed.");
+        }
+    }
+}
+
+// --- Backend: combined native ./lexer_parser executable ---
+final class LexerParserBackend implements ExecutionBackend {
+    @Override public String name() { return "lexer_parser"; }
+
+    @Override public boolean isAvailable() { return ExecutionBackend.executable("lexer_parser", "lexer_parser.exe") != null; }
+
+    @Override public BackendResult run(CharSequence source, ProgramInput input) {
+        long t0 = System.nanoTime();
+        OutputSpool output = runLexerAndParser(source, input);
+        long total = System.nanoTime() - t0;
+        boolean failed = !output.isSpilled() && output.toString().startsWith("Error:");
+        return new BackendResult(name(), output, Collections.emptyList(), failed ? "Lexer/parser error" : "Program executed successfully",
+                failed, -1, -1, -1, total);
+    }
+
+    // Method to run both lexer and parser (alternative approach)
+    static OutputSpool runLexerAndParser(CharSequence code, ProgramInput input) {
+        try {
+            // Write the code to a temporary file
+            File tempFile = File.createTempFile("input", ".cpp");
+            // Write code to temp file
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+                SourceText.write(code, writer);  // Write the code entered by the user in the codeArea
+            }
+            try {
+                // Run the lexer and parser on the temp file
+                Process process = input.start(new ProcessBuilder("./lexer_parser", tempFile.getAbsolutePath()));
+                // Return combined lexer/parser output
+                return ExecutionBackend.readProcess(process);
+            } finally {
+                tempFile.delete();
+            }
+        } catch (Exception ex) {
+            // Print stack trace for debugging
+            ex.printStackTrace();
+            // Return error message
+            return OutputSpool.of("Error: Could not run lexer/parser.");
+        }
+    }
+}
+
+// --- Backend: native mini_cc (flex/bison build of lexer.l + parser.y + main.cpp) ---
+final class MiniCcBackend implements ExecutionBackend {
+    @Override public String name() { return "mini_cc"; }
+
+    @Override public boolean isAvailable() { return ExecutionBackend.executable("mini_cc", "mini_cc.exe") != null; }
+
+    @Override public BackendResult run(CharSequence source, ProgramInput input) {
+        long t0 = System.nanoTime();
+        File exe = ExecutionBackend.executable("mini_cc", "mini_cc.exe");
+        if (exe == null) return BackendResult.error(name(), "Error: mini_cc not found.", "Backend unavailable", 0);
+        try {
+            // mini_cc reads the program from a file and cin from stdin
+            File tempFile = File.createTempFile("input", ".cpp");
+            try {
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+                    SourceText.writeUtf8(source, out);
+                }
+                // yyerror writes to stderr; keep it in order with the output
+                ProcessBuilder pb = new ProcessBuilder(exe.getAbsolutePath(), tempFile.getAbsolutePath()).redirectErrorStream(true);
+                OutputSpool output = ExecutionBackend.readProcess(input.start(pb));
+                // A syntax error is program output (statements before it still ran), not a backend failure
+                boolean parseError = !output.isSpilled() && output.toString().contains("Parse error:");
+                return new BackendResult(name(), output, Collections.emptyList(), parseError ? "Parser error" : "Program executed successfully",
+                        false, -1, -1, -1, System.nanoTime() - t0);
+            } finally {
+                tempFile.delete();
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return BackendResult.error(name(), "Error: mini_cc execution failed. " + ex.getMessage(), "Backend error", System.nanoTime() - t0);
+        }
+    }
+}
+
+// --- Backend: line-based regex evaluator (handles only simple PL1/PL2/PL3-style programs) ---
+final class RegexBackend implements ExecutionBackend {
+    @Override public String name() { return "regex"; }
+
+    @Override public boolean isAvailable() { return true; }
+
+    @Override public BackendResult run(CharSequence source, ProgramInput input) {
+        long t0 = System.nanoTime();
+        try {
+            // A program that only reads and echoes is PL1's mode 1
+            int mode = SourceText.contains(source, "cin") ? 1 : 0;
+            String out = interpretMini(source, mode, input);
+            return new BackendResult(name(), OutputSpool.of(out + "\n"), Collections.emptyList(), "Program executed successfully",
+                    false, -1, -1, -1, System.nanoTime() - t0);
+        } catch (Exception ex) {
+            return BackendResult.error(name(), "Error: " + ex.getMessage(), "Evaluation error", System.nanoTime() - t0);
+        }
+    }
+
+    // --- Simple evaluator for PL1/PL2/PL3 ---
+    static String interpretMini(CharSequence code, int mode, ProgramInput input) throws Exception {
+        // If mode is 1 (PL1 - input/output)
+        if (mode == 1) {
+            // Read the first input token, like cin >> x
+            String in;
+            try (InputTokens tokens = input.tokens()) { in = tokens.next(); }
+            // Return input or error message
+            return in.isEmpty() ? "No input provided" : in;
+        }
+
+        // Map to store variables
+        Map<String, Integer> vars = new HashMap<>();
+        // Pattern to match variable assignments
+        Pattern assign = Pattern.compile("\\b([a-zA-Z_]\\w*)\\s*=\\s*(-?\\d+)\\s*;");
+        // Pattern to match cout with numbers or variables
+        Pattern coutNum = Pattern.compile("cout\\s*<<\\s*([a-zA-Z_]\\w*|\\d+)\\s*(?:\\+\\s*([a-zA-Z_]\\w*|\\d+))?\\s*;?");
+        // Pattern to match cout with strings
+        Pattern coutStr = Pattern.compile("cout\\s*<<\\s*\"(.*?)\"\\s*;?");
+        // Variable to store last output
+        String lastOutput = null;
+
+        // Process each line in place (no copy of the whole program)
+        int n = code.length();
+        for (int lineStart = 0, lineEnd; lineStart < n; lineStart = lineEnd + 1) {
+            // Find the end of the line, noting line terminators other than \n
+            boolean plain = true;
+            for (lineEnd = lineStart; lineEnd < n && code.charAt(lineEnd) != '\n'; lineEnd++) {
+                char c = code.charAt(lineEnd);
+                if (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') plain = false;
+            }
+            // Region of the line to match
+            CharSequence line = code;
+            int from = lineStart, to = lineEnd;
+            if (plain) {
+                // Remove the comment and trim whitespace
+                for (int i = from; i + 1 < to; i++) {
+                    if (code.charAt(i) == '/' && code.charAt(i + 1) == '/') { to = i; break; }
+                }
+                while (from < to && code.charAt(from) <= ' ') from++;
+                while (to > from && code.charAt(to - 1) <= ' ') to--;
+            } else {
+                // Rare terminators: clean a copy of just this line (a comment ends at any of them)
+                String cleaned = code.subSequence(lineStart, lineEnd).toString().replaceAll("//.*", "").replace("\r", "").trim();
+                line = cleaned;
+                from = 0;
+                to = cleaned.length();
+            }
+            // Skip empty lines
+            if (from == to) continue;
+
+            // Try to match assignment pattern
+            Matcher mAssign = assign.matcher(line).region(from, to);
+            // Try to match string cout pattern
+            Matcher mCoutStr = coutStr.matcher(line).region(from, to);
+            // Try to match number cout pattern
+            Matcher mCoutNum = coutNum.matcher(line).region(from, to);
+
+            // If line is an assignment
+            if (mAssign.matches()) {
+                // Store variable and its value
+                vars.put(mAssign.group(1), Integer.parseInt(mAssign.group(2)));
+            } else if (mCoutStr.matches()) {
+                // If line is cout with string, store string as output
+                lastOutput = mCoutStr.group(1);
+            } else if (mCoutNum.matches()) {
+                // If line is cout with number/variable
+                // Resolve first value
+                int a = resolveValue(mCoutNum.group(1), vars);
+                // Get second token (for addition)
+                String bTok = mCoutNum.group(2);
+                // Calculate final value (with or without addition)
+                int val = (bTok == null) ? a : a + resolveValue(bTok, vars);
+                // Store result as output
+                lastOutput = String.valueOf(val);
+            }
+        }
+        // If no output was generated, throw exception
+        if (lastOutput == null) throw new Exception("No output from program");
+        // Return last output
+        return lastOutput;
+    }
+
+    // Method to resolve variable or literal value
+    private static int resolveValue(String token, Map<String, Integer> vars) throws Exception {
+        // If token is null, return 0
+        if (token == null) return 0;
+        // Trim whitespace
+        token = token.trim();
+        // If token is a number, parse and return it
+        if (token.matches("-?\\d+")) return Integer.parseInt(token);
+        // Try to get variable value
+        Integer v = vars.get(token);
+        // If variable not found, throw exception
+        if (v == null) throw new Exception("Undefined variable: " + token);
+        // Return variable value
+        return v;
+    }
+}
+
+// --- Shadow execution: a second backend runs each program beside the primary and is checked against it ---
+final class ShadowRunner {
+    // Bytes of each output kept for the divergence log
+    private static final int HEAD_BYTES = 64 << 10;
+    // Bytes of a file input copied into the divergence log
+    private static final int INPUT_BYTES = 64 << 10;
+    // Divergences listed in the report
+    private static final int RECENT = 10;
+
+    // Output of one side reduced to a digest, its size and its first bytes
+    private static final class Capture {
+        // SHA-256 of the whole output
+        final byte[] digest;
+        // Output size in bytes
+        final long bytes;
+        // First HEAD_BYTES bytes as text
+        final String head;
+
+        // Constructor to hold a capture
+        Capture(byte[] digest, long bytes, String head) {
+            this.digest = digest;
+            this.bytes = bytes;
+            this.head = head;
+        }
+    }
+
+    // One program started on the secondary backend, waiting for the primary's result
+    final class Run {
+        // Source snapshot (the editor may change while the shadow runs)
+        private final String source;
+        // Stdin (replayable: text or file)
+        private final ProgramInput input;
+        // Secondary result
+        private final java.util.concurrent.CompletableFuture<BackendResult> secondaryResult;
+
+        // Constructor to start the secondary run right away
+        private Run(String source, ProgramInput input) {
+            this.source = source;
+            this.input = input;
+            this.secondaryResult = java.util.concurrent.CompletableFuture.supplyAsync(() -> secondary.run(source, input), executor);
+            // The slot is free once the secondary is done, compared or not
+            secondaryResult.whenComplete((result, ex) -> inFlight.decrementAndGet());
+        }
+
+        // Method to compare the primary's result once both are done (returns at once; the work runs in the background)
+        void compare(BackendResult primary) {
+            // Hold the primary output (on the EDT, before the next run's viewer can close it) until it has been read
+            OutputSpool output = primary.output;
+            boolean held = output == null || output.retain();
+            java.util.concurrent.CompletableFuture<Capture> primaryOutput = java.util.concurrent.CompletableFuture.supplyAsync(() -> {
+                try {
+                    return held ? capture(output) : null;
+                } finally {
+                    if (held && output != null) output.release();
+                }
+            });
+            secondaryResult.thenCombine(primaryOutput, (result, captured) -> {
+                try {
+                    record(this, primary, captured, result);
+                } finally {
+                    if (result.output != null) result.output.close();
+                }
+                return null;
+            }).whenComplete((ignored, ex) -> { if (ex != null) skipped.increment(); });
+        }
+    }
+
+    // Secondary backend every program is also run on
+    private final ExecutionBackend secondary;
+    // Divergence log (appended to)
+    private final File log;
+    // Secondary latencies for the metrics panel
+    private final MetricsRegistry metrics;
+    // Most programs shadowed at once; more are skipped rather than queued behind a slow secondary
+    private final int maxInFlight;
+    // Low-priority threads running the secondary so the primary keeps the CPU
+    private final java.util.concurrent.ExecutorService executor;
+    // Secondary runs started and not yet finished
+    private final java.util.concurrent.atomic.AtomicInteger inFlight = new java.util.concurrent.atomic.AtomicInteger();
+    // Programs compared, of those diverged, and programs not shadowed (stream input, busy, or failed comparison)
+    private final java.util.concurrent.atomic.LongAdder compared = new java.util.concurrent.atomic.LongAdder(),
+            diverged = new java.util.concurrent.atomic.LongAdder(), skipped = new java.util.concurrent.atomic.LongAdder();
+    // Primary and secondary latency per primary backend (side by side)
+    private final Map<String, LatencyHistogram[]> latencies = new java.util.concurrent.ConcurrentHashMap<>();
+    // Latest divergences, newest last (guarded by itself)
+    private final ArrayDeque<String> recent = new ArrayDeque<>();
+
+    // Constructor to shadow every run on a backend
+    ShadowRunner(ExecutionBackend secondary, File log, MetricsRegistry metrics, int maxInFlight) {
+        this.secondary = secondary;
+        this.log = log;
+        this.metrics = metrics;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.executor = java.util.concurrent.Executors.newFixedThreadPool(this.maxInFlight, r -> {
+            Thread t = new Thread(r, "shadow-run");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    // Method to create the runner named by -Dmini.shadow=<backend> (null when off or the backend can't run here)
+    static ShadowRunner fromProperty(BackendSelector selector, MetricsRegistry metrics) {
+        String name = System.getProperty("mini.shadow");
+        if (name == null || name.isEmpty()) return null;
+        ExecutionBackend backend = selector.byName(name);
+        if (backend == null || !backend.isAvailable()) {
+            System.err.println("Shadow backend '" + name + "' is not available; shadow mode is off");
+            return null;
+        }
+        return new ShadowRunner(backend, new File(System.getProperty("mini.shadow.log", "shadow-divergences.log")), metrics,
+                Integer.getInteger("mini.shadow.parallel", 2));
+    }
+
+    // Method to get the secondary backend's name
+    String secondaryName() {
+        return secondary.name();
+    }
+
+    // Method to start the secondary run of a program before the primary runs (null when it isn't shadowed)
+    Run start(CharSequence code, ProgramInput input) {
+        // A piped stream can only be read once, and it belongs to the primary
+        if (input.identity() == null) {
+            skipped.increment();
+            return null;
+        }
+        // A slow secondary is skipped rather than queued
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            skipped.increment();
+            return null;
+        }
+        // Free for the backend's copy (a String or an edited snapshot); a view of the document is copied only here
+        return new Run(code.toString(), input);
+    }
+
+    // Method to compare both sides and record latencies and any divergence (background thread)
+    private void record(Run run, BackendResult primary, Capture primaryOutput, BackendResult secondaryResult) {
+        // The same backend on both sides proves nothing
+        if (primary.backend.equals(secondary.name())) {
+            skipped.increment();
+            return;
+        }
+        Capture secondaryOutput = capture(secondaryResult.output);
+        if (primaryOutput == null || secondaryOutput == null) {
+            // An output was released before it could be read
+            skipped.increment();
+            return;
+        }
+        // Latencies side by side, per primary backend
+        LatencyHistogram[] pair = latencies.computeIfAbsent(primary.backend,
+                k -> new LatencyHistogram[] { new LatencyHistogram(), new LatencyHistogram() });
+        pair[0].record(primary.totalNanos);
+        pair[1].record(secondaryResult.totalNanos);
+        metrics.record(secondary.name(), "shadow", secondaryResult.totalNanos, -1);
+        compared.increment();
+        // Failures are compared by outcome only (each backend words its errors differently); a syntax error is
+        // output, compared up to and including the point where it stopped the program (see ParseErrorDigest)
+        String difference = null;
+        if (primary.failed != secondaryResult.failed) {
+            difference = (primary.failed ? "primary failed" : "secondary failed") + ": " + primary.status + " / " + secondaryResult.status;
+        } else if (!primary.failed && !Arrays.equals(primaryOutput.digest, secondaryOutput.digest)) {
+            difference = "output differs: " + firstDifference(primaryOutput, secondaryOutput);
+        }
+        if (difference == null) return;
+        diverged.increment();
+        String summary = String.format("[%tT] %s vs %s: %s", System.currentTimeMillis(), primary.backend, secondary.name(), difference);
+        synchronized (recent) {
+            recent.addLast(summary);
+            if (recent.size() > RECENT) recent.removeFirst();
+        }
+        appendToLog(summary, run, primaryOutput, secondaryOutput);
+    }
+
+    // Method to append a divergence with its source, input and both outputs to the log
+    private void appendToLog(String summary, Run run, Capture primaryOutput, Capture secondaryOutput) {
+        StringBuilder sb = new StringBuilder();
+        String nl = System.lineSeparator();
+        sb.append("=== ").append(summary).append(nl);
+        sb.append("--- source (").append(run.source.length()).append(" chars)").append(nl).append(run.source).append(nl);
+        sb.append("--- input ").append(run.input.identity().startsWith("file:") ? run.input.identity() : "(text)").append(nl);
+        try {
+            byte[] in = run.input.readBytes();
+            sb.append(new String(in, 0, Math.min(in.length, INPUT_BYTES), StandardCharsets.UTF_8));
+            if (in.length > INPUT_BYTES) sb.append(nl).append("... (").append(in.length).append(" bytes)");
+        } catch (IOException ex) {
+            sb.append("(unreadable: ").append(ex.getMessage()).append(')');
+        }
+        sb.append(nl);
+        sb.append("--- primary output (").append(primaryOutput.bytes).append(" bytes)").append(nl).append(primaryOutput.head).append(nl);
+        sb.append("--- secondary output (").append(secondaryOutput.bytes).append(" bytes)").append(nl).append(secondaryOutput.head).append(nl);
+        synchronized (ShadowRunner.class) {
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(log, true), StandardCharsets.UTF_8)) {
+                w.write(sb.toString());
+            } catch (IOException ex) {
+                System.err.println(summary);
+            }
+        }
+    }
+
+    // Method to reduce an output to its digest, size and head (null when it can no longer be read)
+    private static Capture capture(OutputSpool output) {
+        if (output == null) return new Capture(ProgramArtifact.hash(""), 0, "");
+        try {
+            ParseErrorDigest sha = new ParseErrorDigest();
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            long bytes = output.writeTo(new OutputStream() {
+                @Override public void write(int b) {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+                @Override public void write(byte[] b, int off, int len) {
+                    sha.update(b, off, len);
+                    head.write(b, off, Math.max(0, Math.min(len, HEAD_BYTES - head.size())));
+                }
+            });
+            return new Capture(sha.digest(), bytes, head.toString(StandardCharsets.UTF_8));
+        } catch (IOException | java.security.NoSuchAlgorithmException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    // SHA-256 of an output with each "Parse error: ..." line cut to its prefix (the Java front end adds position and
+    // expected tokens, yyerror only says "syntax error"), so a syntax error compares by where it stopped the output
+    private static final class ParseErrorDigest {
+        // Line prefix kept from a parse error
+        private static final byte[] PREFIX = "Parse error:".getBytes(StandardCharsets.UTF_8);
+        // Digest of the normalized output
+        private final java.security.MessageDigest sha = java.security.MessageDigest.getInstance("SHA-256");
+        // Bytes of the current line matching PREFIX so far (-1 once the line can't be a parse error)
+        private int matched;
+        // Whether the rest of a parse error line is being skipped
+        private boolean skipping;
+
+        // Constructor (SHA-256 is always present, but getInstance declares otherwise)
+        ParseErrorDigest() throws java.security.NoSuchAlgorithmException {}
+
+        // Method to add output bytes
+        void update(byte[] b, int off, int len) {
+            int end = off + len;
+            while (off < end) {
+                if (matched < 0 && !skipping) {
+                    // Inside an ordinary line: pass it through up to and including its newline
+                    int nl = off;
+                    while (nl < end && b[nl] != '\n') nl++;
+                    sha.update(b, off, Math.min(nl + 1, end) - off);
+                    if (nl < end) matched = 0;
+                    off = Math.min(nl + 1, end);
+                    continue;
+                }
+                byte c = b[off++];
+                if (skipping) {
+                    // Drop the message, keep the line break
+                    if (c == '\n') {
+                        sha.update(c);
+                        skipping = false;
+                        matched = 0;
+                    }
+                } else if (c == PREFIX[matched]) {
+                    // Hold back a possible prefix until it is complete
+                    if (++matched == PREFIX.length) {
+                        sha.update(PREFIX);
+                        skipping = true;
+                    }
+                } else {
+                    // Not a parse error line after all
+                    sha.update(PREFIX, 0, matched);
+                    sha.update(c);
+                    matched = c == '\n' ? 0 : -1;
+                }
+            }
+        }
+
+        // Method to finish the digest
+        byte[] digest() {
+            if (matched > 0 && !skipping) sha.update(PREFIX, 0, matched);
+            return sha.digest();
+        }
+    }
+
+    // Method to describe where two differing outputs part ways
+    private static String firstDifference(Capture a, Capture b) {
+        String[] x = a.head.split("\n", -1), y = b.head.split("\n", -1);
+        // The last line of a truncated head may be cut short, so it isn't compared
+        int n = Math.min(x.length, y.length) - 1;
+        for (int i = 0; i < n; i++) {
+            if (!x[i].equals(y[i])) return "line " + (i + 1) + ": \"" + clip(x[i]) + "\" vs \"" + clip(y[i]) + "\"";
+        }
+        if (a.bytes != b.bytes) return a.bytes + " vs " + b.bytes + " bytes";
+        return "beyond the first " + (HEAD_BYTES >> 10) + " KB";
+    }
+
+    // Method to shorten a line for a one-line summary
+    private static String clip(String line) {
+        return line.length() <= 60 ? line : line.substring(0, 57) + "...";
+    }
+
+    // Method to format the comparison counts and side-by-side latency distributions for the metrics panel
+    String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Shadow backend %s: %d compared, %d diverged, %d skipped (divergences in %s)%n",
+                secondary.name(), compared.sum(), diverged.sum(), skipped.sum(), log.getName()));
+        new TreeMap<>(latencies).forEach((primary, pair) -> {
+            sb.append(String.format("%n%-10s %14s %14s%n", "latency", primary.length() > 14 ? primary.substring(0, 14) : primary,
+                    secondary.name().length() > 14 ? secondary.name().substring(0, 14) : secondary.name()));
+            for (int b = 0; b < LatencyHistogram.BUCKETS; b++) {
+                long p = pair[0].bucketCount(b), s = pair[1].bucketCount(b);
+                if (p == 0 && s == 0) continue;
+                sb.append(String.format("< %-8s %14d %14d%n", LatencyHistogram.bucketLabel(b), p, s));
+            }
+            sb.append(String.format("%-10s %14d %14d%n", "p50 (us)", pair[0].percentileMicros(50), pair[1].percentileMicros(50)));
+            sb.append(String.format("%-10s %14d %14d%n", "p99 (us)", pair[0].percentileMicros(99), pair[1].percentileMicros(99)));
+        });
+        synchronized (recent) {
+            if (!recent.isEmpty()) sb.append(String.format("%nRecent divergences:%n"));
+            for (String d : recent) sb.append("  ").append(d).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
+
+// --- Backend registry with calibration-driven "auto" selection ---
+final class BackendSelector {
+    // Name of the automatic mode
+    static final String AUTO = "auto";
+    // Program sizes (chars) calibrated at startup
+    static final int[] CALIBRATION_SIZES = { 1 << 10, 1 << 16, 1 << 20 };
+    // Runs per backend and size (best one counts)
+    private static final int ROUNDS = 3;
+    // A backend slower than this at one size is not tried at larger sizes
+    private static final long GIVE_UP_NANOS = 2_000_000_000L;
+
+    // All known backends (the first is the reference for correctness)
+    private final List<ExecutionBackend> backends = new ArrayList<>();
+    // Fastest correct backend per calibration size (null until calibrated)
+    private volatile ExecutionBackend[] fastest;
+    // Calibration timings for display
+    private volatile String report = "Not calibrated yet";
+
+    // Constructor to register the built-in backends
+    BackendSelector() {
+        backends.add(new JavaBackend());
+        backends.add(new IncrementalBackend());
+        backends.add(new NativeTokenBackend());
+        // In-process flex/bison via java.lang.foreign: compiled separately (JDK 22+), like VectorRunScanner
+        if (!"false".equals(System.getProperty("mini.ffi"))) {
+            try {
+                backends.add((ExecutionBackend) Class.forName("ForeignParserBackend").getConstructor().newInstance());
+            } catch (ClassNotFoundException ex) {
+                // Not built (see build-native.sh)
+            } catch (Throwable ex) {
+                // Built but unusable here: JDK without java.lang.foreign, a broken library or native access denied
+                System.err.println("In-process parser unavailable: " + ex);
+            }
+        }
+        backends.add(new MiniCcBackend());
+        backends.add(new LexerThenParserBackend());
+        backends.add(new LexerParserBackend());
+        backends.add(new RegexBackend());
+    }
+
+    // Method to list backends available on this machine
+    List<ExecutionBackend> available() {
+        List<ExecutionBackend> out = new ArrayList<>();
+        for (ExecutionBackend b : backends) if (b.isAvailable()) out.add(b);
+        return out;
+    }
+
+    // Method to find a backend by name (null if unknown)
+    ExecutionBackend byName(String name) {
+        for (ExecutionBackend b : backends) if (b.name().equals(name)) return b;
+        return null;
+    }
+
+    // Method to pick the backend for a run: a named one, or the calibrated fastest for the program's size
+    ExecutionBackend choose(String mode, int sourceChars) {
+        if (mode != null && !AUTO.equals(mode)) {
+            ExecutionBackend named = byName(mode);
+            if (named != null && named.isAvailable()) return named;
+        }
+        ExecutionBackend[] table = fastest;
+        // Until calibrated, the in-process backend is always correct
+        if (table == null) return backends.get(0);
+        // Nearest calibrated size on a log scale
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_SIZES.length; i++) {
+            double distance = Math.abs(Math.log(Math.max(1, sourceChars)) - Math.log(CALIBRATION_SIZES[i]));
+            if (distance < bestDistance) { bestDistance = distance; best = i; }
+        }
+        return table[best];
+    }
+
+    // Method to get the calibration report
+    String report() {
+        return report;
+    }
+
+    // Method to time every available backend on synthetic programs and keep the fastest correct one per size
+    void calibrate() {
+        List<ExecutionBackend> candidates = available();
+        candidates.removeIf(b -> !b.autoSelectable());
+        ExecutionBackend[] table = new ExecutionBackend[CALIBRATION_SIZES.length];
+        StringBuilder sb = new StringBuilder();
+        Set<ExecutionBackend> givenUp = new HashSet<>();
+        for (int s = 0; s < CALIBRATION_SIZES.length; s++) {
+            String program = calibrationProgram(CALIBRATION_SIZES[s]);
+            String stdin = "7 8 9";
+            // Reference output from the first backend
+            String expected = outputOf(backends.get(0).run(program, ProgramInput.ofText(stdin)));
+            long bestNanos = Long.MAX_VALUE;
+            sb.append(String.format("%,d chars:", program.length()));
+            for (ExecutionBackend b : candidates) {
+                if (givenUp.contains(b)) continue;
+                long best = Long.MAX_VALUE;
+                boolean correct = true;
+                for (int r = 0; r < ROUNDS && correct; r++) {
+                    BackendResult result = b.run(program, ProgramInput.ofText(stdin));
+                    correct = !result.failed && expected.equals(outputOf(result));
+                    best = Math.min(best, result.totalNanos);
+                    if (result.output != null) result.output.close();
+                }
+                sb.append(String.format("  %s=%s", b.name(), correct ? String.format("%.2fms", best / 1e6) : "wrong"));
+                // Wrong or very slow backends are not tried on larger programs
+                if (!correct || best > GIVE_UP_NANOS) { givenUp.add(b); continue; }
+                if (best < bestNanos) { bestNanos = best; table[s] = b; }
+            }
+            if (table[s] == null) table[s] = backends.get(0);
+            sb.append("  -> ").append(table[s].name()).append('\n');
+        }
+        report = sb.toString();
+        fastest = table;
+    }
+
+    // Method to get a result's output as text (large outputs are compared by length and content)
+    private static String outputOf(BackendResult result) {
+        if (result.output == null) return "";
+        if (!result.output.isSpilled()) return result.output.toString();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < result.output.getLineCount(); i++) sb.append(result.output.lineText(i)).append('\n');
+        return sb.toString();
+    }
+
+    // Method to build a synthetic program of about the given size using every statement kind
+    static String calibrationProgram(int chars) {
+        StringBuilder sb = new StringBuilder(chars + 64);
+        sb.append("cin >> a;\ncin >> b;\n");
+        for (int i = 0; sb.length() < chars; i++) {
+            sb.append("v").append(i % 97).append(" = a + ").append(i).append(";\n");
+            sb.append("cout << v").append(i % 97).append(";\n");
+            if (i % 5 == 0) sb.append("cout << \"step ").append(i).append("\";\n");
+        }
+        sb.append("cout << b;\n");
+        return sb.toString();
+    }
+}
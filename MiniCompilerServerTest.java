@@ -0,0 +1,123 @@
+// Self-contained test of the headless server (no outside services: port 0 binds a free loopback port).
+// Starts the server through MiniCompilerGUI's public --server entry point, so it needs nothing else from that file.
+// Compile and run next to MiniCompilerGUI; exits with status 1 on the first failed check:
+//   javac MiniCompilerGUI.java MiniCompilerServerTest.java
+//   java MiniCompilerServerTest
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// --- Checks /compile, /run and /stats of MiniCompilerServer over real HTTP ---
+public final class MiniCompilerServerTest {
+    // Number of checks that passed
+    private static int passed;
+
+    // Entry point: start a server, run every check, exit (the server has no public stop)
+    public static void main(String[] args) throws Exception {
+        String base = startServer();
+        // Tokens and no diagnostics for a valid program
+        String compiled = post(base + "/compile", "x = 3;\ncout << x;", "");
+        check(compiled, "\"tokens\":[{\"kind\":\"IDENT\",\"text\":\"x\",\"start\":0}");
+        check(compiled, "{\"kind\":\"NUMBER\",\"text\":\"3\",\"start\":4}");
+        check(compiled, "{\"kind\":\"COUT\",\"text\":\"cout\",\"start\":7}");
+        check(compiled, "\"diagnostics\":[]");
+        // /compile never runs the program
+        checkAbsent(compiled, "\"output\"");
+        // Source plus stdin: output of the run
+        String ran = post(base + "/run", "cin >> a;\ncin >> b;\ncout << a + b;\ncout << \"done\";", "4 5");
+        check(ran, "\"diagnostics\":[]");
+        check(ran, "\"output\":\"9\\ndone\\n\"");
+        // Syntax error: diagnostic with its position, statements before it still run
+        String broken = post(base + "/run", "cout << 1;\ncout << ;", "");
+        check(broken, "\"diagnostics\":[{\"line\":2,\"column\":9,");
+        check(broken, "\"output\":\"1\\n\"");
+        // A missing ';' is found only after the finished statement ran (yyparse reduces first), like mini_cc
+        String unterminated = post(base + "/run", "cout << 1;\ncout << 2", "");
+        check(unterminated, "\"diagnostics\":[{\"line\":2,\"column\":10,");
+        check(unterminated, "\"output\":\"1\\n2\\n\"");
+        String runOn = post(base + "/run", "a = 1;\nb = 3;\ncout << a + b\ncout << x;", "");
+        check(runOn, "\"diagnostics\":[{\"line\":4,\"column\":1,");
+        check(runOn, "\"output\":\"4\\n\"");
+        // Latency histograms per endpoint
+        String stats = get(base + "/stats");
+        check(stats, "/compile");
+        check(stats, "/run");
+        // Only POST carries a program
+        HttpURLConnection c = (HttpURLConnection) new URL(base + "/run").openConnection();
+        if (c.getResponseCode() != 405) fail("GET /run returned " + c.getResponseCode() + ", expected 405");
+        passed++;
+        System.out.println("MiniCompilerServerTest: " + passed + " checks passed");
+        System.exit(0);
+    }
+
+    // Method to start the server on a free port and return its base URL (read from the line --server prints)
+    private static String startServer() throws IOException {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream banner = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(banner, true, StandardCharsets.UTF_8));
+        try {
+            MiniCompilerGUI.main(new String[] {"--server", "0"});
+        } finally {
+            System.setOut(stdout);
+        }
+        Matcher m = Pattern.compile("http://127\\.0\\.0\\.1:\\d+").matcher(banner.toString(StandardCharsets.UTF_8));
+        if (!m.find()) fail("no server address in " + banner.toString(StandardCharsets.UTF_8));
+        return m.group();
+    }
+
+    // Method to POST a form with source and stdin and return the response body
+    private static String post(String url, String source, String stdin) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+        c.setRequestMethod("POST");
+        c.setDoOutput(true);
+        c.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        String form = "source=" + URLEncoder.encode(source, StandardCharsets.UTF_8) + "&stdin=" + URLEncoder.encode(stdin, StandardCharsets.UTF_8);
+        try (OutputStream out = c.getOutputStream()) {
+            out.write(form.getBytes(StandardCharsets.UTF_8));
+        }
+        if (c.getResponseCode() != 200) fail("POST " + url + " returned " + c.getResponseCode());
+        return body(c);
+    }
+
+    // Method to GET a URL and return the response body
+    private static String get(String url) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+        if (c.getResponseCode() != 200) fail("GET " + url + " returned " + c.getResponseCode());
+        return body(c);
+    }
+
+    // Method to read a response body as UTF-8
+    private static String body(HttpURLConnection c) throws IOException {
+        try (InputStream in = c.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    // Method to require a fragment in a response
+    private static void check(String response, String expected) {
+        if (!response.contains(expected)) fail("expected " + expected + " in " + response);
+        passed++;
+    }
+
+    // Method to require that a fragment is missing from a response
+    private static void checkAbsent(String response, String unexpected) {
+        if (response.contains(unexpected)) fail("did not expect " + unexpected + " in " + response);
+        passed++;
+    }
+
+    // Method to report a failed check and exit
+    private static void fail(String message) {
+        System.err.println("MiniCompilerServerTest FAILED: " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,81 @@
+// Vector API fast path for the lexer's character runs.
+// Build and run with the incubator module (MiniCompilerGUI falls back to scalar code without it):
+//   javac --add-modules jdk.incubator.vector VectorRunScanner.java
+//   java --add-modules jdk.incubator.vector -Dmini.lex.simd=true MiniCompilerGUI
+// It is off by default: it only wins on long identifier and whitespace runs (compare with --bench-lexer).
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// --- SIMD run scanner ({WS}, {ID} tail and {INT} classes of lexer.l) ---
+public final class VectorRunScanner implements RunScanner {
+    // Widest short vector the CPU supports (16 chars with AVX2)
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    // Lanes per vector
+    private static final int LANES = SPECIES.length();
+    // Characters checked one at a time before going wide (most runs are shorter than a vector)
+    private static final int SCALAR_PREFIX = 8;
+
+    // Public no-arg constructor for reflective loading
+    public VectorRunScanner() {}
+
+    @Override public int skipSpaces(char[] a, int from, int to) {
+        int i = from;
+        // Short runs end within the scalar prefix
+        int prefixEnd = Math.min(to, from + SCALAR_PREFIX);
+        while (i < prefixEnd && MiniLexer.isSpace(a[i])) i++;
+        if (i < prefixEnd) return i;
+        // Whole vectors: stop at the first lane that is not ' ', '\t', '\r' or '\n'
+        for (; i + LANES <= to; i += LANES) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, a, i);
+            VectorMask<Short> space = v.eq((short) ' ').or(v.eq((short) '\t')).or(v.eq((short) '\r')).or(v.eq((short) '\n'));
+            if (!space.allTrue()) return i + space.not().firstTrue();
+        }
+        // Scalar tail
+        while (i < to && MiniLexer.isSpace(a[i])) i++;
+        return i;
+    }
+
+    @Override public int skipIdentParts(char[] a, int from, int to) {
+        int i = from;
+        // Short runs end within the scalar prefix
+        int prefixEnd = Math.min(to, from + SCALAR_PREFIX);
+        while (i < prefixEnd && MiniLexer.isIdentPart(a[i])) i++;
+        if (i < prefixEnd) return i;
+        // Whole vectors: stop at the first lane outside [a-zA-Z0-9_]
+        for (; i + LANES <= to; i += LANES) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, a, i);
+            // Setting bit 5 folds 'A'-'Z' onto 'a'-'z' (and moves nothing else into that range)
+            ShortVector lower = v.or((short) 0x20);
+            VectorMask<Short> ident = lower.compare(VectorOperators.GE, (short) 'a').and(lower.compare(VectorOperators.LE, (short) 'z'))
+                    .or(v.compare(VectorOperators.GE, (short) '0').and(v.compare(VectorOperators.LE, (short) '9')))
+                    .or(v.eq((short) '_'));
+            if (!ident.allTrue()) return i + ident.not().firstTrue();
+        }
+        // Scalar tail
+        while (i < to && MiniLexer.isIdentPart(a[i])) i++;
+        return i;
+    }
+
+    @Override public int skipDigits(char[] a, int from, int to) {
+        int i = from;
+        // Short runs end within the scalar prefix
+        int prefixEnd = Math.min(to, from + SCALAR_PREFIX);
+        while (i < prefixEnd && MiniLexer.isDigit(a[i])) i++;
+        if (i < prefixEnd) return i;
+        // Whole vectors: stop at the first lane outside [0-9]
+        for (; i + LANES <= to; i += LANES) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, a, i);
+            VectorMask<Short> digit = v.compare(VectorOperators.GE, (short) '0').and(v.compare(VectorOperators.LE, (short) '9'));
+            if (!digit.allTrue()) return i + digit.not().firstTrue();
+        }
+        // Scalar tail
+        while (i < to && MiniLexer.isDigit(a[i])) i++;
+        return i;
+    }
+
+    @Override public String toString() {
+        return "vector (" + LANES + " lanes)";
+    }
+}
@@ -0,0 +1,35 @@
+#!/bin/sh
+# Builds the in-process flex/bison backend on Linux: libminicc.so plus ForeignParserBackend (JDK 22+).
+# Usage: JAVA22_HOME=/path/to/jdk-22 ./build-native.sh [--regen]
+#   --regen  regenerates lexer.cpp and parser.cpp/parser.hpp from lexer.l and parser.y first (needs flex and bison)
+# Any failing step stops the build with its compiler output.
+set -eu
+cd "$(dirname "$0")"
+
+# JDK with java.lang.foreign (final in 22)
+JDK="${JAVA22_HOME:-${JAVA_HOME:-}}"
+if [ -z "$JDK" ] || [ ! -x "$JDK/bin/javac" ]; then
+    echo "Set JAVA22_HOME (or JAVA_HOME) to a JDK 22 or newer." >&2
+    exit 1
+fi
+VERSION=$("$JDK/bin/javac" -version 2>&1 | sed 's/^javac \([0-9]*\).*/\1/')
+if [ "$VERSION" -lt 22 ]; then
+    echo "$JDK is JDK $VERSION; java.lang.foreign needs JDK 22 or newer." >&2
+    exit 1
+fi
+
+# Regenerate the scanner and parser from their sources
+if [ "${1:-}" = "--regen" ]; then
+    echo "Regenerating lexer.cpp and parser.cpp..."
+    flex -o lexer.cpp lexer.l
+    bison -d -o parser.cpp parser.y
+fi
+
+echo "Building libminicc.so..."
+g++ -O2 -shared -fPIC -o libminicc.so lexer.cpp parser.cpp mini_ffi.cpp
+
+echo "Compiling MiniCompilerGUI and ForeignParserBackend with JDK $VERSION..."
+"$JDK/bin/javac" MiniCompilerGUI.java ForeignParserBackend.java
+
+echo "Done. Run with:"
+echo "  $JDK/bin/java --enable-native-access=ALL-UNNAMED MiniCompilerGUI"
@@ -133,7 +133,7 @@
 
 /* Size of default input buffer. */
 #ifndef YY_BUF_SIZE
-#define YY_BUF_SIZE 16384  // Defines the default buffer size as 16KB
+#ifdef __ia64__
 /* On IA-64, the buffer size is 16k, not 8k.
  * Moreover, YY_BUF_SIZE is 2*YY_READ_BUF_SIZE in the general case.
  * Ditto for the __ia64__ case accordingly.
@@ -500,6 +500,11 @@ static char* unescape_and_unquote(const char* yy) {
     out[oi] = '\0';
     return out;
 }
+
+/* Byte offset of the last matched token (read by token_stream.cpp) */
+int yy_token_offset = 0;
+static int yy_next_offset = 0;
+#define YY_USER_ACTION yy_token_offset = yy_next_offset; yy_next_offset += yyleng;
 #line 499 "lexer.cpp"
 #line 500 "lexer.cpp"
 
@@ -1814,3 +1819,18 @@ void yyfree (void * ptr )
 #line 62 "lexer.l"
 
 
+
+/* In-memory scanning for the shared-library build (mini_ffi.cpp) */
+static YY_BUFFER_STATE mini_buffer = nullptr;  // Buffer scanning the caller's memory
+
+/* Scan len bytes at base in place; base[len] and base[len+1] must be NUL (flex's end-of-buffer marks) */
+void mini_lexer_begin(char* base, size_t len) {
+    yy_next_offset = 0;  // Offsets restart with each source
+    mini_buffer = yy_scan_buffer(base, len + 2);  // No copy: flex reads the caller's buffer directly
+}
+
+/* Release the scan buffer (the caller's memory is left alone) */
+void mini_lexer_end() {
+    if (mini_buffer) yy_delete_buffer(mini_buffer);  // Free flex's buffer header only
+    mini_buffer = nullptr;
+}
@@ -0,0 +1,63 @@
+// In-process entry points for ForeignParserBackend (java.lang.foreign).
+// Build the shared library next to MiniCompilerGUI (build-native.sh does this and compiles the Java side):
+//   g++ -O2 -shared -fPIC -o libminicc.so lexer.cpp parser.cpp mini_ffi.cpp   (Linux)
+//   g++ -O2 -shared -o minicc.dll lexer.cpp parser.cpp mini_ffi.cpp           (Windows, MinGW)
+#include <cstddef>
+#include <exception>
+#include <iostream>
+#include <sstream>
+#include <string>
+
+extern int yyparse();
+void mini_lexer_begin(char* base, size_t len);  // lexer.l epilogue
+void mini_lexer_end();  // lexer.l epilogue
+void mini_reset_parser();  // parser.y epilogue
+
+#if defined(_WIN32)
+#define MINI_EXPORT extern "C" __declspec(dllexport)
+#else
+#define MINI_EXPORT extern "C" __attribute__((visibility("default")))
+#endif
+
+static std::string g_output;  // Captured cout/cerr of the last run
+
+/* Swaps a stream's buffer for the lifetime of a run, restoring it even if parsing throws */
+struct StreamSwap {
+  std::ios& stream;  // Stream being redirected
+  std::streambuf* saved;  // Its original buffer
+  StreamSwap(std::ios& s, std::streambuf* b) : stream(s), saved(s.rdbuf(b)) {}
+  ~StreamSwap() { stream.rdbuf(saved); }
+};
+
+/* Run one program: src[0..len) is the source followed by two NUL bytes, in[0..inLen) is the whole of cin.
+   Returns yyparse's result (0 ok, 1 syntax error, 2 out of memory) or 3 for an uncaught C++ exception. */
+MINI_EXPORT int mini_run(char* src, long long len, const char* in, long long inLen) {
+  std::istringstream input(std::string(in, static_cast<size_t>(inLen)));  // cin reads the caller's input
+  std::ostringstream output;  // cout and cerr share one buffer, like redirectErrorStream
+  int rc;
+  {
+    StreamSwap cinSwap(std::cin, input.rdbuf());
+    StreamSwap coutSwap(std::cout, output.rdbuf());
+    StreamSwap cerrSwap(std::cerr, output.rdbuf());
+    mini_reset_parser();  // Variables do not leak between runs
+    mini_lexer_begin(src, static_cast<size_t>(len));  // Lex the caller's memory in place
+    try {
+      rc = yyparse();
+    } catch (const std::exception& ex) {
+      output << "Runtime error: " << ex.what() << std::endl;  // Never unwind into the JVM
+      rc = 3;
+    } catch (...) {
+      output << "Runtime error: unknown exception" << std::endl;
+      rc = 3;
+    }
+    mini_lexer_end();
+  }
+  g_output = output.str();  // Kept until the next run
+  return rc;
+}
+
+/* Captured output of the last run; valid until the next mini_run */
+MINI_EXPORT const char* mini_output(long long* len) {
+  *len = static_cast<long long>(g_output.size());
+  return g_output.data();
+}
@@ -1410,3 +1410,10 @@ yyreturnlab:
 
 
 /* int yyparse(void);  // optional */
+
+/* Clear interpreter state between in-process runs (shared-library build, mini_ffi.cpp) */
+void mini_reset_parser() {
+  SYM.clear();  // Forget variables from the previous program
+  g_lastExprWasNonIntIdent = false;  // Reset the raw-print flag
+  g_lastExprRaw.clear();  // Reset the raw value
+}
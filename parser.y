@@ -173,3 +173,10 @@ expr
 %%
 
 /* int yyparse(void);  // Parse function to start the parsing process */
+
+/* Clear interpreter state between in-process runs (shared-library build, mini_ffi.cpp) */
+void mini_reset_parser() {
+  SYM.clear();  // Forget variables from the previous program
+  g_lastExprWasNonIntIdent = false;  // Reset the raw-print flag
+  g_lastExprRaw.clear();  // Reset the raw value
+}
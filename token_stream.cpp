@@ -0,0 +1,67 @@
+// Binary token stream driver for the Java front end.
+// Build: g++ -O2 -o token_stream lexer.cpp token_stream.cpp
+//
+// Format: "MTK1", then per token a kind byte, a varint gap from the end of
+// the previous token, a varint length, and for NUMBER (zigzag) / CHAR tokens
+// an inline varint value. A kind byte of 0 ends the stream.
+#include <cstdio>
+#include <cstdlib>
+#include "parser.hpp"
+#ifdef _WIN32
+#include <fcntl.h>
+#include <io.h>
+#endif
+
+extern FILE* yyin;
+extern char* yytext;
+extern int yyleng;
+extern int yy_token_offset;
+int yylex(void);
+YYSTYPE yylval;  // Normally defined by parser.cpp, which this driver doesn't link
+
+/* Token kinds shared with TokenKind in MiniCompilerGUI.java */
+enum : unsigned char { K_EOF = 0, K_CIN, K_COUT, K_SHIFTIN, K_SHIFTOUT, K_ASSIGN, K_PLUS, K_SEMI, K_NUMBER, K_STRINGLIT, K_IDENT, K_CHAR };
+
+static void put_varint(unsigned int v) {
+  while (v >= 0x80) { std::putchar((int)((v & 0x7F) | 0x80)); v >>= 7; }  // 7 bits per byte, high bit = more
+  std::putchar((int)v);
+}
+
+int main(int argc, char** argv) {
+  if (argc > 1) {
+    yyin = std::fopen(argv[1], "rb");
+    if (!yyin) { std::perror("fopen"); return 1; }
+  }
+#ifdef _WIN32
+  _setmode(_fileno(stdout), _O_BINARY);  // No newline translation in the byte stream
+#endif
+  static char buf[1 << 16];
+  std::setvbuf(stdout, buf, _IOFBF, sizeof buf);  // Large buffer: one write per 64 KB
+  std::fputs("MTK1", stdout);
+  int prev_end = 0;
+  for (int tok; (tok = yylex()) != 0; ) {
+    unsigned char kind;
+    switch (tok) {
+      case CIN:       kind = K_CIN; break;
+      case COUT:      kind = K_COUT; break;
+      case SHIFTIN:   kind = K_SHIFTIN; break;
+      case SHIFTOUT:  kind = K_SHIFTOUT; break;
+      case NUMBER:    kind = K_NUMBER; break;
+      case STRINGLIT: kind = K_STRINGLIT; std::free(yylval.sval); break;  // Java unescapes from the source span
+      case IDENT:     kind = K_IDENT; std::free(yylval.sval); break;
+      case '=':       kind = K_ASSIGN; break;
+      case '+':       kind = K_PLUS; break;
+      case ';':       kind = K_SEMI; break;
+      default:        kind = K_CHAR; break;
+    }
+    std::putchar(kind);
+    put_varint((unsigned int)(yy_token_offset - prev_end));
+    put_varint((unsigned int)yyleng);
+    if (kind == K_NUMBER) put_varint(((unsigned int)yylval.ival << 1) ^ (unsigned int)(yylval.ival >> 31));  // zigzag
+    else if (kind == K_CHAR) put_varint((unsigned char)yytext[0]);
+    prev_end = yy_token_offset + yyleng;
+  }
+  std::putchar(K_EOF);
+  if (yyin) std::fclose(yyin);
+  return std::fflush(stdout) == 0 ? 0 : 1;
+}